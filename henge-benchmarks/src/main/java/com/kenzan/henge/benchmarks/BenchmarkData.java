@@ -0,0 +1,89 @@
+package com.kenzan.henge.benchmarks;
+
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyScopedValue;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.model.ScopePrecedenceConfiguration;
+import com.kenzan.henge.domain.model.type.PropertyGroupType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Builds the entities the benchmarks run against. The data is deterministic,
+ * so that runs are comparable.
+ *
+ * @author wmatsushita
+ */
+final class BenchmarkData {
+
+    /**
+     * The default precedence configuration of the application
+     */
+    static final String PRECEDENCE = "env;env+region;env+region+stack;hostname;application";
+
+    static final ScopePrecedenceConfiguration SCOPE_PRECEDENCE = new ScopePrecedenceConfiguration(PRECEDENCE);
+
+    private BenchmarkData() {
+
+    }
+
+    static Scope scope(final String key, final String value) {
+        return Scope.builder(key, value).build();
+    }
+
+    /**
+     * A property with values scoped at every level of the default precedence
+     * configuration, cycling through the given number of envs, regions and
+     * stacks.
+     */
+    static Property property(final String name, final int scopedValues) {
+        final PropertyScopedValue[] values = new PropertyScopedValue[scopedValues];
+        for (int i = 0; i < scopedValues; i++) {
+            final String env = "env-" + (i % 4);
+            final String region = "region-" + (i % 8);
+            final String stack = "stack-" + i;
+            switch (i % 4) {
+                case 0:
+                    values[i] = PropertyScopedValue.builder(ImmutableSet.of(scope("env", env)), name + "-" + i).build();
+                    break;
+                case 1:
+                    values[i] = PropertyScopedValue.builder(ImmutableSet.of(scope("env", env), scope("region", region)),
+                        name + "-" + i).build();
+                    break;
+                case 2:
+                    values[i] = PropertyScopedValue.builder(
+                        ImmutableSet.of(scope("env", env), scope("region", region), scope("stack", stack)), name + "-" + i).build();
+                    break;
+                default:
+                    values[i] = PropertyScopedValue.builder(ImmutableSet.of(scope("hostname", "host-" + i)), name + "-" + i).build();
+                    break;
+            }
+        }
+
+        return Property.builder(name)
+            .withDescription("Description of " + name)
+            .withDefaultValue(name + "-default")
+            .withScopedValues(values)
+            .build();
+    }
+
+    static PropertyGroup propertyGroup(final String name, final String version, final PropertyGroupType type,
+        final int properties, final int scopedValues) {
+        final Property[] values = new Property[properties];
+        for (int i = 0; i < properties; i++) {
+            values[i] = property(name + ".property-" + i, scopedValues);
+        }
+
+        return PropertyGroup.builder(name, version)
+            .withDescription("Description of " + name)
+            .withType(type.name())
+            .withIsActive(true)
+            .withCreatedBy("henge-benchmarks")
+            .withCreatedDate(LocalDateTime.of(2016, 1, 1, 0, 0))
+            .withProperties(values)
+            .build();
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.kenzan.henge.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.kenzan.henge.config.EntityCodecConfig;
+import com.kenzan.henge.config.JacksonConfig;
+import com.kenzan.henge.config.MappingKeyDeserializer;
+import com.kenzan.henge.config.MappingKeySerializer;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.type.PropertyGroupType;
+import com.kenzan.henge.domain.utils.JsonUtils;
+import com.kenzan.henge.repository.impl.flatfile.FileNamingService;
+import com.kenzan.henge.repository.impl.flatfile.PropertyGroupFlatFileRepository;
+import com.kenzan.henge.repository.impl.flatfile.storage.LocalFileStorageService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Measures the reads of {@link PropertyGroupFlatFileRepository} against a
+ * local repository in a temporary directory, with the entities stored in each
+ * of the repository codecs. Every entity has three versions, so the reads of
+ * the latest version go through the version index.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlatFileRepositoryBenchmark {
+
+    /**
+     * Number of names cycled through, a power of two
+     */
+    private static final int QUERIES = 1024;
+
+    private static final String[] VERSIONS = {"1.0.0", "1.0.1", "1.1.0"};
+
+    @Param({"10", "1000", "10000"})
+    private int entities;
+
+    @Param({"json", "smile"})
+    private String codec;
+
+    private Path home;
+
+    private AnnotationConfigApplicationContext context;
+
+    private PropertyGroupFlatFileRepository repository;
+
+    private final String[] names = new String[QUERIES];
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("henge-benchmarks");
+        Files.createDirectories(home.resolve("repository").resolve(PropertyGroup.class.getSimpleName()));
+
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().setActiveProfiles("flatfile_local");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+            ImmutableMap.<String, Object>of("user.home", home.toString(), "repository.location", "repository",
+                "text.encoding", "UTF-8", "repository.codec", codec)));
+        context.register(PropertySourcesPlaceholderConfigurer.class, MappingKeySerializer.class,
+            MappingKeyDeserializer.class, JacksonConfig.class, JsonUtils.class, EntityCodecConfig.class,
+            FileNamingService.class, LocalFileStorageService.class, PropertyGroupFlatFileRepository.class);
+        context.refresh();
+        repository = context.getBean(PropertyGroupFlatFileRepository.class);
+
+        for (int i = 0; i < entities; i++) {
+            final String name = "group-" + i;
+            repository.create(BenchmarkData.propertyGroup(name, VERSIONS[0], PropertyGroupType.APP, 10, 4));
+            for (int v = 1; v < VERSIONS.length; v++) {
+                repository.update(name, BenchmarkData.propertyGroup(name, VERSIONS[v], PropertyGroupType.APP, 10, 4));
+            }
+        }
+
+        final Random random = new Random(42);
+        for (int i = 0; i < QUERIES; i++) {
+            names[i] = "group-" + random.nextInt(entities);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Optional<PropertyGroup> readLatest() {
+        return repository.read(names[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public Optional<PropertyGroup> readVersion() {
+        return repository.read(names[next++ & (QUERIES - 1)], VERSIONS[1]);
+    }
+
+}
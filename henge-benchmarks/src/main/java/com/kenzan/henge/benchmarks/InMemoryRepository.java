@@ -0,0 +1,66 @@
+package com.kenzan.henge.benchmarks;
+
+import com.kenzan.henge.domain.model.NamedVersionedModel;
+import com.kenzan.henge.domain.utils.SemanticVersionComparator;
+import com.kenzan.henge.repository.BaseCrudRepository;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map backed repository, so that the benchmarks of the business delegates
+ * measure them rather than the storage.
+ *
+ * @author wmatsushita
+ */
+class InMemoryRepository<E extends NamedVersionedModel> implements BaseCrudRepository<E> {
+
+    private final Map<String, NavigableMap<String, E>> entities = new ConcurrentHashMap<>();
+
+    @Override
+    public E create(final E entity) {
+        entities.computeIfAbsent(entity.getName(), name -> new TreeMap<>(new SemanticVersionComparator()))
+            .put(entity.getVersion(), entity);
+        return entity;
+    }
+
+    @Override
+    public Optional<E> update(final String name, final E entity) {
+        return Optional.of(create(entity));
+    }
+
+    @Override
+    public Optional<E> delete(final String name) {
+        final NavigableMap<String, E> versions = entities.remove(name);
+        return versions == null ? Optional.empty() : Optional.of(versions.lastEntry().getValue());
+    }
+
+    @Override
+    public Optional<E> delete(final String name, final String version) {
+        final NavigableMap<String, E> versions = entities.get(name);
+        return versions == null ? Optional.empty() : Optional.ofNullable(versions.remove(version));
+    }
+
+    @Override
+    public Optional<E> read(final String name) {
+        final NavigableMap<String, E> versions = entities.get(name);
+        return versions == null || versions.isEmpty() ? Optional.empty() : Optional.of(versions.lastEntry().getValue());
+    }
+
+    @Override
+    public Optional<E> read(final String name, final String version) {
+        final NavigableMap<String, E> versions = entities.get(name);
+        return versions == null ? Optional.empty() : Optional.ofNullable(versions.get(version));
+    }
+
+    @Override
+    public Optional<Set<String>> versions(final String name) {
+        final NavigableMap<String, E> versions = entities.get(name);
+        return versions == null ? Optional.empty() : Optional.of(versions.keySet());
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.kenzan.henge.benchmarks;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.type.PropertyGroupType;
+import com.kenzan.henge.domain.utils.JsonUtils;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Measures the {@link JsonUtils} serialization and deserialization of a
+ * {@link PropertyGroup}, as text and as bytes. The mapper is configured the
+ * same way as the application one.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonUtilsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int properties;
+
+    private JsonUtils jsonUtils;
+
+    private PropertyGroup propertyGroup;
+
+    private String json;
+
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonUtils = new JsonUtils(new Jackson2ObjectMapperBuilder()
+            .modules(new JavaTimeModule())
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, SerializationFeature.WRITE_EMPTY_JSON_ARRAYS)
+            .build());
+        propertyGroup = BenchmarkData.propertyGroup("group", "1.0.0", PropertyGroupType.APP, properties, 4);
+        json = jsonUtils.toJson(propertyGroup);
+        jsonBytes = jsonUtils.toJsonBytes(propertyGroup);
+    }
+
+    @Benchmark
+    public String toJson() throws IOException {
+        return jsonUtils.toJson(propertyGroup);
+    }
+
+    @Benchmark
+    public PropertyGroup fromJson() throws IOException {
+        return jsonUtils.fromJson(json, PropertyGroup.class);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() throws IOException {
+        return jsonUtils.toJsonBytes(propertyGroup);
+    }
+
+    @Benchmark
+    public PropertyGroup fromJsonBytes() throws IOException {
+        return jsonUtils.fromJson(jsonBytes, PropertyGroup.class);
+    }
+
+}
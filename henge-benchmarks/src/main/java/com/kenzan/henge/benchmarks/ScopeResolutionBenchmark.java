@@ -0,0 +1,77 @@
+package com.kenzan.henge.benchmarks;
+
+import static com.kenzan.henge.benchmarks.BenchmarkData.scope;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.utils.PropertyResolutionIndex;
+import com.kenzan.henge.domain.utils.PropertyResolutionIndex.CompiledProperty;
+import com.kenzan.henge.domain.utils.ScopeUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the resolution of a {@link Property} value for a search, through
+ * {@link ScopeUtils#getScopeValue(Property, java.util.Set, ImmutableList)} and
+ * through the {@link PropertyResolutionIndex} the search uses. The searched
+ * scopes match a value two levels down the precedence configuration, so both
+ * have to try more specific candidates first.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScopeResolutionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int scopedValues;
+
+    private Property property;
+
+    private CompiledProperty compiledProperty;
+
+    private ImmutableSet<com.kenzan.henge.domain.model.Scope> scopes;
+
+    private ImmutableList<ImmutableSet<String>> precedence;
+
+    @Setup
+    public void setUp() {
+        property = BenchmarkData.property("property", scopedValues);
+        compiledProperty = PropertyResolutionIndex.compile(PropertyGroup.builder("group", "1.0.0").withProperties(property).build())
+            .getProperties().get(0);
+        precedence = BenchmarkData.SCOPE_PRECEDENCE.getInnerRepresentation();
+        // env-1 and region-1 are mapped by the second scoped value, but not
+        // along with stack-unmapped
+        scopes = ImmutableSet.of(scope("env", "env-1"), scope("region", "region-1"), scope("stack", "stack-unmapped"),
+            scope("application", "application"));
+    }
+
+    @Benchmark
+    public String[] getScopeValue() {
+        return ScopeUtils.getScopeValue(property, scopes, precedence);
+    }
+
+    @Benchmark
+    public String[] compiledResolution() {
+        return compiledProperty.resolve(ScopeUtils.candidateScopeSets(scopes, precedence));
+    }
+
+}
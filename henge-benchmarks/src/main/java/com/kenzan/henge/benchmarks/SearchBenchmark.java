@@ -0,0 +1,135 @@
+package com.kenzan.henge.benchmarks;
+
+import static com.kenzan.henge.benchmarks.BenchmarkData.scope;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.MappingKey;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyGroupReference;
+import com.kenzan.henge.domain.model.VersionSet;
+import com.kenzan.henge.domain.model.VersionSetMapping;
+import com.kenzan.henge.domain.model.VersionSetReference;
+import com.kenzan.henge.domain.model.type.PropertyGroupType;
+import com.kenzan.henge.repository.PropertyGroupRepository;
+import com.kenzan.henge.repository.VersionSetRepository;
+import com.kenzan.henge.service.cache.SearchResultCache;
+import com.kenzan.henge.service.impl.PropertyGroupBDImpl;
+import com.kenzan.henge.service.impl.SearchBDImpl;
+import com.kenzan.henge.service.impl.VersionSetBDImpl;
+import com.kenzan.henge.service.impl.VersionSetMappingBDImpl;
+import com.kenzan.henge.service.metrics.SearchMetrics;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+/**
+ * Measures {@link SearchBDImpl#findProperties(String, String, Optional)} end
+ * to end, from the mapping lookup to the rendering of the properties, with
+ * and without the search result cache. The repositories are kept in memory
+ * behind the same caches the application uses.
+ * <p>
+ * Each application is mapped on its own to one of a few version sets of ten
+ * property groups, so the searches fall back from their env and region
+ * scopes to the application mapping.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    /**
+     * Number of applications cycled through, a power of two
+     */
+    private static final int QUERIES = 1024;
+
+    private static final int VERSION_SETS = 4;
+
+    private static final int PROPERTY_GROUPS = 10;
+
+    @Param({"10", "1000", "100000"})
+    private int mappings;
+
+    @Param({"true", "false"})
+    private boolean resultCache;
+
+    private SearchBDImpl searchBD;
+
+    private final String[] applications = new String[QUERIES];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final SearchResultCache searchResultCache = new SearchResultCache(resultCache ? 10000 : 0, 0);
+        final SearchMetrics searchMetrics = new SearchMetrics(new MetricRegistry());
+
+        final PropertyGroupRepository propertyGroupRepository = new PropertyGroupInMemoryRepository();
+        final VersionSetRepository versionSetRepository = new VersionSetInMemoryRepository();
+        final VersionSetMapping mapping = new VersionSetMapping(BenchmarkData.SCOPE_PRECEDENCE);
+
+        for (int v = 0; v < VERSION_SETS; v++) {
+            final PropertyGroupReference[] references = new PropertyGroupReference[PROPERTY_GROUPS];
+            for (int g = 0; g < PROPERTY_GROUPS; g++) {
+                final PropertyGroup propertyGroup = BenchmarkData.propertyGroup("group-" + v + "-" + g, "1.0.0",
+                    g == 0 ? PropertyGroupType.LIB : PropertyGroupType.APP, 10, 8);
+                propertyGroupRepository.create(propertyGroup);
+                references[g] = PropertyGroupReference.builder(propertyGroup).build();
+            }
+            versionSetRepository.create(VersionSet.builder("version-set-" + v, "1.0.0").withPropertyGroupReferences(references).build());
+        }
+
+        for (int i = 0; i < mappings; i++) {
+            mapping.put(new MappingKey(ImmutableSet.of(scope(VersionSetMappingBDImpl.SCOPE_APPLICATION_NAME_KEY, "app-" + i))),
+                VersionSetReference.builder("version-set-" + (i % VERSION_SETS), "1.0.0").build());
+        }
+
+        final VersionSetBDImpl versionSetBD =
+            new VersionSetBDImpl(versionSetRepository, new ConcurrentMapCache("version_set"), searchResultCache);
+        final PropertyGroupBDImpl propertyGroupBD =
+            new PropertyGroupBDImpl(propertyGroupRepository, new ConcurrentMapCache("property_group"), searchResultCache);
+        // the mapping repository is only used by the writes
+        final VersionSetMappingBDImpl versionSetMappingBD = new VersionSetMappingBDImpl(null, versionSetBD, mapping, searchResultCache,
+            searchMetrics);
+        searchBD = new SearchBDImpl(versionSetMappingBD, propertyGroupBD, BenchmarkData.SCOPE_PRECEDENCE, searchResultCache, searchMetrics);
+
+        final Random random = new Random(42);
+        for (int i = 0; i < QUERIES; i++) {
+            applications[i] = "app-" + random.nextInt(mappings);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> findProperties() {
+        return searchBD.findProperties(applications[next++ & (QUERIES - 1)], "env=env-1,region=region-1", Optional.empty());
+    }
+
+    private static class PropertyGroupInMemoryRepository extends InMemoryRepository<PropertyGroup>
+        implements PropertyGroupRepository {
+
+    }
+
+    private static class VersionSetInMemoryRepository extends InMemoryRepository<VersionSet> implements VersionSetRepository {
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.kenzan.henge.benchmarks;
+
+import com.kenzan.henge.domain.utils.SemanticVersionComparator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SemanticVersionComparator} on single comparisons and on the
+ * lookup of the latest of a number of versions, which is what the
+ * repositories do when reading an entity without a version.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SemanticVersionComparatorBenchmark {
+
+    /**
+     * Number of version pairs cycled through, a power of two
+     */
+    private static final int PAIRS = 1024;
+
+    @Param({"10", "1000", "10000"})
+    private int versions;
+
+    private final SemanticVersionComparator comparator = new SemanticVersionComparator();
+
+    private final String[] left = new String[PAIRS];
+
+    private final String[] right = new String[PAIRS];
+
+    private List<String> versionList;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final String[] values = new String[versions];
+        for (int i = 0; i < versions; i++) {
+            values[i] = version(random);
+        }
+        versionList = Arrays.asList(values);
+
+        for (int i = 0; i < PAIRS; i++) {
+            left[i] = values[random.nextInt(versions)];
+            right[i] = values[random.nextInt(versions)];
+        }
+    }
+
+    @Benchmark
+    public int compare() {
+        final int i = next++ & (PAIRS - 1);
+        return comparator.compare(left[i], right[i]);
+    }
+
+    @Benchmark
+    public String latest() {
+        return Collections.max(versionList, comparator);
+    }
+
+    private static String version(final Random random) {
+        return random.nextInt(10) + "." + random.nextInt(100) + "." + random.nextInt(1000);
+    }
+
+}
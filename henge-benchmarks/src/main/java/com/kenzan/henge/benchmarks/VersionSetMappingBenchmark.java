@@ -0,0 +1,107 @@
+package com.kenzan.henge.benchmarks;
+
+import static com.kenzan.henge.benchmarks.BenchmarkData.scope;
+
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.MappingKey;
+import com.kenzan.henge.domain.model.VersionSetMapping;
+import com.kenzan.henge.domain.model.VersionSetReference;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link VersionSetMapping#get(MappingKey)} for queries that match a
+ * mapping exactly and for queries that fall back to a more generic one.
+ * <p>
+ * The mappings cycle through the env, env+region and env+region+stack levels
+ * of the default precedence configuration, each level refining the previous
+ * mapping. The fallback queries carry a region, stack and hostname that are
+ * not mapped, so they probe every precedence level before settling on the
+ * env mapping.
+ *
+ * @author wmatsushita
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VersionSetMappingBenchmark {
+
+    /**
+     * Number of queries cycled through, a power of two
+     */
+    private static final int QUERIES = 1024;
+
+    @Param({"10", "1000", "100000"})
+    private int mappings;
+
+    private VersionSetMapping mapping;
+
+    private final MappingKey[] exactQueries = new MappingKey[QUERIES];
+
+    private final MappingKey[] fallbackQueries = new MappingKey[QUERIES];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        mapping = new VersionSetMapping(BenchmarkData.SCOPE_PRECEDENCE);
+        final MappingKey[] keys = new MappingKey[mappings];
+        for (int i = 0; i < mappings; i++) {
+            keys[i] = key(i);
+            mapping.put(keys[i], VersionSetReference.builder("version-set-" + i, "1.0.0").build());
+        }
+
+        final Random random = new Random(42);
+        for (int i = 0; i < QUERIES; i++) {
+            exactQueries[i] = keys[random.nextInt(mappings)];
+            final int env = random.nextInt((mappings + 2) / 3) * 3;
+            fallbackQueries[i] = new MappingKey(ImmutableSet.of(scope("env", "env-" + env), scope("region", "unmapped"),
+                scope("stack", "unmapped"), scope("hostname", "unmapped")));
+        }
+    }
+
+    @Benchmark
+    public Optional<VersionSetReference> exactMatch() {
+        return mapping.get(exactQueries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public Optional<VersionSetReference> fallbackMatch() {
+        return mapping.get(fallbackQueries[next++ & (QUERIES - 1)]);
+    }
+
+    /**
+     * Mapping i refines mapping i - 1 unless i is a multiple of three, which
+     * starts a new env.
+     */
+    private static MappingKey key(final int i) {
+        final int env = i - i % 3;
+        switch (i % 3) {
+            case 0:
+                return new MappingKey(ImmutableSet.of(scope("env", "env-" + env)));
+            case 1:
+                return new MappingKey(ImmutableSet.of(scope("env", "env-" + env), scope("region", "region-" + i)));
+            default:
+                return new MappingKey(ImmutableSet.of(scope("env", "env-" + env), scope("region", "region-" + (i - 1)),
+                    scope("stack", "stack-" + i)));
+        }
+    }
+
+}
@@ -35,9 +35,12 @@ public class JacksonConfig {
 	@Autowired
 	private MappingKeyDeserializer mappingKeyDeserializer;
 
-	// Add some configuration property parameters here to controller the Jackson ObjectMapper
+	/**
+	 * The settings of the application {@link ObjectMapper}. It is exposed so
+	 * that mappers for other data formats can be configured the same way.
+	 */
 	@Bean
-	public ObjectMapper jacksonObjectMapper() {	
+	public Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder() {
 		Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder();
 		
 		SimpleModule module = new SimpleModule();
@@ -47,8 +50,14 @@ public class JacksonConfig {
 		builder.modules(new JavaTimeModule(), module);
 		builder.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, SerializationFeature.WRITE_EMPTY_JSON_ARRAYS);
 		
+		return builder;
+	}
+
+	// Add some configuration property parameters here to controller the Jackson ObjectMapper
+	@Bean
+	public ObjectMapper jacksonObjectMapper() {	
 		
-		ObjectMapper mapper = builder.build();
+		ObjectMapper mapper = jacksonObjectMapperBuilder().build();
 		
 		return mapper;
 	}
@@ -26,7 +26,7 @@ import io.swagger.annotations.ApiModelProperty;
  *
  */
 @JsonDeserialize(builder = FileVersion.Builder.class, as = FileVersion.class)
-@JsonPropertyOrder({ "name", "version", "description", "content", "filename", "createdBy", "createdDate"})
+@JsonPropertyOrder({ "name", "version", "description", "content", "contentHash", "contentLength", "filename", "createdBy", "createdDate"})
 @ApiModel(description = "A file contains a name, version, description and file content.")
 public class FileVersion extends NamedVersionedModel {
 
@@ -40,6 +40,12 @@ public class FileVersion extends NamedVersionedModel {
     @ApiModelProperty(required = true, value = "The content file in bytes.")
     private final byte[] content;
 
+    @ApiModelProperty(required = false, value = "The SHA-256 hash of the content, in hexadecimal.")
+    private final String contentHash;
+
+    @ApiModelProperty(required = false, value = "The length of the content in bytes.")
+    private final Long contentLength;
+
     @ApiModelProperty(required = true, value = "The filename.")
     private String fileName;
 
@@ -47,6 +53,8 @@ public class FileVersion extends NamedVersionedModel {
         super(builder);
         this.description = builder.description;
         this.content = builder.content;
+        this.contentHash = builder.contentHash;
+        this.contentLength = builder.contentLength;
         this.fileName = builder.fileName;
     }
 
@@ -60,6 +68,14 @@ public class FileVersion extends NamedVersionedModel {
         return content;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public Long getContentLength() {
+        return contentLength;
+    }
+
     public String getFilename() {
 
         return fileName;
@@ -73,6 +89,8 @@ public class FileVersion extends NamedVersionedModel {
                         .add("version", this.getVersion())
                         .add("description", this.description)
                         .add("content", this.content)
+                        .add("contentHash", this.contentHash)
+                        .add("contentLength", this.contentLength)
                         .add("filename", this.fileName)
                         .toString();
     }
@@ -118,6 +136,8 @@ public class FileVersion extends NamedVersionedModel {
 
         private String description;
         private byte[] content;
+        private String contentHash;
+        private Long contentLength;
         private String fileName;
 
         private Builder(final FileVersion original) {
@@ -125,6 +145,8 @@ public class FileVersion extends NamedVersionedModel {
             super(original);
             this.description = original.getDescription();
             this.content = original.getContent();
+            this.contentHash = original.getContentHash();
+            this.contentLength = original.getContentLength();
             this.fileName = original.fileName;
         }
 
@@ -153,6 +175,16 @@ public class FileVersion extends NamedVersionedModel {
             return this;
         }
 
+        public Builder withContentHash(final String contentHash) {
+            this.contentHash = contentHash;
+            return this;
+        }
+
+        public Builder withContentLength(final Long contentLength) {
+            this.contentLength = contentLength;
+            return this;
+        }
+
         public Builder withFileName(final String fileName) {
 
             this.fileName = fileName;
@@ -1,29 +1,39 @@
 package com.kenzan.henge.domain.model;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.kenzan.henge.domain.utils.ScopeUtils;
 
 /**
  * Implementation of the mapping index as a HashMap. When getting a
  * {@link VersionSetReference}, it searches the map for a match as follows: 
- * 1 - iterates through all the entries looking for a mapping with the same
- * application name and version and returns that, if found. 
- * 2 - iterates a second time, doing a set difference operation on the scope 
- * sets (currentMappingKey.getScopeSet() - givenMappingKey.getScopeSet()) and
- * considers a match if the resulting set is empty. This allows the matching of
- * a more generic mapping in case the given key is not matched exactly.
+ * 1 - looks up the given key, returning the mapped value if found. 
+ * 2 - for each entry of the {@link ScopePrecedenceConfiguration} whose keys are
+ * all present in the given key, projects the given scope set on those keys and
+ * looks up every subset of the projection that has the scope keys of an
+ * existing mapping. This allows the matching of a more generic mapping in case
+ * the given key is not matched exactly. The last new match wins, and inside a
+ * precedence entry the more specific scope key sets are looked up last.
+ * <p>
+ * The scope key sets of the existing mappings are kept indexed by precedence
+ * entry, so a fallback lookup costs a few hash probes per precedence entry
+ * regardless of the number of mappings.
  *
  * @author wmatsushita
  */
@@ -39,11 +49,23 @@ public class VersionSetMapping implements Mapping<VersionSetReference> {
     private ScopePrecedenceConfiguration scopePrecedenceConfiguration;
 
     private Map<MappingKey, VersionSetReference> map;
+    
+    /**
+     * Number of mappings having each scope key set.
+     */
+    private transient Map<ImmutableSet<String>, Integer> scopeKeySetCounts;
+    
+    /**
+     * For each precedence entry, the scope key sets of the existing mappings
+     * that are contained in it, ordered from the least to the most specific.
+     */
+    private transient volatile ImmutableList<ImmutableList<ImmutableSet<String>>> precedenceIndex;
 
     public VersionSetMapping(ScopePrecedenceConfiguration scopePrecedenceConfiguration) {
 
         map = new ConcurrentHashMap<>();
         this.scopePrecedenceConfiguration = scopePrecedenceConfiguration;
+        rebuildIndex();
         
     }
 
@@ -63,46 +85,36 @@ public class VersionSetMapping implements Mapping<VersionSetReference> {
         VersionSetReference result = null;
         
         // in cases like application direct mapping, if we don't try the exact match first, the algorithm will waste time.
-        if(map.containsKey(queryKey)) {
-            return Optional.ofNullable(map.get(queryKey));
+        final VersionSetReference exactMatch = map.get(queryKey);
+        if(exactMatch != null) {
+            return Optional.of(exactMatch);
         }
         
         Set<Scope> queryScopeSet = queryKey.getScopeSet();
-        List<Set<Scope>> matches = new LinkedList<>();
         
-        LOGGER.debug("");
-        LOGGER.debug("queryScopeSet: " + queryScopeSet.toString());
+        LOGGER.debug("queryScopeSet: {}", queryScopeSet);
         
-        if (!queryScopeSet.isEmpty()) {
-            for (ImmutableSet<String> configScopeKeys : scopePrecedenceConfiguration.getInnerRepresentation()) {
+        if (queryScopeSet != null && !queryScopeSet.isEmpty()) {
+            final ImmutableSet<String> queryScopeKeys = ScopeUtils.extractScopeKeys(queryScopeSet);
+            final ImmutableList<ImmutableSet<String>> precedence = scopePrecedenceConfiguration.getInnerRepresentation();
+            final ImmutableList<ImmutableList<ImmutableSet<String>>> index = precedenceIndex;
+            final Set<MappingKey> matches = new HashSet<>();
+            
+            for (int i = 0; i < precedence.size(); i++) {
     
                 // if the set of keys of queryScopeSet do not contain all of the current configScopeKeys, skip this iteration
-                if(!ScopeUtils.extractScopeKeys(queryScopeSet).containsAll(configScopeKeys)) {
+                if(!queryScopeKeys.containsAll(precedence.get(i))) {
                     continue;
                 }
                 
-                // gets the intersection between the scope precedence key set and
-                // the mapping key scope key set
-                ImmutableSet<Scope> intersection = ScopeUtils.subScopeSet(queryScopeSet, configScopeKeys);
-    
-                for (Map.Entry<MappingKey, VersionSetReference> currentMappingEntry : map.entrySet()) {
-                    Set<Scope> scopeSet = currentMappingEntry.getKey().getScopeSet();
-    
-                    // skip this iteration if the scope set is null
-                    if (scopeSet == null)
-                        continue;
-    
-                    LOGGER.debug("-----------------------------------------------");
-                    LOGGER.debug("mappingScopeSet: " + scopeSet.toString());
-                    LOGGER.debug("intersection: " + intersection.toString());
-                    LOGGER.debug("-----------------------------------------------");
+                for (ImmutableSet<String> scopeKeySet : index.get(i)) {
+                    // the only mapping with these scope keys that can be contained in the query
+                    final MappingKey candidate = new MappingKey(ScopeUtils.subScopeSet(queryScopeSet, scopeKeySet));
+                    final VersionSetReference value = map.get(candidate);
                     
-                    // here we are doing the set difference operation: {mappingSet -
-                    // querySet = emptySet} -> found match
-                    if (intersection.containsAll(scopeSet) && !matches.contains(scopeSet)) {
-                        matches.add(scopeSet);
-                        result = currentMappingEntry.getValue();
-                        LOGGER.debug("Match!!! ---> " + result.getName());
+                    if (value != null && matches.add(candidate)) {
+                        result = value;
+                        LOGGER.debug("Match!!! ---> {} for {}", result.getName(), candidate);
                     }
                 }
             }
@@ -118,22 +130,29 @@ public class VersionSetMapping implements Mapping<VersionSetReference> {
      * @param value the {@link VersionSetReference} to bind to the given key.
      */
     @Override
-    public void put(MappingKey key, VersionSetReference value) {
+    public synchronized void put(MappingKey key, VersionSetReference value) {
 
-        map.put(key, value);
+        if (map.put(key, value) == null) {
+            indexKey(key, 1);
+        }
     }
 
     /**
      * @see com.kenzan.henge.domain.model.Mapping#remove(com.kenzan.henge.domain.model.MappingKey)
      */
     @Override
-    public void remove(MappingKey key) {
+    public synchronized void remove(MappingKey key) {
 
-        map.remove(key);
+        if (map.remove(key) != null) {
+            indexKey(key, -1);
+        }
 
     }
 
     /**
+     * The returned map must not be modified directly, as that would bypass
+     * the index used for the fallback lookups.
+     * 
      * @see com.kenzan.henge.domain.model.Mapping#getInnerRepresentation()
      */
     @Override
@@ -144,9 +163,75 @@ public class VersionSetMapping implements Mapping<VersionSetReference> {
     }
     
     @Override
-    public void setInnerRepresentation(Map<MappingKey, VersionSetReference> map) {
+    public synchronized void setInnerRepresentation(Map<MappingKey, VersionSetReference> map) {
         
         this.map = new ConcurrentHashMap<>(map);
+        rebuildIndex();
+        
+    }
+    
+    private void rebuildIndex() {
+        
+        scopeKeySetCounts = new HashMap<>();
+        for (MappingKey key : map.keySet()) {
+            final ImmutableSet<String> scopeKeySet = scopeKeySetOf(key);
+            if (scopeKeySet != null) {
+                scopeKeySetCounts.merge(scopeKeySet, 1, Integer::sum);
+            }
+        }
+        precedenceIndex = buildPrecedenceIndex();
+        
+    }
+    
+    /**
+     * Updates the count of mappings with the scope key set of the given key,
+     * rebuilding the precedence index only when a scope key set appears or
+     * disappears.
+     */
+    private void indexKey(final MappingKey key, final int delta) {
+        
+        final ImmutableSet<String> scopeKeySet = scopeKeySetOf(key);
+        if (scopeKeySet == null) {
+            return;
+        }
+        
+        final int count = scopeKeySetCounts.getOrDefault(scopeKeySet, 0) + delta;
+        if (count > 0) {
+            scopeKeySetCounts.put(scopeKeySet, count);
+        } else {
+            scopeKeySetCounts.remove(scopeKeySet);
+        }
+        
+        if (count == 0 || (count == 1 && delta > 0)) {
+            precedenceIndex = buildPrecedenceIndex();
+        }
+        
+    }
+    
+    private ImmutableList<ImmutableList<ImmutableSet<String>>> buildPrecedenceIndex() {
+        
+        final ImmutableList.Builder<ImmutableList<ImmutableSet<String>>> index = ImmutableList.builder();
+        for (ImmutableSet<String> configScopeKeys : scopePrecedenceConfiguration.getInnerRepresentation()) {
+            index.add(ImmutableList.copyOf(scopeKeySetCounts.keySet().stream()
+                .filter(configScopeKeys::containsAll)
+                .sorted(Comparator.comparingInt(Set::size))
+                .collect(Collectors.toList())));
+        }
+        
+        return index.build();
+        
+    }
+    
+    private static ImmutableSet<String> scopeKeySetOf(final MappingKey key) {
+        
+        return (key.getScopeSet() == null) ? null : ScopeUtils.extractScopeKeys(key.getScopeSet());
+        
+    }
+    
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        
+        in.defaultReadObject();
+        rebuildIndex();
         
     }
     
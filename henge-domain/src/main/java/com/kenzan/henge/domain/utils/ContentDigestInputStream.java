@@ -0,0 +1,104 @@
+package com.kenzan.henge.domain.utils;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Computes the SHA-256 hash and the length of the content as it is read, so
+ * that content being streamed to its destination does not need a second
+ * pass. Neither mark nor reset are supported.
+ *
+ * @author wmatsushita
+ */
+public class ContentDigestInputStream extends FilterInputStream {
+
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final Hasher hasher = Hashing.sha256().newHasher();
+
+    private long length;
+
+    private HashCode hash;
+
+    public ContentDigestInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+        if (b != -1) {
+            hasher.putByte((byte) b);
+            length++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = in.read(b, off, len);
+        if (read > 0) {
+            hasher.putBytes(b, off, read);
+            length += read;
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes still count towards the hash, so they are read.
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Finishes the hash computation. Must only be called once the content has
+     * been read to the end.
+     *
+     * @return the SHA-256 hash of the content, in hexadecimal
+     */
+    public String getHash() {
+        if (hash == null) {
+            hash = hasher.hash();
+        }
+        return hash.toString();
+    }
+
+}
@@ -1,34 +1,54 @@
 package com.kenzan.henge.domain.utils;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
-import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 import com.google.common.io.ByteStreams;
 import com.kenzan.henge.exception.RuntimeHengeException;
 
+/**
+ * Reads and writes JSON with the application {@link ObjectMapper}. The
+ * readers and writers are immutable and thread safe, so one is built for
+ * each type and reused. An empty input is read as null.
+ */
 @Component
 public class JsonUtils {
 	
-	private ObjectMapper mapper;
+	private final ObjectMapper mapper;
+	
+	private final ObjectMapper underscoreMapper;
+	
+	private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Type, ObjectReader> underscoreReaders = new ConcurrentHashMap<>();
+	
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+	
+	private final ObjectWriter indentedWriter;
 	
 	@Autowired
 	public JsonUtils(ObjectMapper mapper) {
 	    this.mapper = mapper;
+	    this.underscoreMapper = mapper.copy().setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
+	    this.indentedWriter = mapper.writerWithDefaultPrettyPrinter();
 	}
 	
 	public <T> T fromJson(final String json, final Class<T> clazz) throws IOException {
@@ -38,39 +58,41 @@ public class JsonUtils {
 	
 	public <T> T fromJson(final String json, final TypeReference<T> type) throws IOException {
 		
-		return new ObjectMapper().readValue(json, type);
+		final ObjectReader reader = readers.computeIfAbsent(type.getType(), t -> mapper.readerFor(type));
+		return read(reader.getFactory().createParser(json), reader);
 	}
 	
 	public <T> T fromJson(final String json, final Class<T> clazz, final boolean convertUnderscore) throws IOException {
-		JacksonJaxbJsonProvider parser = new JacksonJaxbJsonProvider();
-        parser.setMapper(mapper);
-        
-        if (convertUnderscore) {
-        	//TODO: improve this to inject another mapper instead of creating a new one every time.
-            ObjectMapper newMapper = new ObjectMapper();
-            newMapper.setPropertyNamingStrategy(PropertyNamingStrategy.CAMEL_CASE_TO_LOWER_CASE_WITH_UNDERSCORES);
-            parser.setMapper(newMapper);
-        }
-        
-        ByteArrayInputStream is = new ByteArrayInputStream(json.getBytes());
-        @SuppressWarnings("unchecked") T result =
-            (T) parser.readFrom(Object.class, clazz, null, MediaType.APPLICATION_JSON_TYPE, null, is);
-        return result;
+		
+		final ObjectReader reader = convertUnderscore ? underscoreReaderFor(clazz) : readerFor(clazz);
+		return read(reader.getFactory().createParser(json), reader);
+    }
+
+    public <T> T fromJson(final byte[] json, final Class<T> clazz) throws IOException {
+
+        final ObjectReader reader = readerFor(clazz);
+        return read(reader.getFactory().createParser(json), reader);
     }
 
     public <T> T fromJson(final InputStream json, final Class<T> clazz) throws IOException {
 
-        return fromJson(toString(json), clazz);
+        final ObjectReader reader = readerFor(clazz);
+        return read(reader.getFactory().createParser(json), reader);
     }
 
     public String toJson(final Object instance) throws JsonProcessingException {
 
-        return mapper.writeValueAsString(instance);
+        return writerFor(instance).writeValueAsString(instance);
+    }
+
+    public byte[] toJsonBytes(final Object instance) throws JsonProcessingException {
+
+        return writerFor(instance).writeValueAsBytes(instance);
     }
     
     public String toIndentedJson(final Object instance) throws JsonProcessingException {
 
-        return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(instance);
+        return indentedWriter.writeValueAsString(instance);
     }
     
 	public List<String> toJson(final List<?> jsons) {
@@ -91,4 +113,32 @@ public class JsonUtils {
         return out.toString();
     }
 
+    private ObjectReader readerFor(final Class<?> clazz) {
+
+        return readers.computeIfAbsent(clazz, type -> mapper.readerFor(clazz));
+    }
+
+    private ObjectReader underscoreReaderFor(final Class<?> clazz) {
+
+        return underscoreReaders.computeIfAbsent(clazz, type -> underscoreMapper.readerFor(clazz));
+    }
+
+    private ObjectWriter writerFor(final Object instance) {
+
+        return instance == null ? mapper.writer() : writers.computeIfAbsent(instance.getClass(), mapper::writerFor);
+    }
+
+    /**
+     * Reads the value from the parser, answering null on an empty input.
+     */
+    private static <T> T read(final JsonParser parser, final ObjectReader reader) throws IOException {
+
+        try (JsonParser p = parser) {
+            if (p.nextToken() == null) {
+                return null;
+            }
+            return reader.readValue(p);
+        }
+    }
+
 }
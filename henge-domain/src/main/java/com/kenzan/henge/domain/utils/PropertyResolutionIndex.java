@@ -0,0 +1,128 @@
+package com.kenzan.henge.domain.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyScopedValue;
+import com.kenzan.henge.domain.model.Scope;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Precompiled form of a {@link PropertyGroup} used for scope resolution. Each
+ * {@link Property} has its {@link PropertyScopedValue}s indexed by scope set,
+ * so resolving a value against the candidate scope sets returned by
+ * {@link ScopeUtils#candidateScopeSets(Set, ImmutableList)} is a sequence of
+ * hash probes instead of a scan over every scoped value.
+ *
+ * @author wmatsushita
+ */
+public final class PropertyResolutionIndex {
+
+    private static final String DEFAULT_SCOPE_LABEL = "default";
+
+    private final PropertyGroup propertyGroup;
+
+    private final ImmutableList<CompiledProperty> properties;
+
+    private PropertyResolutionIndex(final PropertyGroup propertyGroup, final ImmutableList<CompiledProperty> properties) {
+        this.propertyGroup = propertyGroup;
+        this.properties = properties;
+    }
+
+    /**
+     * Compiles the given {@link PropertyGroup}. The resulting index is
+     * immutable and can be shared between requests.
+     *
+     * @param propertyGroup
+     * @return the compiled index
+     */
+    public static PropertyResolutionIndex compile(final PropertyGroup propertyGroup) {
+        final ImmutableList.Builder<CompiledProperty> builder = ImmutableList.builder();
+        if (propertyGroup.getProperties() != null) {
+            for (Property property : propertyGroup.getProperties()) {
+                builder.add(new CompiledProperty(property));
+            }
+        }
+
+        return new PropertyResolutionIndex(propertyGroup, builder.build());
+    }
+
+    public PropertyGroup getPropertyGroup() {
+        return propertyGroup;
+    }
+
+    /**
+     * @return the compiled properties, in the iteration order of the
+     *         {@link PropertyGroup}
+     */
+    public ImmutableList<CompiledProperty> getProperties() {
+        return properties;
+    }
+
+    /**
+     * A {@link Property} with its scoped values keyed by scope set.
+     */
+    public static final class CompiledProperty {
+
+        private final Property property;
+
+        private final ImmutableMap<Set<Scope>, String[]> valuesByScopeSet;
+
+        private CompiledProperty(final Property property) {
+            this.property = property;
+
+            final Map<Set<Scope>, String[]> values = new HashMap<>();
+            if (property.getPropertyScopedValues() != null) {
+                for (PropertyScopedValue psv : property.getPropertyScopedValues()) {
+                    final ImmutableSet<Scope> scopeSet = ImmutableSet.copyOf(psv.getScopeSet());
+                    values.putIfAbsent(scopeSet, new String[] {toLabel(psv.getScopeSet()), psv.getValue()});
+                }
+            }
+            this.valuesByScopeSet = ImmutableMap.copyOf(values);
+        }
+
+        public Property getProperty() {
+            return property;
+        }
+
+        public String getName() {
+            return property.getName();
+        }
+
+        /**
+         * Resolves the value of this property for the given candidate scope
+         * sets, which must be ordered from the most to the least specific. The
+         * first candidate that has a scoped value wins.
+         *
+         * @param candidates the candidate scope sets
+         * @return a two position array holding the scope label and the value,
+         *         in the same format returned by
+         *         {@link ScopeUtils#getScopeValue(Property, Set, ImmutableList)}
+         */
+        public String[] resolve(final List<ImmutableSet<Scope>> candidates) {
+            if (!valuesByScopeSet.isEmpty()) {
+                for (ImmutableSet<Scope> candidate : candidates) {
+                    final String[] match = valuesByScopeSet.get(candidate);
+                    if (match != null) {
+                        return new String[] {match[0], match[1]};
+                    }
+                }
+            }
+
+            return new String[] {DEFAULT_SCOPE_LABEL, property.getDefaultValue()};
+        }
+
+        private static String toLabel(final Set<Scope> scopeSet) {
+            return scopeSet.stream().map(scope -> scope.getKey() + "=" + scope.getValue()).collect(Collectors.joining("&"));
+        }
+
+    }
+
+}
@@ -13,6 +13,7 @@ import com.kenzan.henge.exception.HengeParseException;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -130,6 +131,30 @@ public class ScopeUtils {
         
     }
 	
+    /**
+     * Projects the given set of {@link Scope} on every entry of the scope
+     * precedence configuration whose keys are all present in it. The result
+     * is ordered from the most to the least specific entry and holds no
+     * duplicates, so it can be computed once per request and probed against
+     * any number of scope-set keyed structures.
+     * 
+     * @param scopes the scopes given in the search
+     * @param scopePrecedenceConfig the inner representation of the scope precedence configuration
+     * @return the candidate scope sets, most specific first
+     */
+    public static ImmutableList<ImmutableSet<Scope>> candidateScopeSets(final Set<Scope> scopes, final ImmutableList<ImmutableSet<String>> scopePrecedenceConfig) {
+        final ImmutableSet<String> scopeKeys = extractScopeKeys(scopes);
+        final Set<ImmutableSet<Scope>> candidates = new LinkedHashSet<>();
+        
+        for (ImmutableSet<String> configScopeKeys : scopePrecedenceConfig.reverse()) {
+            if (scopeKeys.containsAll(configScopeKeys)) {
+                candidates.add(subScopeSet(scopes, configScopeKeys));
+            }
+        }
+        
+        return ImmutableList.copyOf(candidates);
+    }
+	
 	/**
 	 * Retrieve the correct value by scope
 	 * 
@@ -137,31 +162,19 @@ public class ScopeUtils {
 	 * @return Property value by scope
 	 */
 	public static String[] getScopeValue(final Property p, final Set<Scope> scopes, final ImmutableList<ImmutableSet<String>> scopePrecedenceConfig) {
-        String[] result = {"default", p.getDefaultValue()};
         
-	    Set<Set<Scope>> matches = new HashSet<>();
-        for (ImmutableSet<String> configScopeKeys : scopePrecedenceConfig) {
-            // if the set of keys of scopes do not contain all of the current configScopeKeys, skip this iteration
-            if(!ScopeUtils.extractScopeKeys(scopes).containsAll(configScopeKeys)) {
-                continue;
-            }
-            // gets the intersection between the scope precedence key set and
-            // the mapping key scope key set
-            ImmutableSet<Scope> intersection = ScopeUtils.subScopeSet(scopes, configScopeKeys);
-            
-            Optional<PropertyScopedValue> propertyScopedValue = p.getPropertyScopedValues().parallelStream()
-                            .filter(psv -> psv.getScopeSet().equals(intersection))
+        for (ImmutableSet<Scope> candidate : candidateScopeSets(scopes, scopePrecedenceConfig)) {
+            Optional<PropertyScopedValue> propertyScopedValue = p.getPropertyScopedValues().stream()
+                            .filter(psv -> psv.getScopeSet().equals(candidate))
                             .findFirst();
             
-            if (propertyScopedValue.isPresent() && !matches.contains(propertyScopedValue.get().getScopeSet())) {
-                matches.add(propertyScopedValue.get().getScopeSet());
-                result[0] = propertyScopedValue.get().getScopeSet().stream().map(scope -> scope.getKey() + "=" +scope.getValue()).collect(Collectors.joining("&"));
-                result[1] = propertyScopedValue.get().getValue(); 
+            if (propertyScopedValue.isPresent()) {
+                final String scope = propertyScopedValue.get().getScopeSet().stream().map(s -> s.getKey() + "=" + s.getValue()).collect(Collectors.joining("&"));
+                return new String[] {scope, propertyScopedValue.get().getValue()};
             }
-            
         }
         
-        return result;
+        return new String[] {"default", p.getDefaultValue()};
 
 	}
 	
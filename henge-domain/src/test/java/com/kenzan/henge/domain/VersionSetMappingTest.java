@@ -201,6 +201,25 @@ public class VersionSetMappingTest {
 
     }
     
+    @Test
+    public void testFallbackAfterRemove() {
+        
+        final MappingKey removedKey = new MappingKey(ImmutableSet.copyOf(Sets.newHashSet(ENVS[1], REGIONS[1])));
+        final MappingKey queryKey = new MappingKey(addApplicationToScope("unmatchableAppName", ScopeUtils.parseScopeString("env=env-1,region=region-1,stack=stack-3")));
+        
+        mapping.remove(removedKey);
+        assertEquals("test-version-set-9", mapping.get(queryKey).get().getName());
+        
+        mapping.put(removedKey, vsReferences[14]);
+        assertEquals("test-version-set-14", mapping.get(queryKey).get().getName());
+        
+        // once the only mapping with the application scope key is gone, that key set is no longer looked up
+        mapping.remove(new MappingKey(ImmutableSet.of(Scope.builder(SCOPE_APPLICATION_NAME_KEY, "application-0").build())));
+        mapping.remove(new MappingKey(ImmutableSet.of(Scope.builder(SCOPE_APPLICATION_NAME_KEY, "application-1").build())));
+        assertEquals("test-version-set-5", mapping.get(new MappingKey(addApplicationToScope("application-1", ScopeUtils.parseScopeString("env=env-0,region=region-1")))).get().getName());
+        
+    }
+    
     @Test
     public void testJsonSerialization() throws Exception {
         
@@ -0,0 +1,38 @@
+package com.kenzan.henge.domain.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+
+/**
+ * Unit test for {@link ContentDigestInputStream} class
+ *
+ * @author wmatsushita
+ */
+public class ContentDigestInputStreamTest {
+
+    @Test
+    public void testHashAndLength() throws Exception {
+
+        final byte[] content = "Text content of file".getBytes(StandardCharsets.UTF_8);
+
+        final ContentDigestInputStream in = new ContentDigestInputStream(new ByteArrayInputStream(content));
+        in.read();
+        in.skip(3);
+        ByteStreams.toByteArray(in);
+
+        assertEquals(content.length, in.getLength());
+        assertEquals(Hashing.sha256().hashBytes(content).toString(), in.getHash());
+        // the hash is only computed once
+        assertEquals(Hashing.sha256().hashBytes(content).toString(), in.getHash());
+
+    }
+
+}
@@ -2,12 +2,14 @@ package com.kenzan.henge.domain.utils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.kenzan.henge.config.TestContextConfig;
 import com.kenzan.henge.domain.model.Property;
 import com.kenzan.henge.domain.model.PropertyScopedValue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import org.junit.Test;
@@ -53,6 +55,23 @@ public class JsonUtilsTest {
 		assertEquals("Description", property.getDescription());
 	}
 	
+	@Test
+	public void fromJsonBytesTest() throws IOException {
+		
+	    final Property property = new Property.Builder("propertyName").withDescription("Descrição").build();
+		
+		final byte[] json = jsonUtils.toJsonBytes(property);
+		assertEquals(property.getDescription(), jsonUtils.fromJson(json, Property.class).getDescription());
+		assertEquals(property.getDescription(), jsonUtils.fromJson(new ByteArrayInputStream(json), Property.class).getDescription());
+	}
+	
+	@Test
+	public void fromEmptyJsonTest() throws IOException {
+		
+		assertNull(jsonUtils.fromJson("", Property.class));
+		assertNull(jsonUtils.fromJson(new byte[0], Property.class));
+	}
+	
 	@Configuration
 	@ComponentScan("com.kenzan.henge")
 	public static class TestConfig {
@@ -0,0 +1,80 @@
+package com.kenzan.henge.domain.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Set;
+
+import org.assertj.core.util.Sets;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyScopedValue;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.model.ScopePrecedenceConfiguration;
+import com.kenzan.henge.domain.utils.PropertyResolutionIndex.CompiledProperty;
+
+public class PropertyResolutionIndexTest {
+
+	private final Scope env = Scope.builder("env", "dev").build();
+	private final Scope region = Scope.builder("region", "us-west-2").build();
+	private final Scope stack = Scope.builder("stack", "stacknet").build();
+	private final Scope hostname = Scope.builder("hostname", "host-1").build();
+
+	private final ImmutableList<ImmutableSet<String>> precedence =
+			new ScopePrecedenceConfiguration("env;env+region;env+region+stack;hostname;application").getInnerRepresentation();
+
+	private final Property property = Property.builder("property")
+			.withDefaultValue("default-value")
+			.withScopedValues(
+					PropertyScopedValue.builder(Sets.newLinkedHashSet(env), "env-value").build(),
+					PropertyScopedValue.builder(Sets.newLinkedHashSet(env, region), "env-region-value").build(),
+					PropertyScopedValue.builder(Sets.newLinkedHashSet(hostname), "hostname-value").build())
+			.build();
+
+	private final CompiledProperty compiled =
+			PropertyResolutionIndex.compile(PropertyGroup.builder("group", "1.0.0").withProperties(property).build()).getProperties().get(0);
+
+	@Test
+	public void candidateScopeSetsTest() {
+		final Set<Scope> scopes = Sets.newLinkedHashSet(env, region, stack);
+
+		ImmutableList<ImmutableSet<Scope>> candidates = ScopeUtils.candidateScopeSets(scopes, precedence);
+
+		assertEquals(3, candidates.size());
+		assertEquals(ImmutableSet.of(env, region, stack), candidates.get(0));
+		assertEquals(ImmutableSet.of(env, region), candidates.get(1));
+		assertEquals(ImmutableSet.of(env), candidates.get(2));
+	}
+
+	@Test
+	public void resolveMostSpecificTest() {
+		assertResolution(Sets.newLinkedHashSet(env, region, stack));
+		assertResolution(Sets.newLinkedHashSet(env, region, hostname));
+		assertEquals("hostname-value", resolve(Sets.newLinkedHashSet(env, region, hostname))[1]);
+	}
+
+	@Test
+	public void resolveFallbackTest() {
+		assertResolution(Sets.newLinkedHashSet(env, stack));
+		assertEquals("env-value", resolve(Sets.newLinkedHashSet(env, stack))[1]);
+	}
+
+	@Test
+	public void resolveDefaultTest() {
+		assertResolution(Sets.newLinkedHashSet(region, stack));
+		assertArrayEquals(new String[] {"default", "default-value"}, resolve(Sets.newLinkedHashSet(region, stack)));
+	}
+
+	private String[] resolve(final Set<Scope> scopes) {
+		return compiled.resolve(ScopeUtils.candidateScopeSets(scopes, precedence));
+	}
+
+	private void assertResolution(final Set<Scope> scopes) {
+		assertArrayEquals(ScopeUtils.getScopeValue(property, scopes, precedence), resolve(scopes));
+	}
+
+}
@@ -1,19 +1,40 @@
 package com.kenzan.henge.config;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.guava.GuavaCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
 
+/**
+ * Configures the caches of the business delegates. Every cache records its
+ * statistics and is bounded either by entry count or, when a maximum weight
+ * is configured, by the serialized size of its entries in bytes. The bounds
+ * can be set for all caches through cache.maximum.size and
+ * cache.maximum.weight, and for each cache through
+ * cache.&lt;name&gt;.maximum.size and cache.&lt;name&gt;.maximum.weight.
+ * <p>
+ * The caches are {@link RefreshingCache}s, so each key is loaded once by
+ * concurrent readers, and entries older than cache.refresh.minutes are
+ * reloaded in the background before they expire. Absent values are kept
+ * for cache.absent.expiration.seconds only.
+ */
 @Configuration
 @EnableCaching
 public class CacheConfig {
@@ -26,6 +47,29 @@ public class CacheConfig {
     @Value("${cache.expiration.minutes}")
     private int expirationTime;
 
+    @Value("${cache.maximum.size:10000}")
+    private long maximumSize;
+
+    @Value("${cache.maximum.weight:0}")
+    private long maximumWeight;
+
+    @Value("${cache.refresh.minutes:0}")
+    private int refreshTime;
+
+    @Value("${cache.refresh.threads:2}")
+    private int refreshThreads;
+
+    @Value("${cache.absent.expiration.seconds:30}")
+    private int absentExpirationTime;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private ExecutorService refreshExecutor;
+
     @Bean(name = PROPERTY_GROUP_CACHE)
     public Cache propertyGroupCache() {
         return createCache(PROPERTY_GROUP_CACHE);
@@ -46,8 +90,7 @@ public class CacheConfig {
     @Bean(name = FILE_API_CACHE)
     public Cache fileAPICache() {
 
-        return new GuavaCache(FILE_API_CACHE, CacheBuilder.newBuilder()
-            .expireAfterWrite(expirationTime, TimeUnit.MINUTES).build());
+        return createCache(FILE_API_CACHE);
     }
 
     @Bean
@@ -59,14 +102,47 @@ public class CacheConfig {
         return cacheManager;
     }
 
-    private Cache createCache(String name) {
-        return (expirationTime > 0) ? 
-            new GuavaCache(name,
-                CacheBuilder.newBuilder()
-                .expireAfterWrite(expirationTime, TimeUnit.MINUTES).build()) :
-            new GuavaCache(name, 
-                CacheBuilder.newBuilder().build());
+    @PreDestroy
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
 
+    private synchronized ExecutorService refreshExecutor() {
+        if (refreshExecutor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            refreshExecutor = Executors.newFixedThreadPool(refreshThreads, runnable -> {
+                final Thread thread = new Thread(runnable, "cache-refresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refreshExecutor;
+    }
+
+    private Cache createCache(String name) {
+        final Ticker ticker = Ticker.systemTicker();
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().ticker(ticker).recordStats();
+        if (expirationTime > 0) {
+            builder.expireAfterWrite(expirationTime, TimeUnit.MINUTES);
+        }
+
+        final long weight = environment.getProperty("cache." + name + ".maximum.weight", Long.class, maximumWeight);
+        if (weight > 0) {
+            final SerializedSizeWeigher weigher = new SerializedSizeWeigher(objectMapper);
+            builder.maximumWeight(weight)
+                .weigher((key, entry) -> weigher.weigh(key, ((RefreshingCache.Entry) entry).getValue()));
+        } else {
+            builder.maximumSize(environment.getProperty("cache." + name + ".maximum.size", Long.class, maximumSize));
+        }
+
+        // refreshing only makes sense ahead of the expiration
+        final long refreshNanos = refreshTime > 0 && (expirationTime <= 0 || refreshTime < expirationTime)
+            ? TimeUnit.MINUTES.toNanos(refreshTime) : 0;
+
+        return new RefreshingCache(name, builder.<Object, RefreshingCache.Entry>build(), refreshNanos,
+            TimeUnit.SECONDS.toNanos(Math.max(absentExpirationTime, 0)), refreshExecutor(), ticker);
     }
     
 }
@@ -0,0 +1,43 @@
+package com.kenzan.henge.config;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.google.common.collect.ImmutableList;
+import com.kenzan.henge.domain.utils.JsonUtils;
+import com.kenzan.henge.repository.codec.DelegatingEntityCodec;
+import com.kenzan.henge.repository.codec.EntityCodec;
+import com.kenzan.henge.repository.codec.JsonEntityCodec;
+import com.kenzan.henge.repository.codec.SmileEntityCodec;
+
+/**
+ * Provides the {@link EntityCodec} of the repositories. The entities are
+ * written in the format named by repository.codec, either json or smile, and
+ * read in whichever of them they were written.
+ *
+ * @author wmatsushita
+ */
+@Configuration
+public class EntityCodecConfig {
+
+    @Value("${repository.codec:json}")
+    private String codecName;
+
+    @Bean
+    public EntityCodec entityCodec(final JsonUtils jsonUtils, final Jackson2ObjectMapperBuilder jacksonObjectMapperBuilder) {
+
+        final List<EntityCodec> codecs =
+            ImmutableList.of(new SmileEntityCodec(jacksonObjectMapperBuilder), new JsonEntityCodec(jsonUtils));
+        final EntityCodec writer = codecs.stream()
+            .filter(codec -> codec.getName().equalsIgnoreCase(codecName.trim()))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("Unknown repository.codec [" + codecName + "]."));
+
+        return new DelegatingEntityCodec(writer, codecs);
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.kenzan.henge.config;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Spring {@link Cache} backed by a Guava cache that loads each key once, no
+ * matter how many threads miss it at the same time, and reloads the entries
+ * older than the refresh interval in the background while still serving the
+ * current value. Hot keys are then refreshed before they expire instead of
+ * all their readers missing at once.
+ * <p>
+ * Absent values, either null or an empty {@link Optional}, are cached for a
+ * shorter time than the others and are not refreshed. That spares the
+ * repositories from repeated lookups of names that do not exist, while a
+ * name that is created is found soon after, even by the instances that did
+ * not create it. The instance that creates it drops the absent entries right
+ * away through {@link #evictAbsent(Cache, String)}.
+ * <p>
+ * The Spring cache annotations do not hand the loader to the cache, so the
+ * reads go through {@link #get(Cache, Object, Callable)} instead.
+ *
+ * @author wmatsushita
+ */
+public class RefreshingCache implements Cache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshingCache.class);
+
+    private final String name;
+
+    private final com.google.common.cache.Cache<Object, Entry> cache;
+
+    private final long refreshNanos;
+
+    private final long absentNanos;
+
+    private final Executor refreshExecutor;
+
+    private final Ticker ticker;
+
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param name the name of the cache
+     * @param cache the Guava cache holding the entries
+     * @param refreshNanos the age after which an entry is reloaded on access, or zero to never reload
+     * @param absentNanos the age after which an absent value is discarded, or zero to keep it as any other
+     * @param refreshExecutor runs the reloads
+     * @param ticker the time source, which must be the one of the Guava cache
+     */
+    public RefreshingCache(final String name, final com.google.common.cache.Cache<Object, Entry> cache,
+        final long refreshNanos, final long absentNanos, final Executor refreshExecutor, final Ticker ticker) {
+        this.name = name;
+        this.cache = cache;
+        this.refreshNanos = refreshNanos;
+        this.absentNanos = absentNanos;
+        this.refreshExecutor = refreshExecutor;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Reads the value from the cache, loading it on a miss. The caches that
+     * are not {@link RefreshingCache}s are read and then written, without
+     * protection against concurrent loads.
+     *
+     * @param cache the cache to read from
+     * @param key the key of the value
+     * @param loader loads the value on a miss
+     * @return the cached or loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(final Cache cache, final Object key, final Callable<T> loader) {
+        if (cache instanceof RefreshingCache) {
+            return ((RefreshingCache) cache).get(key, loader);
+        }
+
+        final ValueWrapper cached = cache.get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        final T value = call(loader);
+        cache.put(key, value);
+        return value;
+    }
+
+    /**
+     * Drops the cached absent values whose keys begin with the given prefix,
+     * typically the name of an entity that was just created.
+     *
+     * @param cache the cache to evict from. Only {@link RefreshingCache}s tell absent values apart.
+     * @param keyPrefix the prefix of the keys
+     */
+    public static void evictAbsent(final Cache cache, final String keyPrefix) {
+        if (cache instanceof RefreshingCache) {
+            ((RefreshingCache) cache).cache.asMap().entrySet()
+                .removeIf(entry -> entry.getValue().isAbsent() && entry.getKey().toString().startsWith(keyPrefix));
+        }
+    }
+
+    /**
+     * Reads the value, loading it on a miss. Concurrent misses on the same
+     * key wait for a single load. A value older than the refresh interval is
+     * returned as is, and reloaded in the background.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Callable<T> loader) {
+        Entry entry = load(key, loader);
+        if (isExpiredAbsence(entry)) {
+            cache.asMap().remove(key, entry);
+            entry = load(key, loader);
+        }
+
+        if (refreshNanos > 0 && !entry.isAbsent() && ticker.read() - entry.writtenAt >= refreshNanos) {
+            refresh(key, entry, loader);
+        }
+
+        return (T) entry.value;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public com.google.common.cache.Cache<Object, Entry> getNativeCache() {
+        return cache;
+    }
+
+    @Override
+    public ValueWrapper get(final Object key) {
+        final Entry entry = getIfPresent(key);
+        return entry != null ? new SimpleValueWrapper(entry.value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final Object key, final Class<T> type) {
+        final Entry entry = getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (type != null && entry.value != null && !type.isInstance(entry.value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + entry.value);
+        }
+        return (T) entry.value;
+    }
+
+    @Override
+    public void put(final Object key, final Object value) {
+        cache.put(key, new Entry(value, ticker.read()));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(final Object key, final Object value) {
+        final Entry existing = cache.asMap().putIfAbsent(key, new Entry(value, ticker.read()));
+        return existing != null ? new SimpleValueWrapper(existing.value) : null;
+    }
+
+    @Override
+    public void evict(final Object key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private Entry load(final Object key, final Callable<?> loader) {
+        try {
+            return cache.get(key, () -> new Entry(loader.call(), ticker.read()));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    private Entry getIfPresent(final Object key) {
+        final Entry entry = cache.getIfPresent(key);
+        if (entry != null && isExpiredAbsence(entry)) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean isExpiredAbsence(final Entry entry) {
+        return absentNanos > 0 && entry.isAbsent() && ticker.read() - entry.writtenAt >= absentNanos;
+    }
+
+    /**
+     * Reloads the entry unless a reload of the key is already running. The
+     * reloaded value only replaces the entry it was loaded for, so a value
+     * written or evicted in the meantime is kept.
+     */
+    private void refresh(final Object key, final Entry stale, final Callable<?> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    cache.asMap().replace(key, stale, new Entry(loader.call(), ticker.read()));
+                } catch (Exception e) {
+                    LOGGER.warn("Could not refresh the entry [{}] of the cache {}.", key, name, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private static <T> T call(final Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            throw propagate(e);
+        }
+    }
+
+    private static RuntimeException propagate(final Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * A cached value, which may be null, with the time it was written.
+     * Entries are compared by identity.
+     */
+    public static final class Entry {
+
+        private final Object value;
+
+        private final long writtenAt;
+
+        private Entry(final Object value, final long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        private boolean isAbsent() {
+            return value == null || (value instanceof Optional && !((Optional<?>) value).isPresent());
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.kenzan.henge.config;
+
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Weigher;
+
+/**
+ * Weighs the cache entries by the size in bytes of their JSON serialization,
+ * which is proportional to the memory they hold. The values cached by the
+ * business delegates are {@link Optional}s, so they are unwrapped first.
+ *
+ * @author wmatsushita
+ */
+public class SerializedSizeWeigher implements Weigher<Object, Object> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SerializedSizeWeigher.class);
+
+    private final ObjectMapper objectMapper;
+
+    public SerializedSizeWeigher(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public int weigh(final Object key, final Object value) {
+        final Object unwrapped = value instanceof Optional ? ((Optional<?>) value).orElse(null) : value;
+        try {
+            return key.toString().length() + objectMapper.writeValueAsBytes(unwrapped).length;
+        } catch (JsonProcessingException e) {
+            // weighing must not fail the caching of the value
+            LOGGER.warn("Could not weigh the cache entry [{}].", key, e);
+            return 1;
+        }
+    }
+
+}
@@ -17,6 +17,7 @@ package com.kenzan.henge.repository;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import com.kenzan.henge.domain.model.NamedVersionedModel;
 
@@ -81,6 +82,20 @@ public interface BaseCrudRepository<E extends NamedVersionedModel> {
      */
 	public Optional<E> read(final String name, final String version);
 
+    /**
+     * Reads a specific version of an entity without blocking the caller.
+     * Implementations backed by an asynchronous client should override it.
+     * The default implementation runs {@link #read(String, String)} on the
+     * common pool.
+     * 
+     * @param name the name of the entity.
+     * @param version the version of the entity.
+     * @return a future of the same result {@link #read(String, String)} returns.
+     */
+	public default CompletableFuture<Optional<E>> readAsync(final String name, final String version) {
+	    return CompletableFuture.supplyAsync(() -> read(name, version));
+	}
+
     /**
      * Lists all the available versions o the the entity with
      * given name. Implementations must return an absent {@link Optional} if there are no versions
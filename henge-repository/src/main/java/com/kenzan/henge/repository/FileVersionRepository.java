@@ -1,6 +1,18 @@
 package com.kenzan.henge.repository;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Optional;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.io.IOUtils;
+
 import com.kenzan.henge.domain.model.FileVersion;
+import com.kenzan.henge.exception.HengeIOException;
 
 /**
  * The DAO interface for manipulating {@link FileVersion}s.
@@ -9,4 +21,84 @@ import com.kenzan.henge.domain.model.FileVersion;
  */
 public interface FileVersionRepository extends BaseCrudRepository<FileVersion> {
 
+    /**
+     * Persists a new entity whose content is read from the given stream.
+     * Implementations that store the content apart from the model should
+     * override it, so that the content is not loaded into memory. The default
+     * implementation reads the whole content and calls {@link #create(FileVersion)}.
+     * 
+     * @param entity the entity with the data to be persisted, except for the content.
+     * @param content the stream with the content. It is not closed by this method.
+     * @return the entity with the version filled in.
+     */
+    public default FileVersion create(final FileVersion entity, final InputStream content) {
+        return create(FileVersion.builder(entity).withContent(toByteArray(content)).build());
+    }
+
+    /**
+     * Updates the entity by persisting a new versioned instance of it, whose
+     * content is read from the given stream. The default implementation reads
+     * the whole content and calls {@link #update(String, FileVersion)}.
+     * 
+     * @param name the name of the entity.
+     * @param entity the entity with data that updates the current version, except for the content.
+     * @param content the stream with the content. It is not closed by this method.
+     * @return an {@link Optional} with the entity or absent, in case the given name
+     *         points to a non existent entity.
+     */
+    public default Optional<FileVersion> update(final String name, final FileVersion entity, final InputStream content) {
+        return update(name, FileVersion.builder(entity).withContent(toByteArray(content)).build());
+    }
+
+    /**
+     * Reads the latest version of a {@link FileVersion} without its content.
+     * Implementations that store the content apart from the model should
+     * override it, so that the content is not read. The default
+     * implementation reads the whole entity and drops the content.
+     * 
+     * @param name the name of the entity.
+     * @return an {@link Optional} with the entity, without content, or absent
+     *         in case the given name points to a non existent entity.
+     */
+    public default Optional<FileVersion> readMetadata(final String name) {
+        return read(name).map(fileVersion -> FileVersion.builder(fileVersion).withContent(null).build());
+    }
+
+    /**
+     * Reads a specific version of a {@link FileVersion} without its content.
+     * 
+     * @param name the name of the entity.
+     * @param version the version of the entity.
+     * @return an {@link Optional} with the entity, without content, or absent
+     *         in case the given name and version point to a non existent entity.
+     * @see #readMetadata(String)
+     */
+    public default Optional<FileVersion> readMetadata(final String name, final String version) {
+        return read(name, version).map(fileVersion -> FileVersion.builder(fileVersion).withContent(null).build());
+    }
+
+    /**
+     * Opens the content of a specific version of a {@link FileVersion} for
+     * streaming. Implementations that store the content apart from the model
+     * should override it, so that the content is not loaded into memory. The
+     * default implementation reads the whole entity.
+     * 
+     * @param name the name of the entity.
+     * @param version the version of the entity.
+     * @return an {@link Optional} with a channel over the content, which the
+     *         caller must close, or absent in case the given name and version
+     *         point to a non existent entity.
+     */
+    public default Optional<ReadableByteChannel> openContent(final String name, final String version) {
+        return read(name, version).map(fileVersion -> Channels.newChannel(new ByteArrayInputStream(fileVersion.getContent())));
+    }
+
+    static byte[] toByteArray(final InputStream content) {
+        try {
+            return IOUtils.toByteArray(content);
+        } catch (IOException e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, "An IO error occured while trying to read the content", e);
+        }
+    }
+
 }
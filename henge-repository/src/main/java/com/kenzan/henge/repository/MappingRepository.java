@@ -1,6 +1,7 @@
 package com.kenzan.henge.repository;
 
 import com.kenzan.henge.domain.model.Mapping;
+import com.kenzan.henge.domain.model.MappingKey;
 import com.kenzan.henge.domain.model.NamedVersionedModelReference;
 
 /**
@@ -33,5 +34,28 @@ public interface MappingRepository<T extends NamedVersionedModelReference> {
      *         whenever a reference to a mapping is needed
      */
     public Mapping<T> load();
+
+    /**
+     * Persists a single entry that was put into the given mapping. Unlike
+     * {@link #save(Mapping)}, implementations only write the changed entry,
+     * so the cost does not depend on the size of the mapping.
+     * 
+     * @param mapping the mapping instance that already holds the entry
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @return the persisted mapping
+     */
+    public Mapping<T> put(Mapping<T> mapping, MappingKey key, T value);
+
+    /**
+     * Persists the removal of a single entry from the given mapping. Unlike
+     * {@link #save(Mapping)}, implementations only write the removed entry,
+     * so the cost does not depend on the size of the mapping.
+     * 
+     * @param mapping the mapping instance the entry was removed from
+     * @param key the key of the removed entry
+     * @return the persisted mapping
+     */
+    public Mapping<T> remove(Mapping<T> mapping, MappingKey key);
     
 }
@@ -0,0 +1,66 @@
+package com.kenzan.henge.repository.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Writes the entities with the configured codec, and reads them with
+ * whichever known codec wrote them. This keeps the entities stored before
+ * the configured codec was changed readable until they are migrated.
+ *
+ * @author wmatsushita
+ */
+public class DelegatingEntityCodec implements EntityCodec {
+
+    private final EntityCodec writer;
+
+    private final ImmutableList<EntityCodec> readers;
+
+    /**
+     * @param writer the codec that encodes the entities
+     * @param readers every known codec, in the order they are checked against
+     *        the stored data
+     */
+    public DelegatingEntityCodec(final EntityCodec writer, final List<EntityCodec> readers) {
+        this.writer = writer;
+        this.readers = ImmutableList.copyOf(readers);
+    }
+
+    @Override
+    public String getName() {
+        return writer.getName();
+    }
+
+    @Override
+    public boolean isBinary() {
+        return writer.isBinary();
+    }
+
+    @Override
+    public boolean isEncoded(final byte[] data) {
+        return writer.isEncoded(data);
+    }
+
+    @Override
+    public byte[] encode(final Object entity) throws JsonProcessingException {
+        return writer.encode(entity);
+    }
+
+    /**
+     * Decodes the data with the codec that wrote it. Data no codec recognizes
+     * is handed to the configured codec, which reports the problem.
+     */
+    @Override
+    public <T> T decode(final byte[] data, final Class<T> type) throws IOException {
+        for (EntityCodec reader : readers) {
+            if (reader.isEncoded(data)) {
+                return reader.decode(data, type);
+            }
+        }
+        return writer.decode(data, type);
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.kenzan.henge.repository.codec;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Encodes the entities kept by the repositories into the format they are
+ * stored in, and decodes them back. Which codec writes the entities of a
+ * repository is set by the repository.codec property of its profile.
+ *
+ * @author wmatsushita
+ */
+public interface EntityCodec {
+
+    /**
+     * @return the name the codec is configured by
+     */
+    String getName();
+
+    /**
+     * @return true if the codec writes binary data, which cannot be kept in a
+     *         text column
+     */
+    boolean isBinary();
+
+    /**
+     * Tells whether the data is in the format written by this codec, by
+     * looking at its first bytes only.
+     *
+     * @param data the stored data
+     * @return true if this codec wrote the data
+     */
+    boolean isEncoded(byte[] data);
+
+    byte[] encode(Object entity) throws JsonProcessingException;
+
+    /**
+     * Decodes the data into an instance of the given type. Empty data is
+     * decoded as null.
+     */
+    <T> T decode(byte[] data, Class<T> type) throws IOException;
+
+}
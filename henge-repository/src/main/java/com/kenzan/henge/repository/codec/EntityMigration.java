@@ -0,0 +1,17 @@
+package com.kenzan.henge.repository.codec;
+
+/**
+ * Rewrites the entities stored by a repository implementation in the format
+ * of the configured {@link EntityCodec}. Entities already in that format are
+ * left untouched, so a migration can be run again after being interrupted.
+ *
+ * @author wmatsushita
+ */
+public interface EntityMigration {
+
+    /**
+     * @return the number of entities rewritten
+     */
+    int migrate();
+
+}
@@ -0,0 +1,97 @@
+package com.kenzan.henge.repository.codec;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the {@link EntityMigration}s of the active repository implementation
+ * once the application has started, when repository.codec.migrate is set. It
+ * runs after the other {@link ApplicationRunner}s, such as the one creating
+ * the flat file repository folders, and in the background, so the service
+ * serves requests meanwhile. That is safe since every stored entity is
+ * readable in either format.
+ *
+ * @author wmatsushita
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class EntityMigrationRunner implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityMigrationRunner.class);
+
+    /**
+     * Only the flat file and Cassandra profiles provide migrations
+     */
+    @Autowired(required = false)
+    private List<EntityMigration> migrations = Collections.emptyList();
+
+    private final EntityCodec entityCodec;
+
+    private final boolean migrateOnStartup;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "entity-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public EntityMigrationRunner(final EntityCodec entityCodec,
+        @Value("${repository.codec.migrate:false}") final boolean migrateOnStartup) {
+        this.entityCodec = entityCodec;
+        this.migrateOnStartup = migrateOnStartup;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+
+        if (migrateOnStartup) {
+            worker.execute(this::run);
+        }
+
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Runs every migration in the calling thread. A migration that fails is
+     * logged and does not prevent the others from running.
+     *
+     * @return the number of entities rewritten
+     */
+    public int run() {
+
+        LOGGER.info("Migrating the stored entities to the {} format.", entityCodec.getName());
+        int migrated = 0;
+        for (EntityMigration migration : migrations) {
+            try {
+                migrated += migration.migrate();
+            } catch (RuntimeException e) {
+                LOGGER.error("The {} migration failed. It can be run again, since migrated entities are skipped.",
+                    migration.getClass().getSimpleName(), e);
+            }
+        }
+        LOGGER.info("{} entities were migrated to the {} format.", migrated, entityCodec.getName());
+
+        return migrated;
+
+    }
+
+}
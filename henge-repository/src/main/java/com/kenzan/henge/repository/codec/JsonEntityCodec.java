@@ -0,0 +1,58 @@
+package com.kenzan.henge.repository.codec;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.kenzan.henge.domain.utils.JsonUtils;
+
+/**
+ * Stores the entities as JSON text, encoded in UTF-8. This is the format the
+ * repositories have always used.
+ *
+ * @author wmatsushita
+ */
+public class JsonEntityCodec implements EntityCodec {
+
+    public static final String NAME = "json";
+
+    private final JsonUtils jsonUtils;
+
+    public JsonEntityCodec(final JsonUtils jsonUtils) {
+        this.jsonUtils = jsonUtils;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    /**
+     * Stored entities are JSON objects or arrays, so the data is JSON if its
+     * first character, past any whitespace, opens one of them.
+     */
+    @Override
+    public boolean isEncoded(final byte[] data) {
+        for (byte b : data) {
+            if (!Character.isWhitespace(b)) {
+                return b == '{' || b == '[';
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] encode(final Object entity) throws JsonProcessingException {
+        return jsonUtils.toJsonBytes(entity);
+    }
+
+    @Override
+    public <T> T decode(final byte[] data, final Class<T> type) throws IOException {
+        return jsonUtils.fromJson(data, type);
+    }
+
+}
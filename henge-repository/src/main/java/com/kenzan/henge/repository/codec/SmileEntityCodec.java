@@ -0,0 +1,81 @@
+package com.kenzan.henge.repository.codec;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Stores the entities in Smile, the binary form of JSON. It holds the same
+ * data model, so the entities map exactly as they do to JSON, but the
+ * encoding is smaller and decodes faster. Repeated property names and short
+ * string values, such as scope keys, are written once per entity and
+ * referenced afterwards.
+ * <p>
+ * Every encoded entity starts with the Smile header, which tells it apart
+ * from JSON text.
+ *
+ * @author wmatsushita
+ */
+public class SmileEntityCodec implements EntityCodec {
+
+    public static final String NAME = "smile";
+
+    private final ObjectMapper mapper;
+
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * @param builder the settings of the application JSON mapper, which are
+     *        applied to the Smile mapper as well
+     */
+    public SmileEntityCodec(final Jackson2ObjectMapperBuilder builder) {
+        final SmileFactory factory = new SmileFactory();
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        this.mapper = new ObjectMapper(factory);
+        builder.configure(mapper);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public boolean isEncoded(final byte[] data) {
+        return data.length >= 3 && data[0] == SmileConstants.HEADER_BYTE_1 && data[1] == SmileConstants.HEADER_BYTE_2
+            && data[2] == SmileConstants.HEADER_BYTE_3;
+    }
+
+    @Override
+    public byte[] encode(final Object entity) throws JsonProcessingException {
+        final ObjectWriter writer =
+            entity == null ? mapper.writer() : writers.computeIfAbsent(entity.getClass(), mapper::writerFor);
+        return writer.writeValueAsBytes(entity);
+    }
+
+    @Override
+    public <T> T decode(final byte[] data, final Class<T> type) throws IOException {
+        if (data.length == 0) {
+            return null;
+        }
+        return readers.computeIfAbsent(type, mapper::readerFor).readValue(data);
+    }
+
+}
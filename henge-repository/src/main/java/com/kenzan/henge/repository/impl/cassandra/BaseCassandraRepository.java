@@ -4,25 +4,35 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.desc;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
-import com.datastax.driver.core.querybuilder.Select;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.kenzan.henge.domain.model.NamedVersionedModel;
 import com.kenzan.henge.exception.HengeResourceNotFoundException;
 import com.kenzan.henge.repository.BaseCrudRepository;
 
 /**
- * Cassandra base repository
+ * Cassandra base repository. The statements of each column family are
+ * prepared once and bound on every call.
  * 
  * @author Igor K. Shiohara
  *
@@ -35,6 +45,10 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 	private static final String NAME_COLUMN = "name";
 	private static final String VERSION_COLUMN = "version";
 	
+	/**
+	 * Prepared statements by CQL query string
+	 */
+	private final ConcurrentMap<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
     
 	@Autowired
 	public BaseCassandraRepository(Session session) {
@@ -43,8 +57,7 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 	
 	@Override
 	public T create(T entity) {
-		Statement insert = insertStatement(entity);
-		session.execute(insert);
+		session.execute(bindInsert(entity));
 		return entity;
 	}
 
@@ -53,39 +66,40 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 		if (!findFirst(Optional.of(name), Optional.empty()).isPresent()) {
 			return Optional.empty();
 		}
-		session.execute(insertStatement(entity));
+		session.execute(bindInsert(entity));
 		return Optional.of(entity);
 	}
 
 	@Override
 	public Optional<T> delete(String name) {
-		Statement delete = QueryBuilder.delete().from(getColumnFamily())
-				.where(eq(NAME_COLUMN, name));
 		Optional<T> entity = findFirst(Optional.of(name), Optional.empty());
 		if (!entity.isPresent()) {
 			throw new HengeResourceNotFoundException("No data were found with name: " + name + " to delete.");
 		}
-		session.execute(delete);
+		session.execute(prepare(QueryBuilder.delete().from(getColumnFamily())
+				.where(eq(NAME_COLUMN, QueryBuilder.bindMarker()))).bind(name));
 		return entity;
 	}
 
 	@Override
 	public Optional<T> delete(String name, String version) {
-		Statement delete = QueryBuilder.delete().from(getColumnFamily())
-				.where(eq(NAME_COLUMN, name))
-				.and(eq(VERSION_COLUMN, version));
 		Optional<T> entity = findFirst(Optional.of(name), Optional.of(version));
 		if (!entity.isPresent()) {
 			throw new HengeResourceNotFoundException("No data were found with name: " + name + " and version " + version + " to delete.");
 		}
-		session.execute(delete);
+		session.execute(prepare(QueryBuilder.delete().from(getColumnFamily())
+				.where(eq(NAME_COLUMN, QueryBuilder.bindMarker()))
+				.and(eq(VERSION_COLUMN, QueryBuilder.bindMarker()))).bind(name, version));
 		return entity;
 	}
 
+	/**
+	 * Reads the latest version with a single query, taking the first row in
+	 * descending version order.
+	 */
 	@Override
 	public Optional<T> read(String name) {
-		java.util.Optional<String> latestVersion = getVersions(name).findFirst();
-		return findFirst(Optional.of(name), Optional.of(latestVersion.get()));
+		return findFirst(Optional.of(name), Optional.empty());
 	}
 
 	@Override
@@ -93,6 +107,16 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 		return findFirst(Optional.of(name), Optional.of(version));
 	}
 
+	/**
+	 * Reads a specific version of an entity without blocking the caller, so
+	 * that several reads can be in flight at once.
+	 */
+	@Override
+	public CompletableFuture<Optional<T>> readAsync(String name, String version) {
+		return toCompletableFuture(session.executeAsync(selectByNameAndVersion().bind(name, version)))
+				.thenApplyAsync(this::firstEntity);
+	}
+
 	@Override
 	public Optional<Set<String>> versions(String name) {
 		Set<String> versions = getVersions(name).collect(Collectors.toSet());
@@ -109,11 +133,12 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 	}
 	
 	/**
-	 * Create an insert statement
-	 * @param propertyGroup
-	 * @return a PropertyGroup
+	 * Provides the values to be inserted for the entity, by column name. The
+	 * insert statement is prepared once for each set of columns.
+	 * @param entity
+	 * @return the column values, in a stable order
 	 */
-	protected abstract Insert insertStatement(T entity);
+	protected abstract Map<String, Object> insertValues(T entity);
 	
 	/**
 	 * Builds the entity with the Cassandra rows
@@ -134,41 +159,78 @@ public abstract class BaseCassandraRepository<T extends NamedVersionedModel> imp
 	 * @return Stream of versions
 	 */
 	private Stream<String> getVersions(String name) {
-		Select select = select()
+		return session.execute(prepare(select()
 				  .column(VERSION_COLUMN)
 				  .from(getColumnFamily())
-				  .where(eq(NAME_COLUMN, name))
-				  .orderBy(desc(VERSION_COLUMN));
-		return session.execute(select)
+				  .where(eq(NAME_COLUMN, QueryBuilder.bindMarker()))
+				  .orderBy(desc(VERSION_COLUMN))).bind(name))
 				.all()
 				.stream()
 				.map(row -> row.getString(VERSION_COLUMN));
 	}
 
 	/**
-	 * Finds the first T by name and version
+	 * Finds the first T by name and version. Without a version, it finds the
+	 * latest one.
 	 * @param name T name
 	 * @param version T version
 	 * @return T
 	 */
 	private Optional<T> findFirst(final Optional<String> name, final Optional<String> version) {
-		Select select = select().from(getColumnFamily());
-		select.where(eq(NAME_COLUMN, name.get()));
-		
 		if (version.isPresent()) {
-			select.where().and(eq(VERSION_COLUMN, version.get()));
+			return firstEntity(session.execute(selectByNameAndVersion().bind(name.get(), version.get())));
 		}
-		
-		java.util.Optional<Row> row = session.execute(select)
-			.all()
-			.stream()
-			.findFirst();
-		
-		if (row.isPresent()) {
-			return Optional.of(buildEntity(row.get()));
+		return firstEntity(session.execute(prepare(select().from(getColumnFamily())
+				.where(eq(NAME_COLUMN, QueryBuilder.bindMarker()))
+				.orderBy(desc(VERSION_COLUMN))
+				.limit(1)).bind(name.get())));
+	}
+
+	private Optional<T> firstEntity(final ResultSet resultSet) {
+		final Row row = resultSet.one();
+		if (row != null) {
+			return Optional.of(buildEntity(row));
 		}
 		return Optional.empty();
 	}
+
+	private PreparedStatement selectByNameAndVersion() {
+		return prepare(select().from(getColumnFamily())
+				.where(eq(NAME_COLUMN, QueryBuilder.bindMarker()))
+				.and(eq(VERSION_COLUMN, QueryBuilder.bindMarker())));
+	}
+
+	private BoundStatement bindInsert(final T entity) {
+		final Map<String, Object> values = insertValues(entity);
+		final Insert insert = QueryBuilder.insertInto(getColumnFamily());
+		values.keySet().forEach(column -> insert.value(column, QueryBuilder.bindMarker()));
+		return prepare(insert).bind(values.values().toArray());
+	}
+
+	/**
+	 * Prepares the statement, or returns the one previously prepared for the
+	 * same CQL. Statements must use bind markers instead of values, so that
+	 * there is a bounded number of them for each column family.
+	 */
+	protected PreparedStatement prepare(final RegularStatement statement) {
+		return preparedStatements.computeIfAbsent(statement.getQueryString(), query -> session.prepare(statement));
+	}
+
+	private static CompletableFuture<ResultSet> toCompletableFuture(final ResultSetFuture resultSetFuture) {
+		final CompletableFuture<ResultSet> future = new CompletableFuture<>();
+		Futures.addCallback(resultSetFuture, new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet resultSet) {
+				future.complete(resultSet);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				future.completeExceptionally(t);
+			}
+		});
+		return future;
+	}
 	
 	protected Session getSession() {
 		return session;
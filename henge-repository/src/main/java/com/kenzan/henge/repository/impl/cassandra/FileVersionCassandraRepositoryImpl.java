@@ -1,22 +1,48 @@
 package com.kenzan.henge.repository.impl.cassandra;
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+
 import java.nio.ByteBuffer;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.google.common.hash.Hashing;
 import com.kenzan.henge.domain.model.FileVersion;
 import com.kenzan.henge.domain.model.FileVersion.Builder;
 import com.kenzan.henge.repository.FileVersionRepository;
 
 /**
+ * The content of the {@link FileVersion}s is kept in the file_blob column
+ * family, keyed by its SHA-256 hash, so versions with identical content share
+ * a single blob. Every version that uses a blob has a row in
+ * file_blob_reference, and the blob is deleted along with its last reference.
+ * A store and a release of the same blob may interleave, so the blob is
+ * always written when it is stored, and deleted with the timestamp at which
+ * its references were found to be gone: a store whose reference was not seen
+ * writes the blob later, and its write wins over the deletion in whatever
+ * order both arrive. That relies on the clocks of the instances being in
+ * sync, as the timestamps of Cassandra writes do; a version whose blob is
+ * missing anyway is read without content, and logged.
+ * Versions written before blobs were introduced keep their content in the
+ * file_version column family.
  * 
  * @author Igor K. Shiohara
  *
@@ -25,38 +51,151 @@ import com.kenzan.henge.repository.FileVersionRepository;
 @Component
 public class FileVersionCassandraRepositoryImpl extends BaseCassandraRepository<FileVersion> implements FileVersionRepository {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileVersionCassandraRepositoryImpl.class);
+
 	private static final String FILE_VERSION_COLUMN_FAMILY = "file_version";
 	
+	private static final String FILE_BLOB_COLUMN_FAMILY = "file_blob";
+	
+	private static final String FILE_BLOB_REFERENCE_COLUMN_FAMILY = "file_blob_reference";
+	
+	private static final String HASH_COLUMN = "hash";
+
+	/**
+	 * The last blob write timestamp given, so that they are strictly increasing
+	 */
+	private final AtomicLong lastTimestamp = new AtomicLong();
+	
 	@Autowired
 	public FileVersionCassandraRepositoryImpl(Session session) {
 		super(session);
 	}
 
+	/**
+	 * Stores the content as a blob before the {@link FileVersion} that
+	 * references it, so that it can be read as soon as the version is. The
+	 * insert overwrites an existing row of the same version, whose blob is
+	 * released once the new row is written.
+	 */
+	@Override
+	public FileVersion create(FileVersion entity) {
+		final FileVersion model = describeContent(entity);
+		final Optional<FileVersion> replaced = readContentHash(model.getName(), model.getVersion());
+		storeBlob(model, entity.getContent());
+		super.create(model);
+		releaseReplacedBlob(replaced, model);
+		return entity;
+	}
+
+	@Override
+	public Optional<FileVersion> update(String name, FileVersion entity) {
+		final FileVersion model = describeContent(entity);
+		final Optional<FileVersion> replaced = readContentHash(model.getName(), model.getVersion());
+		storeBlob(model, entity.getContent());
+		if (!super.update(name, model).isPresent()) {
+			releaseBlob(model);
+			return Optional.empty();
+		}
+		releaseReplacedBlob(replaced, model);
+		return Optional.of(entity);
+	}
+
+	@Override
+	public Optional<FileVersion> read(String name) {
+		return super.read(name).map(this::withContent);
+	}
+
+	@Override
+	public Optional<FileVersion> read(String name, String version) {
+		return super.read(name, version).map(this::withContent);
+	}
+
+	/**
+	 * Reads the {@link FileVersion} without querying its blob. Versions
+	 * written before blobs were introduced carry their content in the same
+	 * row, so it is dropped.
+	 */
+	@Override
+	public Optional<FileVersion> readMetadata(String name) {
+		return super.read(name).map(this::withoutContent);
+	}
+
+	@Override
+	public Optional<FileVersion> readMetadata(String name, String version) {
+		return super.read(name, version).map(this::withoutContent);
+	}
+
+	@Override
+	public CompletableFuture<Optional<FileVersion>> readAsync(String name, String version) {
+		return super.readAsync(name, version).thenApply(fileVersion -> fileVersion.map(this::withContent));
+	}
+
+	@Override
+	public Optional<FileVersion> delete(String name) {
+		final List<FileVersion> models = getSession().execute(prepare(select()
+				.column(FileVersionColumnFamily.NAME.toString())
+				.column(FileVersionColumnFamily.VERSION.toString())
+				.column(FileVersionColumnFamily.CONTENT_HASH.toString())
+				.from(FILE_VERSION_COLUMN_FAMILY)
+				.where(eq(FileVersionColumnFamily.NAME.toString(), QueryBuilder.bindMarker()))).bind(name))
+				.all()
+				.stream()
+				.filter(row -> row.getString(FileVersionColumnFamily.CONTENT_HASH.toString()) != null)
+				.map(row -> FileVersion.builder(
+						row.getString(FileVersionColumnFamily.NAME.toString()),
+						row.getString(FileVersionColumnFamily.VERSION.toString()), null, null)
+						.withContentHash(row.getString(FileVersionColumnFamily.CONTENT_HASH.toString()))
+						.build())
+				.collect(Collectors.toList());
+
+		final Optional<FileVersion> deleted = super.delete(name);
+		models.forEach(this::releaseBlob);
+		return deleted;
+	}
+
+	@Override
+	public Optional<FileVersion> delete(String name, String version) {
+		final Optional<FileVersion> deleted = super.delete(name, version);
+		deleted.filter(model -> model.getContentHash() != null).ifPresent(this::releaseBlob);
+		return deleted;
+	}
+
 	@Override
-	protected Insert insertStatement(FileVersion fileVersion) {
-		Insert insertStatement = QueryBuilder.insertInto(FILE_VERSION_COLUMN_FAMILY)
-									.value(FileVersionColumnFamily.NAME.toString(), fileVersion.getName())
-									.value(FileVersionColumnFamily.VERSION.toString(), fileVersion.getVersion())
-									.value(FileVersionColumnFamily.DESCRIPTION.toString(), fileVersion.getDescription())
-									.value(FileVersionColumnFamily.CONTENT.toString(), ByteBuffer.wrap(fileVersion.getContent()))
-									.value(FileVersionColumnFamily.FILENAME.toString(), fileVersion.getFilename())
-									.value(FileVersionColumnFamily.CREATED_BY.toString(), fileVersion.getCreatedBy());
+	protected Map<String, Object> insertValues(FileVersion fileVersion) {
+		Map<String, Object> values = new LinkedHashMap<>();
+		values.put(FileVersionColumnFamily.NAME.toString(), fileVersion.getName());
+		values.put(FileVersionColumnFamily.VERSION.toString(), fileVersion.getVersion());
+		values.put(FileVersionColumnFamily.DESCRIPTION.toString(), fileVersion.getDescription());
+		if (fileVersion.getContent() != null) {
+			values.put(FileVersionColumnFamily.CONTENT.toString(), ByteBuffer.wrap(fileVersion.getContent()));
+		}
+		if (fileVersion.getContentHash() != null) {
+			values.put(FileVersionColumnFamily.CONTENT_HASH.toString(), fileVersion.getContentHash());
+			values.put(FileVersionColumnFamily.CONTENT_LENGTH.toString(), fileVersion.getContentLength());
+		}
+		values.put(FileVersionColumnFamily.FILENAME.toString(), fileVersion.getFilename());
+		values.put(FileVersionColumnFamily.CREATED_BY.toString(), fileVersion.getCreatedBy());
 		if (fileVersion.getCreatedDate() != null) {
-			insertStatement.value(FileVersionColumnFamily.CREATED_DATE.toString(), Date.from(fileVersion.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
+			values.put(FileVersionColumnFamily.CREATED_DATE.toString(), Date.from(fileVersion.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
 		}
 
-		return insertStatement;
+		return values;
 	}
 
 	@Override
 	protected FileVersion buildEntity(Row row) {
+		final ByteBuffer content = row.getBytes(FileVersionColumnFamily.CONTENT.toString());
 		Builder builder = FileVersion.builder(
 								row.getString(FileVersionColumnFamily.NAME.toString()),
 								row.getString(FileVersionColumnFamily.VERSION.toString()), 
-								row.getBytes(FileVersionColumnFamily.CONTENT.toString()).array(), 
+								content != null ? content.array() : null, 
 								row.getString(FileVersionColumnFamily.FILENAME.toString()))
 							.withDescription(row.getString(FileVersionColumnFamily.DESCRIPTION.toString()))
-							.withCreatedBy(row.getString(FileVersionColumnFamily.CREATED_BY.toString()));
+							.withCreatedBy(row.getString(FileVersionColumnFamily.CREATED_BY.toString()))
+							.withContentHash(row.getString(FileVersionColumnFamily.CONTENT_HASH.toString()));
+		if (!row.isNull(FileVersionColumnFamily.CONTENT_LENGTH.toString())) {
+			builder.withContentLength(row.getLong(FileVersionColumnFamily.CONTENT_LENGTH.toString()));
+		}
 		if (row.getTimestamp(FileVersionColumnFamily.CREATED_DATE.toString()) != null) {
 			builder.withCreatedDate(row.getTimestamp(FileVersionColumnFamily.CREATED_DATE.toString()).toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
 		}
@@ -68,12 +207,136 @@ public class FileVersionCassandraRepositoryImpl extends BaseCassandraRepository<
 	protected String getColumnFamily() {
 		return FILE_VERSION_COLUMN_FAMILY;
 	}
+
+	/**
+	 * @return the model of the entity, carrying the hash and length of the content instead of it
+	 */
+	private FileVersion describeContent(final FileVersion entity) {
+		if (entity.getContent() == null) {
+			return entity;
+		}
+		return FileVersion.builder(entity)
+				.withContent(null)
+				.withContentHash(Hashing.sha256().hashBytes(entity.getContent()).toString())
+				.withContentLength((long) entity.getContent().length)
+				.build();
+	}
+
+	/**
+	 * References the blob of the model and writes it. The blob is keyed by
+	 * its content, so writing it again is harmless. The reference is inserted
+	 * first, and the blob written after it with a later timestamp than any
+	 * release that missed the reference.
+	 */
+	private void storeBlob(final FileVersion model, final byte[] content) {
+		if (model.getContentHash() == null) {
+			return;
+		}
+		getSession().execute(prepare(QueryBuilder.insertInto(FILE_BLOB_REFERENCE_COLUMN_FAMILY)
+				.value(HASH_COLUMN, QueryBuilder.bindMarker())
+				.value(FileVersionColumnFamily.NAME.toString(), QueryBuilder.bindMarker())
+				.value(FileVersionColumnFamily.VERSION.toString(), QueryBuilder.bindMarker()))
+				.bind(model.getContentHash(), model.getName(), model.getVersion()));
+
+		getSession().execute(prepare(QueryBuilder.insertInto(FILE_BLOB_COLUMN_FAMILY)
+				.value(HASH_COLUMN, QueryBuilder.bindMarker())
+				.value(FileVersionColumnFamily.CONTENT.toString(), QueryBuilder.bindMarker())
+				.using(QueryBuilder.timestamp(QueryBuilder.bindMarker())))
+				.bind(model.getContentHash(), ByteBuffer.wrap(content), writeTimestamp()));
+	}
+
+	/**
+	 * Removes the reference of the model and deletes the blob if no other
+	 * version references it. The deletion carries the timestamp taken before
+	 * the references were checked, so it does not shadow the blob written by
+	 * a store whose reference the check missed.
+	 */
+	private void releaseBlob(final FileVersion model) {
+		getSession().execute(prepare(QueryBuilder.delete().from(FILE_BLOB_REFERENCE_COLUMN_FAMILY)
+				.where(eq(HASH_COLUMN, QueryBuilder.bindMarker()))
+				.and(eq(FileVersionColumnFamily.NAME.toString(), QueryBuilder.bindMarker()))
+				.and(eq(FileVersionColumnFamily.VERSION.toString(), QueryBuilder.bindMarker())))
+				.bind(model.getContentHash(), model.getName(), model.getVersion()));
+
+		final long checkedAt = writeTimestamp();
+		final boolean referenced = getSession().execute(prepare(select().column(HASH_COLUMN)
+				.from(FILE_BLOB_REFERENCE_COLUMN_FAMILY)
+				.where(eq(HASH_COLUMN, QueryBuilder.bindMarker()))
+				.limit(1)).bind(model.getContentHash())).one() != null;
+		if (!referenced) {
+			getSession().execute(prepare(QueryBuilder.delete().from(FILE_BLOB_COLUMN_FAMILY)
+					.using(QueryBuilder.timestamp(QueryBuilder.bindMarker()))
+					.where(eq(HASH_COLUMN, QueryBuilder.bindMarker()))).bind(checkedAt, model.getContentHash()));
+		}
+	}
+
+	/**
+	 * @return the current time in microseconds, as Cassandra write timestamps
+	 *         are, and later than any timestamp given before
+	 */
+	private long writeTimestamp() {
+		final long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+		return lastTimestamp.updateAndGet(last -> Math.max(now, last + 1));
+	}
+
+	/**
+	 * Reads the hash of the content of an existing version, without its content.
+	 * 
+	 * @return the model of the version, if it exists and its content is kept in a blob
+	 */
+	private Optional<FileVersion> readContentHash(final String name, final String version) {
+		final Row row = getSession().execute(prepare(select()
+				.column(FileVersionColumnFamily.CONTENT_HASH.toString())
+				.from(FILE_VERSION_COLUMN_FAMILY)
+				.where(eq(FileVersionColumnFamily.NAME.toString(), QueryBuilder.bindMarker()))
+				.and(eq(FileVersionColumnFamily.VERSION.toString(), QueryBuilder.bindMarker()))).bind(name, version)).one();
+		if (row == null || row.isNull(FileVersionColumnFamily.CONTENT_HASH.toString())) {
+			return Optional.empty();
+		}
+		return Optional.of(FileVersion.builder(name, version, null, null)
+				.withContentHash(row.getString(FileVersionColumnFamily.CONTENT_HASH.toString()))
+				.build());
+	}
+
+	/**
+	 * Releases the blob of the overwritten version, unless the new row
+	 * references the same content, and so the same reference row.
+	 */
+	private void releaseReplacedBlob(final Optional<FileVersion> replaced, final FileVersion model) {
+		replaced.filter(previous -> !previous.getContentHash().equals(model.getContentHash()))
+				.ifPresent(this::releaseBlob);
+	}
+
+	private FileVersion withoutContent(final FileVersion fileVersion) {
+		return fileVersion.getContent() == null ? fileVersion : FileVersion.builder(fileVersion).withContent(null).build();
+	}
+
+	/**
+	 * Reads the content of the model from its blob. Versions written before
+	 * blobs were introduced already carry their content.
+	 */
+	private FileVersion withContent(final FileVersion model) {
+		if (model.getContentHash() == null) {
+			return model;
+		}
+		final Row row = getSession().execute(prepare(select().column(FileVersionColumnFamily.CONTENT.toString())
+				.from(FILE_BLOB_COLUMN_FAMILY)
+				.where(eq(HASH_COLUMN, QueryBuilder.bindMarker()))).bind(model.getContentHash())).one();
+		if (row == null) {
+			LOGGER.warn("The blob {} of the FileVersion [{}] version [{}] is missing. It is read without content.",
+					model.getContentHash(), model.getName(), model.getVersion());
+			return model;
+		}
+		return FileVersion.builder(model).withContent(row.getBytes(FileVersionColumnFamily.CONTENT.toString()).array()).build();
+	}
 	
 	private enum FileVersionColumnFamily {
 		NAME,
 		DESCRIPTION,
 		VERSION,
 		CONTENT,
+		CONTENT_HASH,
+		CONTENT_LENGTH,
 		FILENAME,
 		CREATED_BY,
 		CREATED_DATE,
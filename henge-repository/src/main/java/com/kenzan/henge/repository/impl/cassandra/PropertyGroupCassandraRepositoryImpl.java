@@ -1,9 +1,10 @@
 package com.kenzan.henge.repository.impl.cassandra;
 
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
-import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.utils.Bytes;
+import com.datastax.driver.core.Session;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.kenzan.henge.domain.model.Property;
 import com.kenzan.henge.domain.model.PropertyGroup;
@@ -11,10 +12,15 @@ import com.kenzan.henge.domain.model.PropertyGroup.Builder;
 import com.kenzan.henge.domain.utils.JsonUtils;
 import com.kenzan.henge.exception.HengeParseException;
 import com.kenzan.henge.repository.PropertyGroupRepository;
+import com.kenzan.henge.repository.codec.EntityCodec;
+import com.kenzan.henge.repository.codec.EntityMigration;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -24,42 +30,55 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
+ * The {@link Property}s of a {@link PropertyGroup} are kept as JSON text in
+ * the properties column, or, when the configured {@link EntityCodec} is a
+ * binary one, in the properties_data column. Rows are read from whichever of
+ * the two is filled, so the configured codec can be changed at any time, and
+ * {@link #migrate()} moves the existing rows to the configured column.
  * 
  * @author Igor K. Shiohara
  *
  */
 @Profile("cassandra")
 @Component
-public class PropertyGroupCassandraRepositoryImpl extends BaseCassandraRepository<PropertyGroup> implements PropertyGroupRepository {
+public class PropertyGroupCassandraRepositoryImpl extends BaseCassandraRepository<PropertyGroup> implements PropertyGroupRepository, EntityMigration {
 
 	private JsonUtils jsonUtils;
 	
+	private EntityCodec entityCodec;
+	
 	private static final String PROPERTY_GROUP_COLUMN_FAMILY = "property_group";
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PropertyGroupCassandraRepositoryImpl.class);
 	
 	
     @Autowired
-	public PropertyGroupCassandraRepositoryImpl(Session session, JsonUtils jsonUtils) {
+	public PropertyGroupCassandraRepositoryImpl(Session session, JsonUtils jsonUtils, EntityCodec entityCodec) {
 	    super(session);
 	    this.jsonUtils = jsonUtils;
+	    this.entityCodec = entityCodec;
 	}
 	
 	@Override
-    protected Insert insertStatement(PropertyGroup propertyGroup) {
+    protected Map<String, Object> insertValues(PropertyGroup propertyGroup) {
 		try {
-			Insert statement = QueryBuilder.insertInto(PROPERTY_GROUP_COLUMN_FAMILY)
-						.value(PropertyGroupColumnFamily.NAME.toString(), propertyGroup.getName())
-						.value(PropertyGroupColumnFamily.DESCRIPTION.toString(), propertyGroup.getDescription())
-						.value(PropertyGroupColumnFamily.VERSION.toString(), propertyGroup.getVersion())
-						.value(PropertyGroupColumnFamily.TYPE.toString(), propertyGroup.getType())
-						.value(PropertyGroupColumnFamily.IS_ACTIVE.toString(), propertyGroup.isActive())
-						.value(PropertyGroupColumnFamily.PROPERTIES.toString(),jsonUtils.toJson(propertyGroup.getProperties()))
-						.value(PropertyGroupColumnFamily.CREATED_BY.toString(), propertyGroup.getCreatedBy());
-						if (propertyGroup.getCreatedDate() != null) {
-							statement.value(PropertyGroupColumnFamily.CREATED_DATE.toString(), Date.from(propertyGroup.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
-						}
-			return statement;
+			Map<String, Object> values = new LinkedHashMap<>();
+			values.put(PropertyGroupColumnFamily.NAME.toString(), propertyGroup.getName());
+			values.put(PropertyGroupColumnFamily.DESCRIPTION.toString(), propertyGroup.getDescription());
+			values.put(PropertyGroupColumnFamily.VERSION.toString(), propertyGroup.getVersion());
+			values.put(PropertyGroupColumnFamily.TYPE.toString(), propertyGroup.getType());
+			values.put(PropertyGroupColumnFamily.IS_ACTIVE.toString(), propertyGroup.isActive());
+			if (entityCodec.isBinary()) {
+				values.put(PropertyGroupColumnFamily.PROPERTIES.toString(), null);
+				values.put(PropertyGroupColumnFamily.PROPERTIES_DATA.toString(), ByteBuffer.wrap(entityCodec.encode(propertyGroup.getProperties())));
+			} else {
+				values.put(PropertyGroupColumnFamily.PROPERTIES.toString(),jsonUtils.toJson(propertyGroup.getProperties()));
+			}
+			values.put(PropertyGroupColumnFamily.CREATED_BY.toString(), propertyGroup.getCreatedBy());
+			if (propertyGroup.getCreatedDate() != null) {
+				values.put(PropertyGroupColumnFamily.CREATED_DATE.toString(), Date.from(propertyGroup.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
+			}
+			return values;
 		} catch (JsonProcessingException e) {
 			LOGGER.info("Error to parse Properties: " + propertyGroup.getProperties() + ". Exception:" + e);
 			throw new HengeParseException("Error to parse Properties: " + propertyGroup.getProperties());
@@ -75,7 +94,11 @@ public class PropertyGroupCassandraRepositoryImpl extends BaseCassandraRepositor
 					.withDescription(row.getString(PropertyGroupColumnFamily.DESCRIPTION.toString()))
 					.withType(row.getString(PropertyGroupColumnFamily.TYPE.toString()))
 					.withIsActive(row.getBool(PropertyGroupColumnFamily.IS_ACTIVE.toString()));
-					if (StringUtils.isNotBlank(row.getString(PropertyGroupColumnFamily.PROPERTIES.toString()))) {
+					final ByteBuffer propertiesData = row.getColumnDefinitions().contains(PropertyGroupColumnFamily.PROPERTIES_DATA.toString())
+							? row.getBytes(PropertyGroupColumnFamily.PROPERTIES_DATA.toString()) : null;
+					if (propertiesData != null) {
+						builder.withProperties(entityCodec.decode(Bytes.getArray(propertiesData), Property[].class));
+					} else if (StringUtils.isNotBlank(row.getString(PropertyGroupColumnFamily.PROPERTIES.toString()))) {
 						builder.withProperties(jsonUtils.fromJson(row.getString(PropertyGroupColumnFamily.PROPERTIES.toString()), Property[].class));
 					}
 					builder.withCreatedBy(row.getString(PropertyGroupColumnFamily.CREATED_BY.toString()));
@@ -89,6 +112,47 @@ public class PropertyGroupCassandraRepositoryImpl extends BaseCassandraRepositor
 		}	
 	}
 
+	/**
+	 * Rewrites the properties of every row whose column does not match the
+	 * configured codec. Only the properties columns are updated.
+	 */
+	@Override
+	public int migrate() {
+		final String properties = PropertyGroupColumnFamily.PROPERTIES.toString();
+		final String propertiesData = PropertyGroupColumnFamily.PROPERTIES_DATA.toString();
+		final PreparedStatement update = prepare(QueryBuilder.update(PROPERTY_GROUP_COLUMN_FAMILY)
+				.with(QueryBuilder.set(properties, QueryBuilder.bindMarker()))
+				.and(QueryBuilder.set(propertiesData, QueryBuilder.bindMarker()))
+				.where(QueryBuilder.eq(PropertyGroupColumnFamily.NAME.toString(), QueryBuilder.bindMarker()))
+				.and(QueryBuilder.eq(PropertyGroupColumnFamily.VERSION.toString(), QueryBuilder.bindMarker())));
+
+		int migrated = 0;
+		for (Row row : getSession().execute(QueryBuilder.select(PropertyGroupColumnFamily.NAME.toString(),
+				PropertyGroupColumnFamily.VERSION.toString(), properties, propertiesData).from(PROPERTY_GROUP_COLUMN_FAMILY))) {
+			final ByteBuffer data = row.getBytes(propertiesData);
+			final String text = row.getString(properties);
+			if (entityCodec.isBinary() ? data != null && entityCodec.isEncoded(Bytes.getArray(data)) : data == null) {
+				continue;
+			}
+			if (data == null && StringUtils.isBlank(text)) {
+				continue;
+			}
+			try {
+				final Property[] decoded = data != null ? entityCodec.decode(Bytes.getArray(data), Property[].class)
+						: jsonUtils.fromJson(text, Property[].class);
+				getSession().execute(entityCodec.isBinary()
+						? update.bind(null, ByteBuffer.wrap(entityCodec.encode(decoded)), row.getString(0), row.getString(1))
+						: update.bind(jsonUtils.toJson(decoded), null, row.getString(0), row.getString(1)));
+				migrated++;
+			} catch (IOException e) {
+				LOGGER.warn("The properties of the PropertyGroup {} version {} could not be migrated and were left as they were.",
+						row.getString(0), row.getString(1), e);
+			}
+		}
+		LOGGER.info("{} PropertyGroup rows were rewritten in the {} format.", migrated, entityCodec.getName());
+		return migrated;
+	}
+
 	@Override
 	protected String getColumnFamily() {
 		return PROPERTY_GROUP_COLUMN_FAMILY;
@@ -101,6 +165,7 @@ public class PropertyGroupCassandraRepositoryImpl extends BaseCassandraRepositor
 		TYPE,
 		IS_ACTIVE,
 		PROPERTIES,
+		PROPERTIES_DATA,
 		CREATED_BY,
 		CREATED_DATE;
 	}
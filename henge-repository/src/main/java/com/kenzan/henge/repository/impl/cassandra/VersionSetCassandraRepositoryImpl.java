@@ -2,8 +2,6 @@ package com.kenzan.henge.repository.impl.cassandra;
 
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.datastax.driver.core.querybuilder.Insert;
-import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.kenzan.henge.domain.model.FileVersionReference;
 import com.kenzan.henge.domain.model.PropertyGroupReference;
@@ -16,6 +14,8 @@ import com.kenzan.henge.repository.VersionSetRepository;
 import java.io.IOException;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -44,19 +44,19 @@ public class VersionSetCassandraRepositoryImpl extends BaseCassandraRepository<V
 	}
 
 	@Override
-	protected Insert insertStatement(VersionSet versionSet) {
+	protected Map<String, Object> insertValues(VersionSet versionSet) {
 		try {
-			Insert insert = QueryBuilder.insertInto(VERSION_SET_COLUMN_FAMILY)
-					.value(VersionSetColumnFamily.NAME.toString(), versionSet.getName())
-					.value(VersionSetColumnFamily.DESCRIPTION.toString(), versionSet.getDescription())
-					.value(VersionSetColumnFamily.VERSION.toString(), versionSet.getVersion())
-					.value(VersionSetColumnFamily.PROPERTY_GROUP_REFERENCES.toString(), jsonUtils.toJson(versionSet.getPropertyGroupReferences()))
-					.value(VersionSetColumnFamily.FILE_VERSION_REFERENCES.toString(), jsonUtils.toJson(versionSet.getFileVersionReferences()))
-					.value(VersionSetColumnFamily.CREATED_BY.toString(), versionSet.getCreatedBy());
-					if (versionSet.getCreatedDate() != null) {
-						insert.value(VersionSetColumnFamily.CREATED_DATE.toString(), Date.from(versionSet.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
-					}
-			return insert;
+			Map<String, Object> values = new LinkedHashMap<>();
+			values.put(VersionSetColumnFamily.NAME.toString(), versionSet.getName());
+			values.put(VersionSetColumnFamily.DESCRIPTION.toString(), versionSet.getDescription());
+			values.put(VersionSetColumnFamily.VERSION.toString(), versionSet.getVersion());
+			values.put(VersionSetColumnFamily.PROPERTY_GROUP_REFERENCES.toString(), jsonUtils.toJson(versionSet.getPropertyGroupReferences()));
+			values.put(VersionSetColumnFamily.FILE_VERSION_REFERENCES.toString(), jsonUtils.toJson(versionSet.getFileVersionReferences()));
+			values.put(VersionSetColumnFamily.CREATED_BY.toString(), versionSet.getCreatedBy());
+			if (versionSet.getCreatedDate() != null) {
+				values.put(VersionSetColumnFamily.CREATED_DATE.toString(), Date.from(versionSet.getCreatedDate().atZone(ZoneId.systemDefault()).toInstant()));
+			}
+			return values;
 		} catch (JsonProcessingException e) {
 			LOGGER.info("Error to parse PropertyGroupReferences: " + versionSet.getPropertyGroupReferences() + ". Exception:" + e);
 			throw new HengeParseException("Error to parse PropertyGroupReferences: " + versionSet.getPropertyGroupReferences());
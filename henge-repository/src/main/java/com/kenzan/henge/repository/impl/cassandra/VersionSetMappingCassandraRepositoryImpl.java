@@ -1,14 +1,17 @@
 package com.kenzan.henge.repository.impl.cassandra;
 
 import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.kenzan.henge.domain.model.Mapping;
 import com.kenzan.henge.domain.model.MappingFactory;
 import com.kenzan.henge.domain.model.MappingKey;
+import com.kenzan.henge.domain.model.Scope;
 import com.kenzan.henge.domain.model.VersionSetReference;
 import com.kenzan.henge.domain.utils.JsonUtils;
 import com.kenzan.henge.exception.HengeException;
@@ -16,8 +19,13 @@ import com.kenzan.henge.exception.HengeParseException;
 import com.kenzan.henge.repository.MappingRepository;
 
 import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -37,11 +45,29 @@ public class VersionSetMappingCassandraRepositoryImpl implements MappingReposito
 
 	private static final String VERSION_SET_MAPPING_COLUMN_FAMILY = "version_set_mapping";
 
+	/**
+	 * Orders the scopes of the stored keys, so that the same key is always
+	 * stored as the same row
+	 */
+	private static final Comparator<Scope> SCOPE_ORDER =
+			Comparator.comparing(Scope::getKey).thenComparing(Scope::getValue);
+
 	private Session session;
 	
     private MappingFactory<VersionSetReference> mappingFactory;
 	
 	private JsonUtils jsonUtils;
+
+	private volatile PreparedStatement insertStatement;
+
+	private volatile PreparedStatement deleteStatement;
+
+	/**
+	 * The stored form of the keys read from rows written before the keys were
+	 * stored in canonical form. Such a row is rewritten on the next write of
+	 * its key.
+	 */
+	private final ConcurrentMap<MappingKey, String> legacyKeys = new ConcurrentHashMap<>();
 	
     @Autowired
     public VersionSetMappingCassandraRepositoryImpl(Session session, MappingFactory<VersionSetReference> mappingFactory, JsonUtils jsonUtils) {
@@ -53,6 +79,29 @@ public class VersionSetMappingCassandraRepositoryImpl implements MappingReposito
 	@Override
 	public Mapping<VersionSetReference> save(Mapping<VersionSetReference> mapping) {
 		insert(mapping);
+		legacyKeys.keySet().forEach(this::deleteLegacyRow);
+		return mapping;
+	}
+
+	/**
+	 * Upserts the single entry with one prepared statement, and then deletes
+	 * the row the key was stored in before it was stored in canonical form.
+	 */
+	@Override
+	public Mapping<VersionSetReference> put(Mapping<VersionSetReference> mapping, MappingKey key, VersionSetReference value) {
+		session.execute(getInsertStatement().bind(keyJson(key), toJson(value)));
+		deleteLegacyRow(key);
+		return mapping;
+	}
+
+	/**
+	 * Deletes the single entry with one prepared statement, along with the
+	 * row the key was stored in before it was stored in canonical form.
+	 */
+	@Override
+	public Mapping<VersionSetReference> remove(Mapping<VersionSetReference> mapping, MappingKey key) {
+		session.execute(getDeleteStatement().bind(keyJson(key)));
+		deleteLegacyRow(key);
 		return mapping;
 	}
 
@@ -68,7 +117,7 @@ public class VersionSetMappingCassandraRepositoryImpl implements MappingReposito
 		for (Map.Entry<MappingKey, VersionSetReference> key : map.entrySet()) {
 			try {
 				Insert insert = QueryBuilder.insertInto(VERSION_SET_MAPPING_COLUMN_FAMILY)
-						.value(KEY_COLUMN, jsonUtils.toJson(key.getKey()))
+						.value(KEY_COLUMN, jsonUtils.toJson(canonical(key.getKey())))
 						.value(VALUE_COLUMN, jsonUtils.toJson(key.getValue()));
 				batch.add(insert);
 			} catch (IOException e) {
@@ -79,12 +128,77 @@ public class VersionSetMappingCassandraRepositoryImpl implements MappingReposito
 		session.execute(batch);
 	}
 	
+	/**
+	 * @return the key with its scopes in a stable order, so that a key is
+	 *         serialized the same way no matter the order of its scope set
+	 */
+	private static MappingKey canonical(MappingKey key) {
+		if (key.getScopeSet() == null) {
+			return key;
+		}
+		return new MappingKey(key.getScopeSet().stream()
+				.sorted(SCOPE_ORDER)
+				.collect(Collectors.toCollection(LinkedHashSet::new)));
+	}
+
+	private void deleteLegacyRow(MappingKey key) {
+		final String legacyKey = legacyKeys.remove(key);
+		if (legacyKey != null) {
+			session.execute(getDeleteStatement().bind(legacyKey));
+		}
+	}
+
+	private String keyJson(MappingKey key) {
+		return toJson(canonical(key));
+	}
+
+	private String toJson(Object object) {
+		try {
+			return jsonUtils.toJson(object);
+		} catch (IOException e) {
+			LOGGER.error("Error to parse " + object + ". Exception:" + e);
+			throw new HengeException("Error to parse " + object);
+		}
+	}
+
+	private PreparedStatement getInsertStatement() {
+		if (insertStatement == null) {
+			synchronized (this) {
+				if (insertStatement == null) {
+					Insert insert = QueryBuilder.insertInto(VERSION_SET_MAPPING_COLUMN_FAMILY)
+							.value(KEY_COLUMN, QueryBuilder.bindMarker())
+							.value(VALUE_COLUMN, QueryBuilder.bindMarker());
+					insertStatement = session.prepare(insert);
+				}
+			}
+		}
+		return insertStatement;
+	}
+
+	private PreparedStatement getDeleteStatement() {
+		if (deleteStatement == null) {
+			synchronized (this) {
+				if (deleteStatement == null) {
+					Delete delete = QueryBuilder.delete().from(VERSION_SET_MAPPING_COLUMN_FAMILY);
+					delete.where(QueryBuilder.eq(KEY_COLUMN, QueryBuilder.bindMarker()));
+					deleteStatement = session.prepare(delete);
+				}
+			}
+		}
+		return deleteStatement;
+	}
+	
 	private List<Row> select() {
 		Select select = QueryBuilder.select()
 						.from(VERSION_SET_MAPPING_COLUMN_FAMILY);
 		return session.execute(select).all();
 	}
 	
+	/**
+	 * Builds the mapping from the rows. The keys of the rows written before
+	 * keys were stored in canonical form are remembered, so that those rows
+	 * are replaced on the next write of their key.
+	 */
 	private Mapping<VersionSetReference> transform(final List<Row> rows) {
 		Mapping<VersionSetReference> mapping = mappingFactory.create();
 			for (Row row : rows) {
@@ -103,6 +217,9 @@ public class VersionSetMappingCassandraRepositoryImpl implements MappingReposito
 					throw new HengeParseException("Parse error during transform key = "+key+ " and value = "+ value + ". Exception:" + e);
 				}	
 				mapping.put(mappingKey, versionSetReference);
+				if (mappingKey != null && !key.equals(keyJson(mappingKey))) {
+					legacyKeys.put(mappingKey, key);
+				}
 			}
 		return mapping;
 			
@@ -2,31 +2,52 @@ package com.kenzan.henge.repository.impl.flatfile;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.List;
+import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
+import javax.annotation.PostConstruct;
 import javax.ws.rs.core.Response.Status;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.google.common.collect.Lists;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.kenzan.henge.domain.model.NamedVersionedModel;
-import com.kenzan.henge.domain.utils.JsonUtils;
 import com.kenzan.henge.domain.utils.SemanticVersionComparator;
 import com.kenzan.henge.exception.HengeIOException;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.exception.RuntimeHengeException;
 import com.kenzan.henge.repository.BaseCrudRepository;
+import com.kenzan.henge.repository.codec.EntityCodec;
 import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 
 /**
  * This class provides basic flat file repository funcionality to subclasses.
  * Most subclasses will not need to overide them since the details of how to
- * serialize each model class is taken care by the Jackson object mapper.
+ * serialize each model class is taken care by the {@link EntityCodec}.
+ * <p>
+ * The versions of every entity are kept in an in memory index, built from a
+ * single listing of the entity folder and maintained by the write methods, so
+ * reading the latest version and checking for existence do not list the
+ * storage. Files erased behind the repository's back are detected when the
+ * version they point to cannot be read, which refreshes the entry.
+ * <p>
+ * Other instances sharing the storage may write to it as well, so the entry
+ * of each name is listed again once it is older than
+ * repository.version.index.ttl.seconds, which defaults to the listing cache
+ * TTL of the storage. A TTL of 0 keeps the entries until the repository
+ * changes them, for storages owned by a single instance.
  *
  * @author wmatsushita
  */
@@ -34,16 +55,44 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseFlatFileRepository.class);
 
+    /**
+     * Semantic version order, falling back to the plain string order for
+     * versions that are semantically equal, such as 1.0 and 1.0.0.
+     */
+    private static final Comparator<String> VERSION_ORDER =
+        new SemanticVersionComparator().thenComparing(Comparator.<String>naturalOrder());
+
+    /**
+     * Most names kept track of as recently listed.
+     */
+    private static final long MAXIMUM_LISTED_NAMES = 100000;
+
     protected FileStorageService fileStorageService;
     
-    protected JsonUtils jsonUtils;
+    protected EntityCodec entityCodec;
 
     protected FileNamingService fileNamingService;
+
+    /**
+     * Sorted versions by entity name. Only valid once versionIndexLoaded is set.
+     */
+    private final ConcurrentMap<String, NavigableSet<String>> versionIndex = new ConcurrentHashMap<>();
+
+    private volatile boolean versionIndexLoaded;
+
+    @Value("${repository.version.index.ttl.seconds:${repository.listing.cache.ttl.seconds:10}}")
+    private long versionIndexTtlSeconds;
+
+    /**
+     * Names whose index entry, or lack of one, was listed from the storage
+     * within the TTL. Null if the entries do not expire.
+     */
+    private volatile Cache<String, Boolean> listedNames;
     
     
-    public BaseFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, JsonUtils jsonUtils) {
+    public BaseFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, EntityCodec entityCodec) {
         this.fileStorageService = fileStorageService;
-        this.jsonUtils = jsonUtils;
+        this.entityCodec = entityCodec;
         this.fileNamingService = fileNamingService;
     }
     
@@ -75,7 +124,7 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
 
             final String path = fileNamingService.getPath(entity.getClass());
             
-            if (fileStorageService.existsBeginningWith(path,entity.getName())) {
+            if (hasVersions(entity.getName())) {
                 throw new HengeValidationException(Status.CONFLICT, "The " + getGenericType().getSimpleName()
                     + " being created already exists. Consider using the update method." + "property:" + entity.getName());
             }
@@ -83,7 +132,8 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
             final String fileName =
                 fileNamingService.getCompleteFileName(entity.getName(), entity.getVersion());
 
-            fileStorageService.write(path, fileName, jsonUtils.toJson(entity), false);
+            fileStorageService.writeBytes(path, fileName, entityCodec.encode(entity), false);
+            indexVersion(entity.getName(), entity.getVersion());
             LOGGER.info(getGenericType().getSimpleName() + " file {} recorded succesfuly.", fileName);
 
         } catch (JsonProcessingException e) {
@@ -118,7 +168,7 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
     public Optional<T> update(String name, T entity) {
 
         try {
-        	Optional<T> currentEntity = readLatestVersion(name);
+        	Optional<T> currentEntity = readLatestModel(name);
 
             if (!currentEntity.isPresent()) {
                 return Optional.empty();
@@ -127,7 +177,8 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
             final String fileName =
                 fileNamingService.getCompleteFileName(entity.getName(), entity.getVersion());
 
-            fileStorageService.write(fileNamingService.getPath(entity.getClass()),fileName, jsonUtils.toJson(entity), false);
+            fileStorageService.writeBytes(fileNamingService.getPath(entity.getClass()),fileName, entityCodec.encode(entity), false);
+            indexVersion(entity.getName(), entity.getVersion());
             LOGGER.info(getGenericType().getSimpleName() + " file {} created succesfuly as the result of an update.", fileName);
 
         } catch (JsonProcessingException e) {
@@ -182,6 +233,7 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
                                     + " versions by the name [" + name + "]", e);
                         }
                     });
+            unindex(name);
 
             return Optional.ofNullable(currentEntity);
         } catch (HengeIOException ioe) {
@@ -209,7 +261,7 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
 
         final String path = fileNamingService.getPath(getGenericType());
         final String fileName = fileNamingService.getCompleteFileName(name, version);
-        final Optional<T> entityOptional = read(name, version);
+        final Optional<T> entityOptional = readModel(name, version);
         if (!entityOptional.isPresent()) {
             return Optional.empty();
         }
@@ -220,6 +272,7 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
                     + getGenericType().getSimpleName() + " file [" + fileName
                     + "] was read but not found for deletion.");
             }
+            unindexVersion(name, version);
         } catch (HengeIOException e) {
             throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR, "IO error while trying to delete "
                 + getGenericType().getSimpleName() + " file [" + fileName + "]", e);
@@ -255,19 +308,36 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
     @Override
     public Optional<T> read(String name, String version) {
 
+        return readModel(name, version);
+
+    }
+
+    /**
+     * Reads the model file of a {@link NamedVersionedModel} version. Unlike
+     * {@link #read(String, String)}, it is not meant to be overridden, so
+     * subclasses that keep data apart from the model can use it to read the
+     * model alone.
+     * 
+     * @param name the {@link NamedVersionedModel} name.
+     * @param version the {@link NamedVersionedModel} version.
+     * @return an {@link Optional} of {@link NamedVersionedModel}
+     * @throws RuntimeHengeException if an IO error occurs.
+     */
+    protected final Optional<T> readModel(String name, String version) {
+
         final String fileName = fileNamingService.getCompleteFileName(name, version);
 
         try {
             
-            final Optional<String> json =
-                fileStorageService.read(
+            final Optional<byte[]> data =
+                fileStorageService.readBytes(
                     fileNamingService.getPath(getGenericType()),
                     fileName);
-            if (!json.isPresent()) {
+            if (!data.isPresent()) {
                 return Optional.empty();
             }
 
-            return Optional.ofNullable(jsonUtils.fromJson(json.get(), getGenericType()));
+            return Optional.ofNullable(entityCodec.decode(data.get(), getGenericType()));
 
         } catch (IOException e) {
             LOGGER.error(
@@ -280,8 +350,9 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
 
     /**
      * Lists all the available versions o the the {@link NamedVersionedModel}
-     * with given name. This implementation lists the files that begin with the
-     * given name and reads the version from inside each file.
+     * with given name. This implementation takes them from the version index,
+     * or lists the files that begin with the given name if the index could not
+     * be built.
      * 
      * @param name the name of the {@link NamedVersionedModel}.
      * @return an Optional containing a set of {@link String} with the available
@@ -291,6 +362,21 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
     @Override
     public Optional<Set<String>> versions(String name) {
 
+        if (isVersionIndexLoaded()) {
+            refreshIndexIfExpired(name);
+            final NavigableSet<String> versions = versionIndex.get(name);
+            return versions == null || versions.isEmpty() ? Optional.empty() : Optional.of(new HashSet<>(versions));
+        }
+
+        return listVersions(name);
+
+    }
+
+    /**
+     * Lists the versions of the entity from the storage.
+     */
+    private Optional<Set<String>> listVersions(String name) {
+
         try {
             final Optional<Set<String>> fileNames;
             final Set<String> versions;
@@ -330,16 +416,230 @@ public abstract class BaseFlatFileRepository<T extends NamedVersionedModel> impl
      */
    Optional<T> readLatestVersion(final String name) {
 
-        Optional<Set<String>> versions = versions(name);
+        return readLatestVersion(name, this::read);
+    }
+
+    /**
+     * Reads the model file of the latest version of the
+     * {@link NamedVersionedModel} with the given name.
+     * 
+     * @see #readModel(String, String)
+     */
+    protected final Optional<T> readLatestModel(final String name) {
+
+        return readLatestVersion(name, this::readModel);
+    }
+
+    private Optional<T> readLatestVersion(final String name, final BiFunction<String, String, Optional<T>> reader) {
+
+        final Optional<String> latestVersion = latestVersion(name);
+        if (!latestVersion.isPresent()) {
+            return Optional.empty();
+        }
+
+        final Optional<T> latest = reader.apply(name, latestVersion.get());
+        if (latest.isPresent() || !isVersionIndexLoaded()) {
+            return latest;
+        }
+
+        // the file was erased without going through the repository
+        refreshIndex(name);
+        final Optional<String> refreshedVersion = latestVersion(name);
+
+        return refreshedVersion.isPresent() ? reader.apply(name, refreshedVersion.get()) : Optional.empty();
+    }
+
+    private Optional<String> latestVersion(final String name) {
+
+        final Optional<Set<String>> versions = versions(name);
+        if (!versions.isPresent() || versions.get().isEmpty()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(Collections.max(versions.get(), VERSION_ORDER));
+    }
+
+    /**
+     * Checks whether any version of the entity exists. A positive answer from
+     * the index is confirmed against the storage, since it is only acted upon
+     * when rejecting a creation.
+     */
+    private boolean hasVersions(final String name) {
+
+        if (!isVersionIndexLoaded()) {
+            return fileStorageService.existsBeginningWith(fileNamingService.getPath(getGenericType()), name);
+        }
+        if (!versionIndex.containsKey(name)) {
+            refreshIndexIfExpired(name);
+            return versionIndex.containsKey(name);
+        }
+
+        refreshIndex(name);
+        return versionIndex.containsKey(name);
+    }
+
+    /**
+     * Builds the version index when the repository starts. If the storage
+     * cannot be listed yet, the index is built on first use instead.
+     */
+    @PostConstruct
+    public void loadVersionIndex() {
+
+        if (versionIndexTtlSeconds > 0) {
+            listedNames = CacheBuilder.newBuilder()
+                .expireAfterWrite(versionIndexTtlSeconds, TimeUnit.SECONDS)
+                .maximumSize(MAXIMUM_LISTED_NAMES)
+                .build();
+        }
+
+        try {
+            isVersionIndexLoaded();
+        } catch (RuntimeException e) {
+            LOGGER.warn("The {} version index could not be built on startup. It will be built on first use.",
+                getGenericType().getSimpleName(), e);
+        }
+
+    }
+
+    /**
+     * Builds the index from a single listing of the entity folder, if it was
+     * not built yet.
+     * 
+     * @return true if the index is loaded, false if the folder could not be
+     *         listed, in which case callers must list the storage themselves.
+     */
+    private boolean isVersionIndexLoaded() {
+
+        if (versionIndexLoaded) {
+            return true;
+        }
+
+        synchronized (versionIndex) {
+            if (!versionIndexLoaded) {
+                try {
+                    final Optional<Set<String>> fileNames =
+                        fileStorageService.getFileNamesStartingWith(fileNamingService.getPath(getGenericType()), "");
+                    if (fileNames.isPresent()) {
+                        fileNames.get().forEach(this::indexFileName);
+                    }
+                    if (listedNames != null) {
+                        versionIndex.keySet().forEach(name -> listedNames.put(name, Boolean.TRUE));
+                    }
+                    versionIndexLoaded = true;
+                    LOGGER.info("{} version index built with {} entities.", getGenericType().getSimpleName(), versionIndex.size());
+                } catch (HengeIOException e) {
+                    LOGGER.warn("The {} folder could not be listed to build the version index.", getGenericType().getSimpleName(), e);
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Lists the files of the given entity again if its index entry is older
+     * than the TTL, so that versions written by other instances are seen.
+     */
+    private void refreshIndexIfExpired(final String name) {
+
+        final Cache<String, Boolean> listed = listedNames;
+        if (listed != null && listed.getIfPresent(name) == null) {
+            refreshIndex(name);
+        }
+    }
+
+    /**
+     * Replaces the index entry of the given entity with a listing of its
+     * files. The new entry is built apart and swapped in at once, so readers
+     * never see the entity without versions. The versions indexed or
+     * unindexed by this instance while the listing ran are applied on top of
+     * it.
+     */
+    private void refreshIndex(final String name) {
+
+        final NavigableSet<String> indexed = versionIndex.get(name);
+        final Set<String> before = (indexed == null) ? Collections.emptySet() : new HashSet<>(indexed);
 
-        if (versions.isPresent()) {
-            List<String> versionList = Lists.newArrayList(versions.get());
-            Collections.sort(versionList, new SemanticVersionComparator());
-            String versionNumber = versionList.get(versionList.size() - 1);
-            return read(name, versionNumber);
+        final Optional<Set<String>> fileNames =
+            fileStorageService.getFileNamesStartingWith(fileNamingService.getPath(getGenericType()), fileNamingService.getFileName(name));
+
+        final NavigableSet<String> listed = new ConcurrentSkipListSet<>(VERSION_ORDER);
+        if (fileNames.isPresent()) {
+            fileNames.get().stream()
+                .filter(fileName -> name.equals(fileNamingService.extractEntityNameFromFileName(fileName)))
+                .map(this::versionOf)
+                .filter(Optional::isPresent)
+                .forEach(version -> listed.add(version.get()));
+        }
+
+        versionIndex.compute(name, (key, current) -> {
+            final Set<String> now = (current == null) ? Collections.emptySet() : current;
+            now.stream().filter(version -> !before.contains(version)).forEach(listed::add);
+            before.stream().filter(version -> !now.contains(version)).forEach(listed::remove);
+            return listed.isEmpty() ? null : listed;
+        });
+        if (listedNames != null) {
+            listedNames.put(name, Boolean.TRUE);
+        }
+    }
+
+    private void indexFileName(final String fileName) {
+
+        versionOf(fileName).ifPresent(
+            version -> indexVersion(fileNamingService.extractEntityNameFromFileName(fileName), version));
+    }
+
+    /**
+     * @return the version of the entity stored in the given file, or absent
+     *         if it is not a model file
+     */
+    private Optional<String> versionOf(final String fileName) {
+
+        // skips sub folders, such as the FileVersion data folder
+        if (!fileName.contains(FileNamingService.FILE_NAME_SEPARATOR) || fileName.contains("/")) {
+            return Optional.empty();
         }
 
-        return Optional.empty();
+        try {
+            fileNamingService.extractEntityNameFromFileName(fileName);
+            return Optional.of(fileNamingService.extractEntityVersionFromFileName(fileName));
+        } catch (RuntimeException e) {
+            LOGGER.warn("The {} file {} does not have a valid version and was not indexed.", getGenericType().getSimpleName(), fileName);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Adds a version to the index. The version is added within the update of
+     * the entry, so that it is not lost if a refresh swaps the entry.
+     */
+    protected void indexVersion(final String name, final String version) {
+
+        versionIndex.compute(name, (key, versions) -> {
+            final NavigableSet<String> updated = (versions == null) ? new ConcurrentSkipListSet<>(VERSION_ORDER) : versions;
+            updated.add(version);
+            return updated;
+        });
+    }
+
+    /**
+     * Removes a version from the index, and the entity once it has no versions.
+     */
+    protected void unindexVersion(final String name, final String version) {
+
+        versionIndex.computeIfPresent(name, (key, versions) -> {
+            versions.remove(version);
+            return versions.isEmpty() ? null : versions;
+        });
+    }
+
+    /**
+     * Removes every version of an entity from the index.
+     */
+    protected void unindex(final String name) {
+
+        versionIndex.remove(name);
     }
 
 }
@@ -1,19 +1,34 @@
 package com.kenzan.henge.repository.impl.flatfile;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.hash.Hashing;
 import com.kenzan.henge.domain.model.FileVersion;
 import com.kenzan.henge.domain.model.VersionSet;
-import com.kenzan.henge.domain.utils.JsonUtils;
+import com.kenzan.henge.domain.utils.ContentDigestInputStream;
 import com.kenzan.henge.exception.HengeIOException;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.exception.RuntimeHengeException;
 import com.kenzan.henge.repository.FileVersionRepository;
+import com.kenzan.henge.repository.codec.EntityCodec;
 import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.ws.rs.core.Response.Status;
 
@@ -24,7 +39,12 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 /**
- *
+ * Flat file repository of {@link FileVersion}s. The content is kept apart
+ * from the model, in a blob named after its SHA-256 hash, so versions with
+ * identical content share a single blob. Every version that uses a blob
+ * writes an empty reference file named after the hash, its name and its
+ * version, and the blob is erased along with its last reference. Versions
+ * written before blobs were introduced keep their content in the data folder.
  *
  * @author wmatusushita
  * @author Igor K. Shiohara
@@ -39,11 +59,22 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
 
     public static final String DATA_SUB_FOLDER_NAME = "data";
 
+    public static final String BLOB_SUB_FOLDER_NAME = "blobs";
+
+    public static final String REFERENCE_SUB_FOLDER_NAME = "refs";
+
+    /**
+     * Prefix of the blobs being streamed in, whose hash is not known yet
+     */
+    private static final String STAGING_FILE_PREFIX = ".staging-";
+
+    private static final byte[] EMPTY = new byte[0];
+
     @Autowired
     public FileVersionFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService,
-        JsonUtils jsonUtils) {
+        EntityCodec entityCodec) {
 
-        super(fileStorageService, fileNamingService, jsonUtils);
+        super(fileStorageService, fileNamingService, entityCodec);
 
     }
 
@@ -59,74 +90,69 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         checkContentHasData(entity);
 
         // By creating the model object first we benefit from the validation
-        // checks that it makes, which are the sameones that need to be done for
-        // the data object.
-        final FileVersion created = super.create(entity);
-        final String dataPath = fileNamingService.getPath(GENERIC_TYPE, DATA_SUB_FOLDER_NAME);
-        final String fileName = fileNamingService.getCompleteFileName(entity.getName(), entity.getVersion());
+        // checks that it makes, before any content is stored.
+        return persist(describeContent(entity), model -> Optional.of(super.create(model)),
+            model -> storeBlob(model, entity.getContent()), () -> {})
+            .map(model -> FileVersion.builder(model).withContent(entity.getContent()).build())
+            .get();
 
-        try {
+    }
+
+    /**
+     * Streams the content into a staging blob first, so that the model can
+     * record its hash and length.
+     */
+    @Override
+    public FileVersion create(final FileVersion entity, final InputStream content) {
 
-            final byte[] data = entity.getContent();
-            fileStorageService.writeBytes(dataPath, fileName, data, false);
+        final String blobPath = fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME);
+        final String stagingName = STAGING_FILE_PREFIX + UUID.randomUUID();
 
-            return created;
-        } catch (RuntimeHengeException e) {
-            throw e;
-        } catch (Exception e) {
-            // erase model file that was created
-            final String modelPath = fileNamingService.getPath(GENERIC_TYPE);
-            fileStorageService.delete(modelPath, fileName);
+        final FileVersion model = stageContent(blobPath, stagingName, entity, content);
 
-            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
-                "Problem trying to create entity [" + getGenericType().getSimpleName()
-                + "], fileName [" + fileName + "]", e);
-        }
+        return persist(model, created -> Optional.of(super.create(created)),
+            created -> promoteStagedBlob(created, stagingName),
+            () -> fileStorageService.delete(blobPath, stagingName))
+            .get();
 
     }
 
     @Override
-    public Optional<FileVersion> update(final String name, final FileVersion entity) {
+    public Optional<FileVersion> update(final String name, final FileVersion entity, final InputStream content) {
 
-        checkContentHasData(entity);
+        final String blobPath = fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME);
+        final String stagingName = STAGING_FILE_PREFIX + UUID.randomUUID();
 
-        final Optional<FileVersion> updated = super.update(name, entity);
-        if(!updated.isPresent()) {
-            return Optional.empty();
-        }
+        final FileVersion model = stageContent(blobPath, stagingName, entity, content);
 
-        final String dataPath = fileNamingService.getPath(GENERIC_TYPE, DATA_SUB_FOLDER_NAME);
-        final String fileName = fileNamingService.getCompleteFileName(entity.getName(), entity.getVersion());
+        return persist(model, updated -> super.update(name, updated),
+            updated -> promoteStagedBlob(updated, stagingName),
+            () -> fileStorageService.delete(blobPath, stagingName));
 
-        try {
+    }
 
-            final byte[] data = entity.getContent();
-            fileStorageService.writeBytes(dataPath, fileName, data, false);
+    @Override
+    public Optional<FileVersion> update(final String name, final FileVersion entity) {
 
-            return updated;
-        } catch (RuntimeHengeException e) {
-            throw e;
-        } catch (Exception e) {
-            // erase model file that was created
-            final String modelPath = fileNamingService.getPath(GENERIC_TYPE);
-            fileStorageService.delete(modelPath, fileName);
+        checkContentHasData(entity);
 
-            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
-                "Problem trying to update entity [" + getGenericType().getSimpleName()
-                + "] by the name [" + name + "]", e);
-        }
+        return persist(describeContent(entity), model -> super.update(name, model),
+            model -> storeBlob(model, entity.getContent()), () -> {})
+            .map(model -> FileVersion.builder(model).withContent(entity.getContent()).build());
 
     }
 
+    /**
+     * Deletes all the versions by the given name. The model and data files are
+     * read concurrently so that they can be rewritten if the deletion fails,
+     * and then erased with one bulk delete per folder.
+     */
     @Override
     public Optional<FileVersion> delete(final String name) {
 
         final String modelPath = fileNamingService.getPath(getGenericType());
         final String dataPath = fileNamingService.getPath(getGenericType(), DATA_SUB_FOLDER_NAME);
         
-        final Map<String, byte[]> erasedModels = new HashMap<>();
-        final Map<String, byte[]> erasedData = new HashMap<>();
-
         // deleteValidation(name, StringUtils.EMPTY);
         
         final Optional<Set<String>> allModelFileNames = fileStorageService.getFileNamesStartingWith(modelPath, name);
@@ -135,30 +161,20 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         }
 
         // reads the current entity as return value before erasing all of the versions.
-        FileVersion currentEntity = read(name).get();
+        FileVersion currentEntity = readLatestModel(name).get();
+
+        final Set<String> allDataFileNames =
+            fileStorageService.getFileNamesStartingWith(dataPath, name).orElse(Collections.emptySet());
+        final Map<String, byte[]> erasedModels = readAll(modelPath, allModelFileNames.get());
+        final Map<String, byte[]> erasedData = readAll(dataPath, allDataFileNames);
 
         try {
 
-            for(String fileName : allModelFileNames.get()) {
+            fileStorageService.deleteAll(modelPath, erasedModels.keySet());
+            LOGGER.info("Will Delete {} from {}.", erasedData.keySet(), dataPath);
+            fileStorageService.deleteAll(dataPath, erasedData.keySet());
 
-                final byte[] modelData = fileStorageService.readBytes(modelPath, fileName).get();
-                fileStorageService.delete(modelPath, fileName);
-                
-                erasedModels.put(fileName, modelData);
-            
-            }
-        
-            final Optional<Set<String>> allDataFileNames = fileStorageService.getFileNamesStartingWith(dataPath, name);
-            
-            for(String fileName : allDataFileNames.get()) {
-            
-                final byte[] data = fileStorageService.readBytes(dataPath, fileName).get();
-                LOGGER.info("Will Delete {} from {}.", fileName, dataPath);
-                fileStorageService.delete(dataPath, fileName);
-                
-                erasedData.put(fileName, data);
-                        
-            }
+            unindex(name);
         } catch (Exception e) {
             LOGGER.error("Problem trying to delete one or more {} versions by the name [{}]. Will rollback and rewrite the ones that were deleted.", getGenericType().getSimpleName(), name);
             
@@ -170,6 +186,8 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
                     + " versions by the name [" + name + "]", e);
         }
 
+        releaseBlobs(parseModels(erasedModels.values()));
+
         return Optional.ofNullable(currentEntity);
 
     }
@@ -183,6 +201,11 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         if(!deleted.isPresent()) {
             return Optional.empty();
         }
+
+        if (deleted.get().getContentHash() != null) {
+            releaseBlobs(Collections.singleton(deleted.get()));
+            return deleted;
+        }
         
         try {
             
@@ -198,7 +221,8 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
             final String path = fileNamingService.getPath(getGenericType());
             final String fileName = fileNamingService.getCompleteFileName(name, version);
             try {
-                fileStorageService.write(path, fileName, jsonUtils.toJson(deleted.get()), false);
+                fileStorageService.writeBytes(path, fileName,
+                    entityCodec.encode(FileVersion.builder(deleted.get()).withContent(null).build()), false);
                 throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
                     "Problem trying to delete entity [" + getGenericType().getSimpleName()
                     + "] by the name [" + name + "]", e);
@@ -214,18 +238,20 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         return deleted;
         
     }
-    
+
+    /**
+     * Reads the model and then its content. The latest version is also read
+     * through this method.
+     */
     @Override
-    public Optional<FileVersion> read(final String name) {
+    public Optional<FileVersion> read(final String name, final String version) {
 
-        Optional<FileVersion> optRead = super.read(name);
+        Optional<FileVersion> optRead = readModel(name, version);
         
         if(optRead.isPresent()) {
-            final FileVersion fileVersion = optRead.get();
-            
-            final String path = fileNamingService.getPath(getGenericType(), DATA_SUB_FOLDER_NAME);
-            final String fileName = fileNamingService.getCompleteFileName(fileVersion.getName(), fileVersion.getVersion());
-            final byte[] content = fileStorageService.readBytes(path, fileName).get();
+            final FileVersion fileVersion = optRead.get();  
+
+            final byte[] content = readContent(fileVersion).get();
             
             optRead = Optional.of(FileVersion.builder(fileVersion).withContent(content).build());
         }
@@ -233,27 +259,46 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         return optRead;
 
     }
+    
+    /**
+     * Reads the model alone, leaving the content in the storage.
+     */
+    @Override
+    public Optional<FileVersion> readMetadata(final String name) {
+
+        return readLatestModel(name);
+
+    }
 
+    /**
+     * Reads the model alone, leaving the content in the storage.
+     */
     @Override
-    public Optional<FileVersion> read(final String name, final String version) {
+    public Optional<FileVersion> readMetadata(final String name, final String version) {
 
-        Optional<FileVersion> optRead = super.read(name, version);
-        
-        
-        if(optRead.isPresent()) {
-            final FileVersion fileVersion = optRead.get();  
+        return readModel(name, version);
 
-            final String path = fileNamingService.getPath(getGenericType(), DATA_SUB_FOLDER_NAME);
-            final String fileName = fileNamingService.getCompleteFileName(fileVersion.getName(), fileVersion.getVersion());
-            final byte[] content = fileStorageService.readBytes(path, fileName).get();
-            
-            optRead = Optional.of(FileVersion.builder(fileVersion).withContent(content).build());
-        }
-        
-        return optRead;
+    }
+
+    /**
+     * Reads the model to find the blob, which is then opened directly from
+     * the storage.
+     */
+    @Override
+    public Optional<ReadableByteChannel> openContent(final String name, final String version) {
+
+        return readModel(name, version).flatMap(fileVersion -> {
+            if (fileVersion.getContentHash() != null) {
+                return fileStorageService.openChannel(fileNamingService.getPath(getGenericType(), BLOB_SUB_FOLDER_NAME),
+                    fileVersion.getContentHash());
+            }
+            return fileStorageService.openChannel(fileNamingService.getPath(getGenericType(), DATA_SUB_FOLDER_NAME),
+                fileNamingService.getCompleteFileName(name, version));
+        });
 
     }
     
+    
     /**
      * This method verifies that the given {@link FileVersion} is not referenced
      * by any existing {@link VersionSet}
@@ -294,11 +339,236 @@ public class FileVersionFlatFileRepository extends BaseFlatFileRepository<FileVe
         }
 
     }
-    
+
+    /**
+     * Writes the model and then the content of a new version. If the content
+     * cannot be written, the model is erased.
+     * 
+     * @param model the model, carrying the hash of the content
+     * @param writeModel writes the model, answering absent if there is nothing to update
+     * @param writeContent writes the content
+     * @param discardContent erases any content staged for the model, when it is not written
+     * @return the written model
+     */
+    private Optional<FileVersion> persist(final FileVersion model,
+        final Function<FileVersion, Optional<FileVersion>> writeModel, final Consumer<FileVersion> writeContent,
+        final Runnable discardContent) {
+
+        final Optional<FileVersion> written;
+        try {
+            written = writeModel.apply(model);
+        } catch (RuntimeException e) {
+            discardContent.run();
+            throw e;
+        }
+        if (!written.isPresent()) {
+            discardContent.run();
+            return written;
+        }
+
+        final String fileName = fileNamingService.getCompleteFileName(model.getName(), model.getVersion());
+        try {
+            writeContent.accept(model);
+
+            return written;
+        } catch (Exception e) {
+            // erase model file that was created
+            discardContent.run();
+            fileStorageService.delete(fileNamingService.getPath(GENERIC_TYPE), fileName);
+            unindexVersion(model.getName(), model.getVersion());
+
+            if (e instanceof RuntimeHengeException) {
+                throw (RuntimeHengeException) e;
+            }
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "Problem trying to store the content of entity [" + getGenericType().getSimpleName()
+                + "], fileName [" + fileName + "]", e);
+        }
+
+    }
+
+    /**
+     * @return the model of the entity, carrying the hash and length of the content instead of it
+     */
+    private FileVersion describeContent(final FileVersion entity) {
+
+        return FileVersion.builder(entity)
+            .withContent(null)
+            .withContentHash(Hashing.sha256().hashBytes(entity.getContent()).toString())
+            .withContentLength((long) entity.getContent().length)
+            .build();
+
+    }
+
+    /**
+     * Streams the content into a staging blob.
+     * 
+     * @return the model of the entity, carrying the hash and length of the content instead of it
+     */
+    private FileVersion stageContent(final String blobPath, final String stagingName, final FileVersion entity,
+        final InputStream content) {
+
+        final ContentDigestInputStream digest = new ContentDigestInputStream(content);
+        fileStorageService.writeStream(blobPath, stagingName, digest, false);
+
+        return FileVersion.builder(entity)
+            .withContent(null)
+            .withContentHash(digest.getHash())
+            .withContentLength(digest.getLength())
+            .build();
+
+    }
+
+    /**
+     * References the blob of the model, writing it only if no other version
+     * has the same content. The reference is written first, so that a
+     * concurrent release does not take the blob for unused.
+     */
+    private void storeBlob(final FileVersion model, final byte[] content) {
+
+        final String blobPath = fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME);
+
+        addReference(model);
+        if (!fileStorageService.exists(blobPath, model.getContentHash())) {
+            // blobs are immutable, so a concurrent write has the same content
+            fileStorageService.writeBytes(blobPath, model.getContentHash(), content, true);
+        }
+
+    }
+
+    /**
+     * References the blob of the model, turning the staging blob into it only
+     * if no other version has the same content.
+     */
+    private void promoteStagedBlob(final FileVersion model, final String stagingName) {
+
+        final String blobPath = fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME);
+
+        addReference(model);
+        if (fileStorageService.exists(blobPath, model.getContentHash())) {
+            fileStorageService.delete(blobPath, stagingName);
+        } else {
+            fileStorageService.move(blobPath, stagingName, blobPath, model.getContentHash());
+        }
+
+    }
+
+    private void addReference(final FileVersion model) {
+
+        fileStorageService.writeBytes(fileNamingService.getPath(GENERIC_TYPE, REFERENCE_SUB_FOLDER_NAME),
+            referenceName(model), EMPTY, true);
+
+    }
+
+    /**
+     * Removes the references of the given models and erases the blobs left
+     * without any. A failure only leaves unused blobs behind, so it is logged
+     * instead of failing the deletion, which cannot be undone at this point.
+     * The storage offers no locking, so a version created with the same
+     * content between the check for references and the deletion of the blob
+     * is left without it.
+     */
+    private void releaseBlobs(final Collection<FileVersion> models) {
+
+        final String blobPath = fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME);
+        final String referencePath = fileNamingService.getPath(GENERIC_TYPE, REFERENCE_SUB_FOLDER_NAME);
+
+        final List<FileVersion> referencing = models.stream()
+            .filter(model -> model.getContentHash() != null)
+            .collect(Collectors.toList());
+        try {
+            fileStorageService.deleteAll(referencePath,
+                referencing.stream().map(this::referenceName).collect(Collectors.toList()));
+
+            final Set<String> unreferenced = referencing.stream()
+                .map(FileVersion::getContentHash)
+                .distinct()
+                .filter(hash -> !fileStorageService.existsBeginningWith(referencePath, fileNamingService.getFileName(hash)))
+                .collect(Collectors.toSet());
+            fileStorageService.deleteAll(blobPath, unreferenced);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Problem trying to release the blobs of {} {} versions.", referencing.size(),
+                getGenericType().getSimpleName(), e);
+        }
+
+    }
+
+    private String referenceName(final FileVersion model) {
+
+        return fileNamingService.getCompleteFileName(model.getContentHash(),
+            fileNamingService.getCompleteFileName(model.getName(), model.getVersion()));
+
+    }
+
+    /**
+     * Reads the content of the model from its blob, or from the data folder
+     * for versions written before blobs were introduced.
+     */
+    private Optional<byte[]> readContent(final FileVersion model) {
+
+        if (model.getContentHash() != null) {
+            return fileStorageService.readBytes(fileNamingService.getPath(GENERIC_TYPE, BLOB_SUB_FOLDER_NAME),
+                model.getContentHash());
+        }
+
+        return fileStorageService.readBytes(fileNamingService.getPath(GENERIC_TYPE, DATA_SUB_FOLDER_NAME),
+            fileNamingService.getCompleteFileName(model.getName(), model.getVersion()));
+
+    }
+
+    private List<FileVersion> parseModels(final Collection<byte[]> models) {
+
+        final List<FileVersion> parsed = new ArrayList<>();
+        for (byte[] model : models) {
+            try {
+                parsed.add(entityCodec.decode(model, GENERIC_TYPE));
+            } catch (IOException e) {
+                LOGGER.warn("Problem trying to parse a deleted {} model.", getGenericType().getSimpleName(), e);
+            }
+        }
+
+        return parsed;
+
+    }
+
+    /**
+     * Reads the given files concurrently.
+     */
+    private Map<String, byte[]> readAll(final String path, final Set<String> fileNames) {
+
+        final Map<String, CompletableFuture<Optional<byte[]>>> reads = new HashMap<>();
+        fileNames.forEach(fileName -> reads.put(fileName, fileStorageService.readBytesAsync(path, fileName)));
+
+        final Map<String, byte[]> contents = new HashMap<>();
+        try {
+            for (Map.Entry<String, CompletableFuture<Optional<byte[]>>> read : reads.entrySet()) {
+                final Optional<byte[]> content = read.getValue().join();
+                if (!content.isPresent()) {
+                    throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                        "File [" + read.getKey() + "] was listed but could not be read");
+                }
+                contents.put(read.getKey(), content.get());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "Problem trying to read the files in [" + path + "]", e.getCause());
+        }
+
+        return contents;
+
+    }
+
     private void rollbackDeletions(Map<String, byte[]> deletedData, String path) {
 
         deletedData.entrySet().forEach(erasedEntry -> {
-            fileStorageService.writeBytes(path, erasedEntry.getKey(), erasedEntry.getValue(), false);
+            try {
+                fileStorageService.writeBytes(path, erasedEntry.getKey(), erasedEntry.getValue(), false);
+            } catch (HengeValidationException e) {
+                // the file was not deleted
+            }
         });
 
     }
@@ -0,0 +1,125 @@
+package com.kenzan.henge.repository.impl.flatfile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.ImmutableList;
+import com.kenzan.henge.domain.model.FileVersion;
+import com.kenzan.henge.domain.model.NamedVersionedModel;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.VersionSet;
+import com.kenzan.henge.exception.HengeIOException;
+import com.kenzan.henge.exception.RuntimeHengeException;
+import com.kenzan.henge.repository.codec.EntityCodec;
+import com.kenzan.henge.repository.codec.EntityMigration;
+import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
+
+/**
+ * Rewrites the {@link PropertyGroup}, {@link VersionSet} and
+ * {@link FileVersion} model files in the format of the configured
+ * {@link EntityCodec}. The repositories never rewrite a version, so
+ * replacing a file with the same entity in another format does not lose
+ * writes. Versions may be deleted while the migration runs, though, so a file
+ * is only rewritten if it still exists right before the write. That narrows,
+ * but does not close, the window in which a deleted model file comes back, so
+ * the migration is best run while no versions are being deleted. Each file is replaced
+ * atomically, so readers see either format but never a partial file. The
+ * FileVersion contents are not models and are kept as they are.
+ *
+ * @author wmatsushita
+ */
+@Profile({"flatfile_local", "flatfile_s3"})
+@Component
+public class FlatFileEntityMigration implements EntityMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlatFileEntityMigration.class);
+
+    private static final ImmutableList<Class<? extends NamedVersionedModel>> MODEL_TYPES =
+        ImmutableList.of(PropertyGroup.class, VersionSet.class, FileVersion.class);
+
+    private final FileStorageService fileStorageService;
+
+    private final FileNamingService fileNamingService;
+
+    private final EntityCodec entityCodec;
+
+    @Autowired
+    public FlatFileEntityMigration(final FileStorageService fileStorageService, final FileNamingService fileNamingService,
+        final EntityCodec entityCodec) {
+        this.fileStorageService = fileStorageService;
+        this.fileNamingService = fileNamingService;
+        this.entityCodec = entityCodec;
+    }
+
+    @Override
+    public int migrate() {
+
+        int migrated = 0;
+        for (Class<? extends NamedVersionedModel> type : MODEL_TYPES) {
+            try {
+                migrated += migrate(type);
+            } catch (RuntimeHengeException e) {
+                LOGGER.warn("The {} files could not be listed and were left as they were.", type.getSimpleName(), e);
+            }
+        }
+
+        return migrated;
+
+    }
+
+    private int migrate(final Class<? extends NamedVersionedModel> type) {
+
+        final String path = fileNamingService.getPath(type);
+        final Optional<Set<String>> fileNames = fileStorageService.getFileNamesStartingWith(path, "");
+        if (!fileNames.isPresent()) {
+            return 0;
+        }
+
+        int migrated = 0;
+        for (String fileName : fileNames.get()) {
+            // skips sub folders, such as the FileVersion blobs folder
+            if (!fileName.contains(FileNamingService.FILE_NAME_SEPARATOR) || fileName.contains("/")) {
+                continue;
+            }
+            try {
+                if (migrate(type, path, fileName)) {
+                    migrated++;
+                }
+            } catch (IOException | HengeIOException e) {
+                LOGGER.warn("The {} file {} could not be migrated and was left as it was.", type.getSimpleName(), fileName, e);
+            }
+        }
+        LOGGER.info("{} {} files were rewritten in the {} format.", migrated, type.getSimpleName(), entityCodec.getName());
+
+        return migrated;
+
+    }
+
+    private boolean migrate(final Class<? extends NamedVersionedModel> type, final String path, final String fileName)
+        throws IOException {
+
+        final Optional<byte[]> data = fileStorageService.readBytes(path, fileName);
+        if (!data.isPresent() || data.get().length == 0 || entityCodec.isEncoded(data.get())) {
+            return false;
+        }
+
+        final byte[] encoded = entityCodec.encode(entityCodec.decode(data.get(), type));
+        // the version may have been deleted since it was read
+        if (!fileStorageService.exists(path, fileName)) {
+            return false;
+        }
+        fileStorageService.writeStream(path, fileName, new ByteArrayInputStream(encoded), true);
+
+        return true;
+
+    }
+
+}
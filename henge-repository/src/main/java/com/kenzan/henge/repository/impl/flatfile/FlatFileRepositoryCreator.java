@@ -12,16 +12,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 /**
  * This class is executed during application startup. It creates the repository
- * folder if it doesn't exist yet.
+ * folder if it doesn't exist yet, before the other {@link ApplicationRunner}s
+ * run.
  *
  * @author wmatsushita
  */
 @Profile("flatfile_local")
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class FlatFileRepositoryCreator implements ApplicationRunner {
 
     @Value("${user.home}/${repository.location}")
@@ -43,12 +47,16 @@ public class FlatFileRepositoryCreator implements ApplicationRunner {
         Path versionSetDir = FileSystems.getDefault().getPath(repositoryLocation, VersionSet.class.getSimpleName());
         Path fileVersionDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName());
         Path fileVersionDataDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.DATA_SUB_FOLDER_NAME );
+        Path fileVersionBlobDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.BLOB_SUB_FOLDER_NAME );
+        Path fileVersionReferenceDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.REFERENCE_SUB_FOLDER_NAME );
 
         Files.createDirectories(repositoryDir);
         Files.createDirectories(propertyGroupDir);
         Files.createDirectories(versionSetDir);
         Files.createDirectories(fileVersionDir);
         Files.createDirectories(fileVersionDataDir);
+        Files.createDirectories(fileVersionBlobDir);
+        Files.createDirectories(fileVersionReferenceDir);
         
     }
 
@@ -3,10 +3,10 @@ package com.kenzan.henge.repository.impl.flatfile;
 import com.google.common.collect.Sets;
 import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.domain.model.VersionSet;
-import com.kenzan.henge.domain.utils.JsonUtils;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.exception.RuntimeHengeException;
 import com.kenzan.henge.repository.PropertyGroupRepository;
+import com.kenzan.henge.repository.codec.EntityCodec;
 import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 
 import java.io.IOException;
@@ -34,9 +34,9 @@ public class PropertyGroupFlatFileRepository extends BaseFlatFileRepository<Prop
     
 
     @Autowired
-    public PropertyGroupFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, JsonUtils jsonUtils) {
+    public PropertyGroupFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, EntityCodec entityCodec) {
 
-        super(fileStorageService, fileNamingService, jsonUtils);
+        super(fileStorageService, fileNamingService, entityCodec);
         
     }
     
@@ -69,8 +69,8 @@ public class PropertyGroupFlatFileRepository extends BaseFlatFileRepository<Prop
 			if (versionSetFileNames.isPresent()) {
 				
 				for (String versionSetPath : versionSetFileNames.get()) {
-					String content = fileStorageService.read(path, versionSetPath).get();
-					VersionSet versionSet = jsonUtils.fromJson(content, VersionSet.class);
+					byte[] content = fileStorageService.readBytes(path, versionSetPath).get();
+					VersionSet versionSet = entityCodec.decode(content, VersionSet.class);
 					versionSet.getPropertyGroupReferences().parallelStream().forEach(ref -> {
 						if (!version.isEmpty() && version.equalsIgnoreCase(ref.getVersion()) && name.equalsIgnoreCase(ref.getName())) {
 							referencedVersionSets.add(versionSet.getName());
@@ -5,8 +5,8 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import com.kenzan.henge.domain.model.VersionSet;
-import com.kenzan.henge.domain.utils.JsonUtils;
 import com.kenzan.henge.repository.VersionSetRepository;
+import com.kenzan.henge.repository.codec.EntityCodec;
 import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 
 /**
@@ -21,9 +21,9 @@ public class VersionSetFlatFileRepository extends BaseFlatFileRepository<Version
     private static final Class<VersionSet> GENERIC_TYPE = VersionSet.class;
 
     @Autowired
-    public VersionSetFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, JsonUtils jsonUtils) {
+    public VersionSetFlatFileRepository(FileStorageService fileStorageService, FileNamingService fileNamingService, EntityCodec entityCodec) {
 
-        super(fileStorageService, fileNamingService, jsonUtils);
+        super(fileStorageService, fileNamingService, entityCodec);
         
     }
     
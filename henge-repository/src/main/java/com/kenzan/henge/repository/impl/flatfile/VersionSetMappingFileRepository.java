@@ -1,15 +1,24 @@
 package com.kenzan.henge.repository.impl.flatfile;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,13 +28,24 @@ import com.kenzan.henge.domain.model.MappingFactory;
 import com.kenzan.henge.domain.model.MappingKey;
 import com.kenzan.henge.domain.model.VersionSetReference;
 import com.kenzan.henge.exception.HengeIOException;
+import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.exception.RuntimeHengeException;
 import com.kenzan.henge.repository.MappingRepository;
 import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 
 /**
  * File implementation of the {@link MappingRepository}. It stores the mapping
- * in binary format. It caches the mapping to improve performance.
+ * as a JSON snapshot plus a journal of the entries put or removed since the
+ * snapshot was written. Each journal entry is a small file of its own, named
+ * after the snapshot with an increasing sequence number, so writing an entry
+ * costs the same regardless of the size of the mapping, also on storages that
+ * cannot append to a file. Once the journal grows past
+ * versionset.mapping.journal.compaction.threshold entries, it is compacted
+ * into a new snapshot.
+ * <p>
+ * Loading is read only, since it happens while the application context is
+ * being created, possibly before the repository folder exists. The snapshot
+ * that anchors a new journal is written on the first put or remove instead.
  *
  * @author wmatsushita
  */
@@ -33,8 +53,35 @@ import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
 @Profile({ "flatfile_local", "flatfile_s3" })
 public class VersionSetMappingFileRepository implements MappingRepository<VersionSetReference> {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(VersionSetMappingFileRepository.class);
+
+    private static final String JOURNAL_INFIX = ".journal.";
+
+    private static final String SEQUENCE_FORMAT = "%020d";
+
+    private static final int MAX_APPEND_ATTEMPTS = 10;
+
     @Value("${versionset.mapping.file.name}")
     private String mappingFileName;
+
+    @Value("${versionset.mapping.journal.compaction.threshold:1000}")
+    private int compactionThreshold;
+
+    /**
+     * Sequence number of the last journal entry written or replayed.
+     */
+    private long sequence;
+
+    /**
+     * Number of journal entries not yet compacted into the snapshot.
+     */
+    private int journalSize;
+
+    /**
+     * Whether the snapshot of the mapping is known to exist, so that the
+     * journal entries written from now on have one to be replayed onto.
+     */
+    private boolean anchored;
     
     private FileStorageService fileStorageService;
 
@@ -65,15 +112,18 @@ public class VersionSetMappingFileRepository implements MappingRepository<Versio
 
         final String mappingName = name.isPresent() ? name.get() : mappingFileName;
 
-        try {
-            fileStorageService.write(StringUtils.EMPTY, mappingName, mapper.writerWithDefaultPrettyPrinter().writeValueAsString(mapping.getInnerRepresentation()), true, true);
-            
-            return mapping;
-        } catch (HengeIOException | JsonProcessingException e) {
-            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
-                "The Mapping could not be serialized into a file.", e);
+        synchronized (this) {
+            writeSnapshot(mapping, mappingName);
+            if (mappingName.equals(mappingFileName)) {
+                // the snapshot already holds every journaled entry
+                deleteJournal(mappingName, readJournal(mappingName).keySet());
+                journalSize = 0;
+                anchored = true;
+            }
         }
 
+        return mapping;
+
     }
 
     public Mapping<VersionSetReference> save(Mapping<VersionSetReference> mapping) {
@@ -83,10 +133,124 @@ public class VersionSetMappingFileRepository implements MappingRepository<Versio
     }
 
     /**
-     * Loads a previously saved instance of {@link Mapping}. If
-     * there is none, it creates a new mapping instance and returns it. The
-     * exact implementation of the Mapping is set at runtime by the profile
-     * defined in application.yml
+     * Appends a put entry to the journal, compacting it if it is due.
+     */
+    @Override
+    public Mapping<VersionSetReference> put(Mapping<VersionSetReference> mapping, MappingKey key, VersionSetReference value) {
+
+        return append(mapping, new JournalEntry(JournalEntry.PUT, key, value));
+
+    }
+
+    /**
+     * Appends a remove entry to the journal, compacting it if it is due.
+     */
+    @Override
+    public Mapping<VersionSetReference> remove(Mapping<VersionSetReference> mapping, MappingKey key) {
+
+        return append(mapping, new JournalEntry(JournalEntry.REMOVE, key, null));
+
+    }
+
+    private synchronized Mapping<VersionSetReference> append(Mapping<VersionSetReference> mapping, JournalEntry entry) {
+
+        final String json;
+        try {
+            json = mapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                "The Mapping entry could not be serialized into a file.", e);
+        }
+
+        anchor(mapping);
+
+        // another instance sharing the storage may have taken the sequence number
+        for (int attempt = 1;; attempt++) {
+            try {
+                fileStorageService.write(StringUtils.EMPTY, journalFileName(mappingFileName, sequence + 1), json, false);
+                sequence++;
+                break;
+            } catch (HengeValidationException e) {
+                sequence++;
+                if (attempt == MAX_APPEND_ATTEMPTS) {
+                    throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                        "The Mapping entry could not be appended to the journal.", e);
+                }
+            } catch (HengeIOException e) {
+                throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                    "The Mapping entry could not be appended to the journal.", e);
+            }
+        }
+
+        if (++journalSize >= compactionThreshold) {
+            compact();
+        }
+
+        return mapping;
+
+    }
+
+    /**
+     * Writes the snapshot the journal is replayed onto, if there is none yet.
+     * Entries left without a snapshot belong to a mapping that was erased, so
+     * they are deleted first, or they would be replayed onto the new one.
+     */
+    private void anchor(Mapping<VersionSetReference> mapping) {
+
+        if (anchored) {
+            return;
+        }
+
+        if (!fileStorageService.exists(StringUtils.EMPTY, mappingFileName)) {
+            deleteJournal(mappingFileName, readJournal(mappingFileName).keySet());
+            writeSnapshot(mapping, mappingFileName);
+            sequence = 0;
+            journalSize = 0;
+        }
+        anchored = true;
+
+    }
+
+    /**
+     * Replays the journal entries up to the last one written onto the stored
+     * snapshot, writes the result as the new snapshot and deletes the entries
+     * it covers. The mapping is rebuilt from the storage rather than taken
+     * from memory, so the entries written by other instances sharing the
+     * storage are kept. Replaying an entry that is already part of the
+     * snapshot yields the same mapping, so a failure between both steps is
+     * harmless.
+     */
+    private void compact() {
+
+        final SortedMap<Long, String> covered = readJournal(mappingFileName).headMap(sequence + 1);
+        try {
+            writeSnapshot(readMapping(mappingFileName, covered), mappingFileName);
+        } catch (IOException e) {
+            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                "The Mapping journal could not be compacted due to an IO problem.", e);
+        }
+        deleteJournal(mappingFileName, covered.keySet());
+        journalSize = 0;
+
+    }
+
+    private void writeSnapshot(Mapping<VersionSetReference> mapping, String mappingName) {
+
+        try {
+            fileStorageService.write(StringUtils.EMPTY, mappingName, mapper.writerWithDefaultPrettyPrinter().writeValueAsString(mapping.getInnerRepresentation()), true, true);
+        } catch (HengeIOException | JsonProcessingException e) {
+            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                "The Mapping could not be serialized into a file.", e);
+        }
+
+    }
+
+    /**
+     * Loads a previously saved instance of {@link Mapping}, replaying the
+     * journal entries written after the snapshot. If there is none, it
+     * creates a new mapping instance and returns it. The exact implementation
+     * of the Mapping is set at runtime by the profile defined in
+     * application.yml
      * 
      * @param name the name of the mapping file
      * @returns a previously saved {@link Mapping} or a new
@@ -97,23 +261,33 @@ public class VersionSetMappingFileRepository implements MappingRepository<Versio
     public Mapping<VersionSetReference> load(Optional<String> name) {
 
         final String mappingName = name.isPresent() ? name.get() : mappingFileName;
-        Mapping<VersionSetReference> mapping = mappingFactory.create();
-        
-        if (!fileStorageService.exists(StringUtils.EMPTY, mappingName)) {
-            return mapping;
-        }
-        try {
 
-            final String mappingJson = fileStorageService.read(StringUtils.EMPTY, mappingName).get();
-            
-            final JavaType type = mapper.getTypeFactory().constructMapType(mapping.getInnerRepresentation().getClass(), MappingKey.class, VersionSetReference.class);
-            mapping.setInnerRepresentation(mapper.readValue(mappingJson, type));
-            
-            return mapping;
+        synchronized (this) {
+            if (!fileStorageService.exists(StringUtils.EMPTY, mappingName)) {
+                // entries without a snapshot were left behind by a mapping that was erased
+                if (mappingName.equals(mappingFileName)) {
+                    anchored = false;
+                }
+                return mappingFactory.create();
+            }
 
-        } catch (HengeIOException | IOException e) {
-            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
-                "The Mapping file cannot be deserialized due to an IO problem.", e);
+            final SortedMap<Long, String> journal = readJournal(mappingName);
+            try {
+
+                final Mapping<VersionSetReference> mapping = readMapping(mappingName, journal);
+
+                if (mappingName.equals(mappingFileName)) {
+                    sequence = journal.isEmpty() ? 0 : journal.lastKey();
+                    journalSize = journal.size();
+                    anchored = true;
+                }
+                
+                return mapping;
+
+            } catch (HengeIOException | IOException e) {
+                throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR,
+                    "The Mapping file cannot be deserialized due to an IO problem.", e);
+            }
         }
 
     }
@@ -124,4 +298,130 @@ public class VersionSetMappingFileRepository implements MappingRepository<Versio
 
     }
 
+    /**
+     * Reads the stored snapshot of the mapping and replays the given journal
+     * entries onto it, in sequence order.
+     */
+    private Mapping<VersionSetReference> readMapping(String mappingName, SortedMap<Long, String> journal) throws IOException {
+
+        final Mapping<VersionSetReference> mapping = mappingFactory.create();
+
+        final java.util.Optional<String> mappingJson = fileStorageService.read(StringUtils.EMPTY, mappingName);
+        if (mappingJson.isPresent()) {
+            final JavaType type = mapper.getTypeFactory().constructMapType(mapping.getInnerRepresentation().getClass(), MappingKey.class, VersionSetReference.class);
+            mapping.setInnerRepresentation(mapper.readValue(mappingJson.get(), type));
+        }
+
+        for (String fileName : journal.values()) {
+            final java.util.Optional<String> entryJson = fileStorageService.read(StringUtils.EMPTY, fileName);
+            if (entryJson.isPresent()) {
+                mapper.readValue(entryJson.get(), JournalEntry.class).applyTo(mapping);
+            }
+        }
+
+        return mapping;
+
+    }
+
+    /**
+     * Lists the journal entries of the given mapping, ordered by sequence
+     * number. A folder that cannot be listed, as before the repository folder
+     * is created, holds no journal.
+     */
+    private SortedMap<Long, String> readJournal(String mappingName) {
+
+        final String prefix = mappingName + JOURNAL_INFIX;
+        final SortedMap<Long, String> journal = new TreeMap<>();
+        Set<String> fileNames;
+        try {
+            fileNames = fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, prefix).orElse(Collections.emptySet());
+        } catch (HengeIOException e) {
+            LOGGER.warn("The journal of the {} mapping could not be listed. It is taken as empty.", mappingName, e);
+            fileNames = Collections.emptySet();
+        }
+
+        for (String fileName : fileNames) {
+            try {
+                journal.put(Long.parseLong(fileName.substring(prefix.length())), fileName);
+            } catch (NumberFormatException e) {
+                // not a journal entry
+            }
+        }
+
+        return journal;
+
+    }
+
+    private void deleteJournal(String mappingName, Set<Long> sequences) {
+
+        for (Long entrySequence : sequences) {
+            fileStorageService.delete(StringUtils.EMPTY, journalFileName(mappingName, entrySequence));
+        }
+
+    }
+
+    private static String journalFileName(String mappingName, long entrySequence) {
+
+        return mappingName + JOURNAL_INFIX + String.format(SEQUENCE_FORMAT, entrySequence);
+
+    }
+
+    /**
+     * A single put or remove operation on the mapping, as stored in the
+     * journal.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static final class JournalEntry {
+
+        static final String PUT = "put";
+
+        static final String REMOVE = "remove";
+
+        private final String operation;
+
+        private final MappingKey key;
+
+        private final VersionSetReference value;
+
+        @JsonCreator
+        JournalEntry(@JsonProperty("operation") String operation, @JsonProperty("key") MappingKey key,
+            @JsonProperty("value") VersionSetReference value) {
+
+            this.operation = operation;
+            // empty scope sets are left out of the JSON
+            this.key = key == null || key.getScopeSet() != null ? key : new MappingKey(Collections.emptySet());
+            this.value = value;
+
+        }
+
+        public String getOperation() {
+
+            return operation;
+
+        }
+
+        public MappingKey getKey() {
+
+            return key;
+
+        }
+
+        public VersionSetReference getValue() {
+
+            return value;
+
+        }
+
+        void applyTo(Mapping<VersionSetReference> mapping) {
+
+            if (PUT.equals(operation)) {
+                mapping.put(key, value);
+            } else if (REMOVE.equals(operation)) {
+                mapping.remove(key);
+            }
+
+        }
+
+    }
+
 }
@@ -1,8 +1,13 @@
 package com.kenzan.henge.repository.impl.flatfile.storage;
 
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import com.kenzan.henge.exception.HengeValidationException;
 
@@ -38,6 +43,21 @@ public interface FileStorageService {
      * @param overwrite whether or not the an existing file by the same name can be overwritten.
      */
     public abstract void writeBytes(String path, String fileName, byte[] data, boolean overwrite);
+
+    /**
+     * Persists the content of the given stream into a file by the given name,
+     * without holding all of it in memory. The file must only become visible
+     * once the stream has been read to the end, and must not be created at all
+     * if reading the stream fails. If the overwrite flag is set to
+     * false, implementations should throw an a
+     * {@link HengeValidationException} if the file being written has a
+     * conflict with a already existing file. 
+     * @param path the path to the file, analogous to a folder in the flatfile system, relative to the root of the repository
+     * @param fileName the name of the file to be written
+     * @param data the stream with the content. It is not closed by this method.
+     * @param overwrite whether or not the an existing file by the same name can be overwritten.
+     */
+    public abstract void writeStream(String path, String fileName, InputStream data, boolean overwrite);
     
     /**
      * Persists the given text into a file with lock
@@ -64,6 +84,35 @@ public interface FileStorageService {
      */
     public abstract Optional<byte[]> readBytes(String path, String fileName);
 
+    /**
+     * Reads all the bytes present in the file without blocking the caller, so
+     * that several files can be fetched concurrently.
+     * @param path the path to the file, analogous to a folder in the flatfile system, relative to the root of the repository
+     * @param fileName the name of the file to be read
+     * @return a future completed with the same result {@link #readBytes(String, String)} would give.
+     */
+    public abstract CompletableFuture<Optional<byte[]>> readBytesAsync(String path, String fileName);
+
+    /**
+     * Opens the file for reading without loading it into memory. Implementations
+     * backed by the local file system should return a {@link FileChannel}, so
+     * that callers can transfer it directly to their destination.
+     * The caller is responsible for closing the channel.
+     * @param path the path to the file, analogous to a folder in the flatfile system, relative to the root of the repository
+     * @param fileName the name of the file to be read
+     * @return an Optional containing a channel positioned at the beginning of the file or absent if the file was not found.
+     */
+    public abstract Optional<ReadableByteChannel> openChannel(String path, String fileName);
+
+    /**
+     * Moves a file, replacing the target if it exists.
+     * @param path the path to the file, analogous to a folder in the flatfile system, relative to the root of the repository
+     * @param fileName the name of the file to be moved
+     * @param targetPath the path the file is moved to
+     * @param targetFileName the name the file is moved to
+     */
+    public abstract void move(String path, String fileName, String targetPath, String targetFileName);
+
     /**
      * Deletes a file by the give name.
      * @return true if the file was deleted or false if it was not found for deletion.
@@ -79,6 +128,14 @@ public interface FileStorageService {
      */
     public abstract List<String> deleteBeginningWith(String path, String nameStart);
 
+    /**
+     * Deletes all the given files, in as few requests as the implementation allows.
+     * @param path the path to the files, analogous to a folder in the flatfile system, relative to the root of the repository
+     * @param fileNames the names of the files to be deleted
+     * @return a list containing the names of the deleted files
+     */
+    public abstract List<String> deleteAll(String path, Collection<String> fileNames);
+
     /**
      * Checks if a file by the given name exists in the repository.
      * @param path the path to the file, analogous to a folder in the flatfile system, relative to the root of the repository
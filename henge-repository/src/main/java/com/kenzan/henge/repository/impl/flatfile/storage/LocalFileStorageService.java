@@ -1,22 +1,29 @@
 package com.kenzan.henge.repository.impl.flatfile.storage;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import javax.ws.rs.core.Response.Status;
 
@@ -37,6 +44,14 @@ import com.kenzan.henge.exception.RuntimeHengeException;
 @Component
 public class LocalFileStorageService implements FileStorageService {
 
+    /**
+     * Prefix of the temporary files that streamed content is written to. It
+     * does not collide with the prefix of any entity file.
+     */
+    private static final String TEMP_FILE_PREFIX = ".upload-";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
     @Value("${user.home}/${repository.location}")
     private String repositoryLocation;
 
@@ -69,6 +84,35 @@ public class LocalFileStorageService implements FileStorageService {
         }
     }
 
+    /**
+     * Copies the stream into a temporary file in the same folder, which is then
+     * renamed to the given name.
+     */
+    @Override
+    public void writeStream(final String path, final String fileName, final InputStream data, boolean overwrite) {
+
+        final Path filePath = FileSystems.getDefault().getPath(repositoryLocation, path, fileName);
+        Path tempPath = null;
+        try {
+            tempPath = Files.createTempFile(filePath.getParent(), TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+            Files.copy(data, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            if (overwrite) {
+                Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                // fails if the target exists
+                Files.move(tempPath, filePath);
+            }
+        } catch (FileAlreadyExistsException e) {
+            throw new HengeValidationException(Status.CONFLICT,
+                "The file cannot be created because it already exists.", e);
+        } catch (IOException e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "An IO error occured while trying to write the file", e);
+        } finally {
+            deleteTempFile(tempPath);
+        }
+    }
+
     @Override
     public void write(String path, String fileName, String text, boolean overwrite, boolean lock) {
 
@@ -134,6 +178,46 @@ public class LocalFileStorageService implements FileStorageService {
         }
     }
 
+    /**
+     * Local reads are cheap enough to be made in the caller's thread.
+     */
+    @Override
+    public CompletableFuture<Optional<byte[]>> readBytesAsync(final String path, final String fileName) {
+
+        return CompletableFuture.completedFuture(readBytes(path, fileName));
+
+    }
+
+    @Override
+    public Optional<ReadableByteChannel> openChannel(final String path, final String fileName) {
+
+        final Path file = FileSystems.getDefault().getPath(repositoryLocation, path, fileName);
+
+        try {
+            return Optional.of(FileChannel.open(file, StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "An IO error occured while trying to read the file", e);
+        }
+    }
+
+    @Override
+    public void move(final String path, final String fileName, final String targetPath, final String targetFileName) {
+
+        final Path file = FileSystems.getDefault().getPath(repositoryLocation, path, fileName);
+        final Path target = FileSystems.getDefault().getPath(repositoryLocation, targetPath, targetFileName);
+
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "An IO error occured while trying to move the file", e);
+        }
+
+    }
+
     @Override
     public boolean delete(final String path, final String fileName) {
 
@@ -164,6 +248,20 @@ public class LocalFileStorageService implements FileStorageService {
         return result;
     }
 
+    @Override
+    public List<String> deleteAll(final String path, final Collection<String> fileNames) {
+
+        final List<String> result = new ArrayList<>();
+
+        fileNames.stream().forEach(fileName -> {
+            if (delete(path, fileName)) {
+                result.add(fileName);
+            }
+        });
+
+        return result;
+    }
+
     @Override
     public boolean exists(final String path, final String fileName) {
 
@@ -215,4 +313,18 @@ public class LocalFileStorageService implements FileStorageService {
         return Optional.ofNullable(fileNames);
     }
 
+    private void deleteTempFile(final Path tempPath) {
+
+        if (tempPath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            // must not hide the outcome of the write. A stray temporary file
+            // is never listed as an entity file.
+        }
+
+    }
+
 }
@@ -1,25 +1,51 @@
 package com.kenzan.henge.repository.impl.flatfile.storage;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.kenzan.henge.exception.HengeException;
 import com.kenzan.henge.exception.HengeIOException;
 import com.kenzan.henge.exception.HengeValidationException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
 import javax.ws.rs.core.Response.Status;
 
 import org.apache.commons.io.IOUtils;
@@ -31,7 +57,13 @@ import org.springframework.stereotype.Component;
 
 
 /**
- * S3 implementation of the FileStorageService
+ * S3 implementation of the FileStorageService. Listings are cached by key
+ * prefix. The entries are invalidated by the writes and deletes made through
+ * this service and expire after repository.listing.cache.ttl.seconds, which
+ * bounds how long changes made by other instances can go unnoticed.
+ * Asynchronous reads run on a transfer executor bounded by
+ * repository.transfer.threads, and bulk deletes are sent as multi-object
+ * DELETE requests.
  *
  * @author wmatsushita
  */
@@ -42,6 +74,25 @@ public class S3FileStorageService implements FileStorageService {
     private AmazonS3 amazonS3;
     
     private static final String PREFIX_GLUE = "/";
+
+    private static final String NO_SUCH_KEY = "NoSuchKey";
+
+    private static final int NOT_FOUND = 404;
+
+    private static final int CONFLICT = 409;
+
+    private static final int PRECONDITION_FAILED = 412;
+
+    /**
+     * Maximum number of keys S3 accepts in a single multi-object DELETE
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Size of the parts of a multipart upload. Only one part of each upload is
+     * held in memory at a time.
+     */
+    private static final int UPLOAD_PART_SIZE = 5 * 1024 * 1024;
     
     @Value("${repository.bucket.name}")
     private String bucketName;
@@ -50,9 +101,40 @@ public class S3FileStorageService implements FileStorageService {
     private String textEncoding;
     
 
+    /**
+     * File names by listed key prefix
+     */
+    private final Cache<String, ImmutableSet<String>> listingCache;
+
+    /**
+     * Incremented on every change, so that a listing that overlapped a change
+     * is not cached.
+     */
+    private final AtomicLong listingGeneration = new AtomicLong();
+
+    private final ExecutorService transferExecutor;
+
     @Autowired
-    public S3FileStorageService(AmazonS3 amazonS3) {
+    public S3FileStorageService(AmazonS3 amazonS3,
+        @Value("${repository.listing.cache.ttl.seconds:10}") long listingCacheTtlSeconds,
+        @Value("${repository.listing.cache.maximum.size:10000}") long listingCacheMaximumSize,
+        @Value("${repository.transfer.threads:16}") int transferThreads) {
         this.amazonS3 = amazonS3;
+        this.listingCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(listingCacheTtlSeconds, TimeUnit.SECONDS)
+            .maximumSize(listingCacheMaximumSize)
+            .build();
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.transferExecutor = Executors.newFixedThreadPool(transferThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "s3-transfer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transferExecutor.shutdownNow();
     }
     
     @Override
@@ -62,30 +144,144 @@ public class S3FileStorageService implements FileStorageService {
 
     }
 
+    /**
+     * Writes the file with a single PUT. When overwriting is not allowed, the
+     * PUT carries an If-None-Match: * precondition, so S3 itself rejects it if
+     * the key already exists.
+     */
     @Override
     public void writeBytes(final String path, final String fileName, byte[] data, boolean overwrite) {
 
         final String fileKey = getFileKey(path, fileName);
         
-        if(overwrite || !amazonS3.doesObjectExist(bucketName, fileKey)) {
-            try {
-                InputStream inputStream = new ByteArrayInputStream(data);
-                
-                final ObjectMetadata objectMetaData = new ObjectMetadata();
-                objectMetaData.setContentLength(data.length);
-                
-                final PutObjectRequest putReq = new PutObjectRequest(bucketName, fileKey, inputStream, objectMetaData);
+        try {
+            InputStream inputStream = new ByteArrayInputStream(data);
+            
+            final ObjectMetadata objectMetaData = new ObjectMetadata();
+            objectMetaData.setContentLength(data.length);
+            
+            final PutObjectRequest putReq = new PutObjectRequest(bucketName, fileKey, inputStream, objectMetaData);
+            if (!overwrite) {
+                putReq.putCustomRequestHeader("If-None-Match", "*");
+            }
+    
+            amazonS3.putObject(putReq);
+            invalidateListings(fileKey);
+        } catch (AmazonS3Exception e) {
+            throw writeFailure(e, overwrite);
+        } catch(Exception e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to write the file", e);
+        }
         
-                amazonS3.putObject(putReq);
-            } catch(Exception e) {
-                throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
-                    "An IO error occured while trying to write the file", e);
+    }
+
+    /**
+     * Writes content that fits in a single part with a single PUT, and larger
+     * content with a multipart upload. Either way the object only becomes
+     * visible once the whole stream was read.
+     */
+    @Override
+    public void writeStream(final String path, final String fileName, final InputStream data, boolean overwrite) {
+
+        final String fileKey = getFileKey(path, fileName);
+
+        final byte[] firstPart;
+        try {
+            firstPart = readFirstPart(data);
+        } catch (IOException e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to write the file", e);
+        }
+        if (firstPart.length < UPLOAD_PART_SIZE) {
+            writeBytes(path, fileName, firstPart, overwrite);
+            return;
+        }
+
+        try {
+            uploadMultipart(fileKey, firstPart, data, overwrite);
+            invalidateListings(fileKey);
+        } catch (AmazonS3Exception e) {
+            throw writeFailure(e, overwrite);
+        } catch (HengeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to write the file", e);
+        }
+
+    }
+
+    private void uploadMultipart(final String fileKey, final byte[] firstPart, final InputStream data,
+        boolean overwrite) throws IOException {
+
+        final String uploadId =
+            amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, fileKey)).getUploadId();
+        try {
+            final List<PartETag> partETags = new ArrayList<>();
+            byte[] part = firstPart;
+            while (part.length > 0) {
+                final UploadPartRequest uploadReq = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(fileKey)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partETags.size() + 1)
+                    .withInputStream(new ByteArrayInputStream(part))
+                    .withPartSize(part.length);
+                partETags.add(amazonS3.uploadPart(uploadReq).getPartETag());
+                part = readPart(data);
+            }
+
+            final CompleteMultipartUploadRequest completeReq =
+                new CompleteMultipartUploadRequest(bucketName, fileKey, uploadId, partETags);
+            if (!overwrite) {
+                completeReq.putCustomRequestHeader("If-None-Match", "*");
             }
-        } else {
-            throw new HengeValidationException(Status.CONFLICT,
+            amazonS3.completeMultipartUpload(completeReq);
+        } catch (IOException | RuntimeException e) {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, fileKey, uploadId));
+            throw e;
+        }
+
+    }
+
+    /**
+     * Reads up to one part from the stream into a buffer that grows with the
+     * content, so that content smaller than a part, as most uploads are, does
+     * not take a whole part of memory.
+     */
+    private static byte[] readFirstPart(final InputStream data) throws IOException {
+
+        final ByteArrayOutputStream part = new ByteArrayOutputStream();
+        ByteStreams.copy(ByteStreams.limit(data, UPLOAD_PART_SIZE), part);
+
+        return part.toByteArray();
+
+    }
+
+    /**
+     * Reads up to one part from the stream, once it is known to be larger
+     * than one part. A part shorter than UPLOAD_PART_SIZE is the last one.
+     */
+    private static byte[] readPart(final InputStream data) throws IOException {
+
+        final byte[] part = new byte[UPLOAD_PART_SIZE];
+        final int read = ByteStreams.read(data, part, 0, part.length);
+
+        return read == part.length ? part : Arrays.copyOf(part, read);
+
+    }
+
+    private static RuntimeException writeFailure(final AmazonS3Exception e, boolean overwrite) {
+
+        // 409 is returned when a concurrent conditional write to the same key wins
+        if (!overwrite && (e.getStatusCode() == PRECONDITION_FAILED || e.getStatusCode() == CONFLICT)) {
+            return new HengeValidationException(Status.CONFLICT,
                 "The file cannot be written because it already exists.");
         }
-        
+        return new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+            "An IO error occured while trying to write the file", e);
+
     }
 
     @Override
@@ -97,16 +293,16 @@ public class S3FileStorageService implements FileStorageService {
         
     }
 
+    /**
+     * Reads the file with a single GET, answering absent when S3 reports the
+     * key as not found.
+     */
     @Override
     public Optional<byte[]> readBytes(final String path, final String fileName) {
 
         final String fileKey = getFileKey(path, fileName);
         
         try {
-            if(! amazonS3.doesObjectExist(bucketName, fileKey)) {
-                return Optional.empty();
-            }
-            
             final S3Object s3Object = amazonS3.getObject(bucketName, fileKey);
             
             try (InputStream in = s3Object.getObjectContent()){
@@ -114,6 +310,12 @@ public class S3FileStorageService implements FileStorageService {
                 return Optional.of(IOUtils.toByteArray(in));
                 
             } 
+        } catch (AmazonS3Exception e) {
+            if (isNotFound(e)) {
+                return Optional.empty();
+            }
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to read the file", e);
         } catch (Exception e) {
             throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
                 "An IO error occured while trying to read the file", e);
@@ -122,6 +324,66 @@ public class S3FileStorageService implements FileStorageService {
         
     }
 
+    @Override
+    public CompletableFuture<Optional<byte[]>> readBytesAsync(final String path, final String fileName) {
+
+        return CompletableFuture.supplyAsync(() -> readBytes(path, fileName), transferExecutor);
+
+    }
+
+    /**
+     * Opens the content of the object with a single GET. The connection is
+     * held until the returned channel is closed.
+     */
+    @Override
+    public Optional<ReadableByteChannel> openChannel(final String path, final String fileName) {
+
+        final String fileKey = getFileKey(path, fileName);
+
+        try {
+            final S3Object s3Object = amazonS3.getObject(bucketName, fileKey);
+
+            return Optional.of(Channels.newChannel(s3Object.getObjectContent()));
+        } catch (AmazonS3Exception e) {
+            if (isNotFound(e)) {
+                return Optional.empty();
+            }
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to read the file", e);
+        } catch (Exception e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                "An IO error occured while trying to read the file", e);
+        }
+
+    }
+
+    /**
+     * Copies the object to the target key and then deletes it, since S3 has
+     * no rename.
+     */
+    @Override
+    public void move(final String path, final String fileName, final String targetPath, final String targetFileName) {
+
+        final String fileKey = getFileKey(path, fileName);
+        final String targetKey = getFileKey(targetPath, targetFileName);
+
+        try {
+            amazonS3.copyObject(bucketName, fileKey, bucketName, targetKey);
+            invalidateListings(targetKey);
+
+            deleteKey(fileKey);
+        } catch (Exception e) {
+            throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
+                "An IO error occured while trying to move the file", e);
+        }
+
+    }
+
+    /**
+     * Deletes the file. S3 answers a DELETE the same way whether the key
+     * existed or not, so telling the caller whether it existed still takes a
+     * HEAD request.
+     */
     @Override
     public boolean delete(final String path, final String fileName) {
         
@@ -130,7 +392,7 @@ public class S3FileStorageService implements FileStorageService {
         try {
             boolean result = amazonS3.doesObjectExist(bucketName, fileKey);
             
-            amazonS3.deleteObject(bucketName, fileKey);
+            deleteKey(fileKey);
                 
             return result;
         } catch (Exception e) {
@@ -139,19 +401,44 @@ public class S3FileStorageService implements FileStorageService {
         }
     }
 
+    /**
+     * Deletes the files listed under the given name with multi-object DELETE
+     * requests.
+     */
     @Override
     public List<String> deleteBeginningWith(final String path, final String nameStart) {
 
-        final List<String> result = new ArrayList<>();
-        
         Optional<Set<String>> fileNames = getFileNamesStartingWith(path, nameStart);
-        if(fileNames.isPresent()) {
-            fileNames.get().stream().forEach(fileName -> {
-                delete(path, fileName);
-                result.add(fileName);
-            });
-        }
         
+        return fileNames.isPresent() ? deleteAll(path, fileNames.get()) : new ArrayList<>();
+    }
+
+    /**
+     * Deletes the files with up to 1000 keys per request. S3 answers a DELETE
+     * the same way whether the key existed or not, so all of the given names
+     * are reported as deleted.
+     */
+    @Override
+    public List<String> deleteAll(final String path, final Collection<String> fileNames) {
+
+        final List<String> result = new ArrayList<>();
+
+        for (List<String> batch : Iterables.partition(fileNames, DELETE_BATCH_SIZE)) {
+            final List<KeyVersion> keys = batch.stream()
+                .map(fileName -> new KeyVersion(getFileKey(path, fileName)))
+                .collect(Collectors.toList());
+            try {
+                amazonS3.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true));
+            } catch (Exception e) {
+                throw new HengeIOException(Status.INTERNAL_SERVER_ERROR, 
+                    "An IO error occured while trying to delete the files", e);            
+            } finally {
+                // some keys may be gone even if the request failed
+                keys.forEach(key -> invalidateListings(key.getKey()));
+            }
+            result.addAll(batch);
+        }
+
         return result;
     }
 
@@ -175,7 +462,14 @@ public class S3FileStorageService implements FileStorageService {
         final String fileKeyStart = getFileKey(path, nameStart);
         
         try {
-            final ObjectListing objectListing = amazonS3.listObjects(bucketName, fileKeyStart);
+            final ImmutableSet<String> cached = listingCache.getIfPresent(fileKeyStart);
+            if (cached != null) {
+                return !cached.isEmpty();
+            }
+
+            // a single key is enough to answer
+            final ObjectListing objectListing = amazonS3.listObjects(
+                new ListObjectsRequest().withBucketName(bucketName).withPrefix(fileKeyStart).withMaxKeys(1));
             
             return !objectListing.getObjectSummaries().isEmpty();
         } catch (Exception e) {
@@ -185,34 +479,81 @@ public class S3FileStorageService implements FileStorageService {
         
     }
 
+    /**
+     * Lists the names of the files starting with the given name, following
+     * the listing across as many pages as needed.
+     */
     @Override
     public Optional<Set<String>> getFileNamesStartingWith(final String path, final String nameStart) {
 
         final String fileKeyStart = getFileKey(path, nameStart);
 
         try {
-            final ObjectListing objectListing = amazonS3.listObjects(bucketName, fileKeyStart);
-
-            if (objectListing.getObjectSummaries().isEmpty()
-                || (objectListing.getObjectSummaries().size() == 1 && objectListing.getObjectSummaries().get(0)
-                    .getKey().equals(path + PREFIX_GLUE))) {
-                return Optional.empty();
+            ImmutableSet<String> fileNames = listingCache.getIfPresent(fileKeyStart);
+            if (fileNames == null) {
+                final long generation = listingGeneration.get();
+                fileNames = listFileNames(path, fileKeyStart);
+                if (generation == listingGeneration.get()) {
+                    listingCache.put(fileKeyStart, fileNames);
+                }
             }
 
-            Predicate<S3ObjectSummary> onlyFilesNoFolders =
-                summary -> !summary.getKey().trim().equals(path + PREFIX_GLUE);
-            Function<S3ObjectSummary, String> fromSummaryToKeyWithoutFolder =
-                summary -> summary.getKey().replaceAll(path + PREFIX_GLUE, StringUtils.EMPTY);
-                
-            return Optional.ofNullable(objectListing.getObjectSummaries().stream().filter(onlyFilesNoFolders)
-                .map(fromSummaryToKeyWithoutFolder).collect(Collectors.toSet()));
+            return fileNames.isEmpty() ? Optional.empty() : Optional.of(fileNames);
         } catch (Exception e) {
             throw new HengeIOException(Status.INTERNAL_SERVER_ERROR,
                 "An IO error occured while trying to list files", e);
         }
 
     }
+
+    private ImmutableSet<String> listFileNames(final String path, final String fileKeyStart) {
+
+        final String folderKey = path + PREFIX_GLUE;
+        final ImmutableSet.Builder<String> fileNames = ImmutableSet.builder();
+
+        ObjectListing objectListing = amazonS3.listObjects(bucketName, fileKeyStart);
+        while (true) {
+            for (S3ObjectSummary summary : objectListing.getObjectSummaries()) {
+                final String key = summary.getKey();
+                // skips the folder placeholder object
+                if (key.trim().equals(folderKey)) {
+                    continue;
+                }
+                fileNames.add(StringUtils.isNotBlank(path) && key.startsWith(folderKey) ? key.substring(folderKey.length()) : key);
+            }
+            if (!objectListing.isTruncated()) {
+                break;
+            }
+            objectListing = amazonS3.listNextBatchOfObjects(objectListing);
+        }
+
+        return fileNames.build();
+
+    }
+
+    /**
+     * Drops the cached listings that the given key belongs to.
+     */
+    private void invalidateListings(final String fileKey) {
+
+        listingGeneration.incrementAndGet();
+        listingCache.asMap().keySet().removeIf(fileKey::startsWith);
+
+    }
     
+    private void deleteKey(final String fileKey) {
+
+        amazonS3.deleteObject(bucketName, fileKey);
+        invalidateListings(fileKey);
+
+    }
+
+    private static boolean isNotFound(final AmazonS3Exception e) {
+
+        return e.getStatusCode() == NOT_FOUND || NO_SUCH_KEY.equals(e.getErrorCode());
+
+    }
+
     private String getFileKey(final String path, final String fileName) {
         
         return StringUtils.isNotBlank(path) ? new StringBuilder(path).append(PREFIX_GLUE).append(fileName).toString() : fileName;
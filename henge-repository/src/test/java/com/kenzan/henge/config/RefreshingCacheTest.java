@@ -0,0 +1,110 @@
+package com.kenzan.henge.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+
+public class RefreshingCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    };
+
+    private final RefreshingCache cache = new RefreshingCache("test",
+        CacheBuilder.newBuilder().ticker(ticker).<Object, RefreshingCache.Entry>build(), TimeUnit.MINUTES.toNanos(1),
+        TimeUnit.SECONDS.toNanos(30), Runnable::run, ticker);
+
+    @Test
+    public void singleLoadTest() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Object> first = executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                release.await();
+                return "value";
+            }));
+            loading.await();
+            final Future<Object> second = executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            release.countDown();
+
+            assertEquals("value", first.get());
+            assertEquals("value", second.get());
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void refreshAfterWriteTest() {
+        cache.put("key", "value");
+
+        assertEquals("value", cache.get("key", () -> "refreshed"));
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+
+        // the stale value is served while it is reloaded
+        assertEquals("value", cache.get("key", () -> "refreshed"));
+        assertEquals("refreshed", cache.get("key").get());
+    }
+
+    @Test
+    public void absentExpirationTest() {
+        assertEquals(Optional.empty(), cache.get("key", () -> Optional.empty()));
+        assertEquals(Optional.empty(), cache.get("key", () -> Optional.of("value")));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        assertEquals(Optional.of("value"), cache.get("key", () -> Optional.of("value")));
+    }
+
+    @Test
+    public void evictAbsentTest() {
+        cache.put("name", Optional.empty());
+        cache.put("name1.0.0", Optional.empty());
+        cache.put("name1.0.1", Optional.of("value"));
+        cache.put("other", Optional.empty());
+
+        RefreshingCache.evictAbsent(cache, "name");
+
+        assertNull(cache.get("name"));
+        assertNull(cache.get("name1.0.0"));
+        assertEquals(Optional.of("value"), cache.get("name1.0.1").get());
+        assertEquals(Optional.empty(), cache.get("other").get());
+    }
+
+    @Test
+    public void plainCacheTest() {
+        final org.springframework.cache.Cache plain = new org.springframework.cache.concurrent.ConcurrentMapCache("plain");
+
+        assertEquals("value", RefreshingCache.get(plain, "key", () -> "value"));
+        assertEquals("value", RefreshingCache.get(plain, "key", () -> "other"));
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.kenzan.henge.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SerializedSizeWeigherTest {
+
+    private final SerializedSizeWeigher weigher = new SerializedSizeWeigher(new ObjectMapper());
+
+    @Test
+    public void weighsSerializedSizeTest() {
+        assertEquals("key".length() + "\"value\"".length(), weigher.weigh("key", "value"));
+    }
+
+    @Test
+    public void unwrapsOptionalTest() {
+        assertEquals(weigher.weigh("key", "value"), weigher.weigh("key", Optional.of("value")));
+        assertTrue(weigher.weigh("key", Optional.empty()) > 0);
+    }
+
+}
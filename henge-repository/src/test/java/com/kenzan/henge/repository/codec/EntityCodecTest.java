@@ -0,0 +1,84 @@
+package com.kenzan.henge.repository.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.assertj.core.util.Sets;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.collect.ImmutableList;
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyScopedValue;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.utils.JsonUtils;
+
+public class EntityCodecTest {
+
+    private final Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder()
+        .modules(new JavaTimeModule())
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, SerializationFeature.WRITE_EMPTY_JSON_ARRAYS);
+
+    private final JsonEntityCodec json = new JsonEntityCodec(new JsonUtils(builder.build()));
+
+    private final SmileEntityCodec smile = new SmileEntityCodec(builder);
+
+    private final PropertyGroup propertyGroup = PropertyGroup.builder("group", "1.0.0")
+        .withDescription("Descrição")
+        .withType("APP")
+        .withIsActive(true)
+        .withCreatedDate(LocalDateTime.of(2016, 5, 1, 12, 30))
+        .withProperties(property("property-1"), property("property-2"), property("property-3"))
+        .build();
+
+    @Test
+    public void smileRoundTripTest() throws Exception {
+        final byte[] data = smile.encode(propertyGroup);
+
+        assertEquals(propertyGroup, smile.decode(data, PropertyGroup.class));
+        assertEquals(propertyGroup.getCreatedDate(), smile.decode(data, PropertyGroup.class).getCreatedDate());
+        assertTrue(data.length < json.encode(propertyGroup).length);
+    }
+
+    @Test
+    public void formatDetectionTest() throws Exception {
+        final byte[] smileData = smile.encode(propertyGroup);
+        final byte[] jsonData = json.encode(propertyGroup);
+
+        assertTrue(smile.isEncoded(smileData));
+        assertFalse(smile.isEncoded(jsonData));
+        assertTrue(json.isEncoded(jsonData));
+        assertTrue(json.isEncoded(" \n[]".getBytes("UTF-8")));
+        assertFalse(json.isEncoded(smileData));
+    }
+
+    @Test
+    public void delegatingCodecReadsEitherFormatTest() throws Exception {
+        final DelegatingEntityCodec codec = new DelegatingEntityCodec(smile, ImmutableList.of(smile, json));
+
+        assertEquals(SmileEntityCodec.NAME, codec.getName());
+        assertTrue(codec.isBinary());
+        assertArrayEquals(smile.encode(propertyGroup), codec.encode(propertyGroup));
+        assertEquals(propertyGroup, codec.decode(json.encode(propertyGroup), PropertyGroup.class));
+        assertEquals(propertyGroup, codec.decode(smile.encode(propertyGroup), PropertyGroup.class));
+        assertNull(codec.decode(new byte[0], PropertyGroup.class));
+    }
+
+    private Property property(final String name) {
+        return Property.builder(name)
+            .withDefaultValue("default-value")
+            .withScopedValues(
+                PropertyScopedValue.builder(Sets.newLinkedHashSet(Scope.builder("env", "dev").build()), "dev-value").build(),
+                PropertyScopedValue.builder(Sets.newLinkedHashSet(Scope.builder("env", "prod").build()), "prod-value").build())
+            .build();
+    }
+
+}
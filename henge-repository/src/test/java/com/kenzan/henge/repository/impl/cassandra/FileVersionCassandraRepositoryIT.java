@@ -233,6 +233,24 @@ public class FileVersionCassandraRepositoryIT {
 		assertTrue(versions.get().contains("1.0.1"));
 	}
 	
+	/**
+	 * Creating an existing version again releases the blob of its previous content
+	 */
+	@Test
+	public void recreateReleasesPreviousBlobTest() {
+		byte[] previousContent = "Previous content of File2".getBytes(StandardCharsets.UTF_8);
+		repository.create(FileVersion.builder("File2", "1.0.0", previousContent, "test_file").build());
+		String previousHash = select("File2", "1.0.0").get().getString("content_hash");
+
+		repository.create(FileVersion.builder("File2", "1.0.0", content1, "test_file").build());
+
+		assertFalse(session.execute(QueryBuilder.select().from("file_blob_reference")
+				.where(eq("hash", previousHash))).iterator().hasNext());
+		assertFalse(session.execute(QueryBuilder.select().from("file_blob")
+				.where(eq("hash", previousHash))).iterator().hasNext());
+		assertEquals(new String(content1), new String(repository.read("File2", "1.0.0").get().getContent()));
+	}
+	
 	/**
 	 * Utility method to search on casssandra db
 	 */
@@ -234,6 +234,29 @@ public class PropertyGroupCassandraRepositoryIT {
 		assertTrue(propertyGroup.get().isActive());
 	}
 	
+	/**
+	 * Read by name returns the latest of several versions
+	 */
+	@Test
+	public void readLatestVersionByNameTest() {
+		
+	    for (String version : new String[] {"1.0.0", "1.0.2", "1.0.1"}) {
+	        session.execute(QueryBuilder.insertInto(PROPERTY_GROUP_COLUMNFAMILY)
+				.value("name", "PG-NAME-TO-READ-LATEST")
+				.value("version", version)
+				.value("description", "Pg Description " + version)
+				.value("type", "APP")
+				.value("is_active", true));
+	    }
+		
+		final Optional<PropertyGroup> propertyGroup = repository.read("PG-NAME-TO-READ-LATEST");
+		assertTrue(propertyGroup.isPresent());
+		assertEquals("1.0.2", propertyGroup.get().getVersion());
+		assertEquals("Pg Description 1.0.2", propertyGroup.get().getDescription());
+		
+		assertFalse(repository.read("UNEXISTENT-PG-NAME-TO-READ").isPresent());
+	}
+	
 	/**
 	 * Successful read by name and version test
 	 */
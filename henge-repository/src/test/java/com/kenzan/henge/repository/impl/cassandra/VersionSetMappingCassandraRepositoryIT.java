@@ -97,4 +97,57 @@ public class VersionSetMappingCassandraRepositoryIT {
 		assertEquals(rows.get(0).getString("key"), KEY);
 		assertEquals(rows.get(0).getString("value"), VALUE);
 	}
+	
+	@Test
+	public void putTest() {
+		
+	    final MappingKey key = new MappingKey(Sets.newSet(Scope.builder("application", "AppName").build()));
+	    final VersionSetReference value = VersionSetReference.builder("AppName","2.0.0").build();
+	    final Mapping<VersionSetReference> mapping = mappingFactory.create();
+		mapping.put(key, value);
+		
+		versionSetMappingRepository.put(mapping, key, value);
+		
+		final Select select = select().from(VERSION_SET_MAPPING_COLUMNFAMILY);
+		select.where(eq("key", KEY));
+		
+		final List<Row> rows = session.execute(select).all();
+		assertEquals(1, rows.size());
+		assertEquals("{\"name\":\"AppName\",\"version\":\"2.0.0\"}", rows.get(0).getString("value"));
+	}
+	
+	@Test
+	public void removeTest() {
+		
+	    final MappingKey key = new MappingKey(Sets.newSet(Scope.builder("application", "AppName").build()));
+	    final Mapping<VersionSetReference> mapping = versionSetMappingRepository.load();
+		mapping.remove(key);
+		
+		versionSetMappingRepository.remove(mapping, key);
+		
+		final Select select = select().from(VERSION_SET_MAPPING_COLUMNFAMILY);
+		select.where(eq("key", KEY));
+		
+		assertTrue(session.execute(select).all().isEmpty());
+		assertFalse(versionSetMappingRepository.load().get(key).isPresent());
+	}
+	
+	@Test
+	public void removeOfUnorderedKeyTest() {
+		
+		final String unorderedKey = "{\"scopeSet\":[{\"key\":\"env\",\"value\":\"dev\"},{\"key\":\"application\",\"value\":\"AppName\"}]}";
+		session.execute(QueryBuilder.insertInto(VERSION_SET_MAPPING_COLUMNFAMILY)
+				.value("key", unorderedKey)
+				.value("value", VALUE));
+		
+	    final MappingKey key = new MappingKey(Sets.newSet(Scope.builder("application", "AppName").build(), Scope.builder("env", "dev").build()));
+	    final Mapping<VersionSetReference> mapping = versionSetMappingRepository.load();
+		assertTrue(mapping.get(key).isPresent());
+		mapping.remove(key);
+		
+		versionSetMappingRepository.remove(mapping, key);
+		
+		assertTrue(session.execute(select().from(VERSION_SET_MAPPING_COLUMNFAMILY).where(eq("key", unorderedKey))).all().isEmpty());
+		assertFalse(versionSetMappingRepository.load().getInnerRepresentation().containsKey(key));
+	}
 }
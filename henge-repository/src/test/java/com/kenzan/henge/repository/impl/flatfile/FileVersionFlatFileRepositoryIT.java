@@ -6,6 +6,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.hash.Hashing;
 
 import com.kenzan.henge.config.TestContextConfig;
 import com.kenzan.henge.domain.model.FileVersion;
@@ -21,6 +24,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Before;
@@ -47,6 +51,8 @@ public class FileVersionFlatFileRepositoryIT {
 
     private byte[] content1 = "Content file".getBytes(UTF_8);
 
+    private byte[] content2 = "Lorem ipsum dolor sit amet...".getBytes(UTF_8);
+
     @Rule
     public ExpectedException expectedException = ExpectedException.none();
 
@@ -64,6 +70,8 @@ public class FileVersionFlatFileRepositoryIT {
 
     private String modelPath;
     private String dataPath;
+    private String blobPath;
+    private String referencePath;
     private FileVersion fileVersion;
 
     @Before
@@ -71,6 +79,9 @@ public class FileVersionFlatFileRepositoryIT {
 
         modelPath = fileNamingService.getPath(FileVersion.class);
         dataPath = fileNamingService.getPath(FileVersion.class, FileVersionFlatFileRepository.DATA_SUB_FOLDER_NAME);
+        blobPath = fileNamingService.getPath(FileVersion.class, FileVersionFlatFileRepository.BLOB_SUB_FOLDER_NAME);
+        referencePath =
+            fileNamingService.getPath(FileVersion.class, FileVersionFlatFileRepository.REFERENCE_SUB_FOLDER_NAME);
         fileVersion =
             FileVersion.builder("Test__File1", "1.0.0", content1, "test_file.txt")
                 .withDescription("File 1 description").withCreatedBy("Wagner Y. Matsushita")
@@ -99,10 +110,13 @@ public class FileVersionFlatFileRepositoryIT {
         assertEquals(fileVersion.getDescription(), createdModel.getDescription());
         assertEquals(fileVersion.getCreatedBy(), createdModel.getCreatedBy());
         assertEquals(fileVersion.getCreatedDate(), createdModel.getCreatedDate());
+        assertEquals(hash(content1), createdModel.getContentHash());
+        assertEquals(Long.valueOf(content1.length), createdModel.getContentLength());
 
-        assertTrue(fileStorageService.exists(dataPath, fileName));
-        final byte[] createdData = fileStorageService.readBytes(dataPath, fileName).get();
+        assertFalse(fileStorageService.exists(dataPath, fileName));
+        final byte[] createdData = fileStorageService.readBytes(blobPath, hash(content1)).get();
         assertTrue(Arrays.equals(content1, createdData));
+        assertTrue(fileStorageService.exists(referencePath, fileNamingService.getCompleteFileName(hash(content1), fileName)));
 
     }
     
@@ -121,24 +135,51 @@ public class FileVersionFlatFileRepositoryIT {
     }
 
     /**
-     * Test rollback for creation
+     * Test that the content is not stored when the model cannot be created
      */
     @Test
     public void creationRollbackTest() throws Exception {
 
-        final String fileName = fileNamingService.getCompleteFileName("Test__File1", "1.0.0");
-        // writes a file on the data folder to create an IO error due to file
-        // already existing.
-        // so, the model file will be successfully created and the data file
-        // won't.
-        // the API must delete the model file created because the creation of
-        // the data file associated with it failed.
-        fileStorageService.write(dataPath, fileName, "Lorem ipsum dolor sit amet...", true);
-
-        expectedException.expect(RuntimeHengeException.class);
         repository.create(fileVersion);
 
-        assertFalse(fileStorageService.exists(modelPath, fileName));
+        // the model file already exists, so the creation fails before the
+        // content is stored.
+        try {
+            repository.create(FileVersion.builder(fileVersion).withContent(content2).build());
+            fail("The creation of an existing version must fail");
+        } catch (RuntimeHengeException e) {
+            // expected
+        }
+
+        assertFalse(fileStorageService.exists(blobPath, hash(content2)));
+        assertFalse(fileStorageService.existsBeginningWith(referencePath, fileNamingService.getFileName(hash(content2))));
+        assertTrue(Arrays.equals(content1, repository.read("Test__File1", "1.0.0").get().getContent()));
+
+    }
+
+    /**
+     * Test that versions with the same content share a single blob, which is
+     * only erased along with its last reference
+     */
+    @Test
+    public void sharedContentTest() throws Exception {
+
+        repository.create(fileVersion);
+        repository.update("Test__File1", FileVersion.builder(fileVersion).withVersion("1.0.1").build());
+
+        final Optional<Set<String>> references =
+            fileStorageService.getFileNamesStartingWith(referencePath, fileNamingService.getFileName(hash(content1)));
+        assertEquals(2, references.get().size());
+
+        repository.delete("Test__File1", "1.0.0");
+
+        assertTrue(fileStorageService.exists(blobPath, hash(content1)));
+        assertTrue(Arrays.equals(content1, repository.read("Test__File1", "1.0.1").get().getContent()));
+
+        repository.delete("Test__File1", "1.0.1");
+
+        assertFalse(fileStorageService.exists(blobPath, hash(content1)));
+        assertFalse(fileStorageService.existsBeginningWith(referencePath, fileNamingService.getFileName(hash(content1))));
 
     }
 
@@ -170,30 +211,34 @@ public class FileVersionFlatFileRepositoryIT {
         assertThat(fileVersion2.getDescription(), equalTo(updatedModel.getDescription()));
         assertThat(fileVersion2.getCreatedBy(), equalTo(updatedModel.getCreatedBy()));
         assertThat(fileVersion2.getCreatedDate(), equalTo(updatedModel.getCreatedDate()));
+        assertThat(hash(content1), equalTo(updatedModel.getContentHash()));
 
-        assertTrue(fileStorageService.exists(dataPath, fileName));
-        final byte[] updatedData = fileStorageService.readBytes(dataPath, fileName).get();
+        assertFalse(fileStorageService.exists(dataPath, fileName));
+        final byte[] updatedData = fileStorageService.readBytes(blobPath, hash(content1)).get();
         assertTrue(Arrays.equals(content1, updatedData));
 
     }
 
     /**
-     * Test rollback for updates
+     * Test that the content is not stored when the model cannot be updated
      */
     @Test
     public void updateRollbackTest() throws Exception {
 
         FileVersion created = repository.create(fileVersion);
 
-        final String fileName = fileNamingService.getCompleteFileName("Test__File1", "1.0.1");
-        // writes the datafile to create an IO error due to file already
-        // existing.
-        fileStorageService.write(dataPath, fileName, "Lorem ipsum dolor sit amet...", true);
-
-        expectedException.expect(RuntimeHengeException.class);
-        repository.update("Test__File1", FileVersion.builder(created).withVersion("1.0.1").build());
+        // the version is not changed, so the update fails before the content
+        // is stored.
+        try {
+            repository.update("Test__File1", FileVersion.builder(created).withContent(content2).build());
+            fail("The update without changing the version must fail");
+        } catch (RuntimeHengeException e) {
+            // expected
+        }
 
-        assertFalse(fileStorageService.exists(modelPath, fileName));
+        assertFalse(fileStorageService.exists(blobPath, hash(content2)));
+        assertFalse(fileStorageService.existsBeginningWith(referencePath, fileNamingService.getFileName(hash(content2))));
+        assertTrue(fileStorageService.exists(blobPath, hash(content1)));
 
     }
 
@@ -296,6 +341,8 @@ public class FileVersionFlatFileRepositoryIT {
 
         assertFalse(fileStorageService.existsBeginningWith(modelPath, "Test__File1"));
         assertFalse(fileStorageService.existsBeginningWith(dataPath, "Test__File1"));
+        assertFalse(fileStorageService.exists(blobPath, hash(content1)));
+        assertFalse(fileStorageService.existsBeginningWith(referencePath, fileNamingService.getFileName(hash(content1))));
 
     }
 
@@ -469,6 +516,28 @@ public class FileVersionFlatFileRepositoryIT {
 
     }
 
+    /**
+     * Test that the metadata is read without the content, even when the blob
+     * is missing
+     */
+    @Test
+    public void readMetadataTest() {
+
+        repository.create(fileVersion);
+        repository.update(fileVersion.getName(), FileVersion.builder(fileVersion).withVersion("1.0.1").build());
+        fileStorageService.delete(blobPath, hash(content1));
+
+        final Optional<FileVersion> latest = repository.readMetadata(fileVersion.getName());
+        assertThat(latest.get().getVersion(), equalTo("1.0.1"));
+        assertThat(latest.get().getContent(), equalTo(null));
+        assertThat(latest.get().getContentLength(), equalTo(Long.valueOf(content1.length)));
+
+        final Optional<FileVersion> specific = repository.readMetadata(fileVersion.getName(), "1.0.0");
+        assertThat(specific.get().getVersion(), equalTo("1.0.0"));
+        assertThat(specific.get().getContent(), equalTo(null));
+
+    }
+
     @After
     public void tearDown() {
 
@@ -478,6 +547,21 @@ public class FileVersionFlatFileRepositoryIT {
         fileStorageService.deleteBeginningWith(modelPath, "Test__");
         fileStorageService.deleteBeginningWith(dataPath, "Test__");
 
+        final String blobPath =
+            fileNamingService.getPath(FileVersion.class, FileVersionFlatFileRepository.BLOB_SUB_FOLDER_NAME);
+        final String referencePath =
+            fileNamingService.getPath(FileVersion.class, FileVersionFlatFileRepository.REFERENCE_SUB_FOLDER_NAME);
+        for (byte[] content : Arrays.asList(content1, content2)) {
+            fileStorageService.delete(blobPath, hash(content));
+            fileStorageService.deleteBeginningWith(referencePath, fileNamingService.getFileName(hash(content)));
+        }
+
+    }
+
+    private static String hash(final byte[] content) {
+
+        return Hashing.sha256().hashBytes(content).toString();
+
     }
 
 }
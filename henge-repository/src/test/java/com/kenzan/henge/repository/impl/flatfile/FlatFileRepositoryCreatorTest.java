@@ -49,12 +49,16 @@ public class FlatFileRepositoryCreatorTest {
         Path versionSetDir = FileSystems.getDefault().getPath(repositoryLocation, VersionSet.class.getSimpleName());
         Path fileVersionDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName());
         Path fileVersionDataDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.DATA_SUB_FOLDER_NAME );
+        Path fileVersionBlobDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.BLOB_SUB_FOLDER_NAME );
+        Path fileVersionReferenceDir = FileSystems.getDefault().getPath(repositoryLocation, FileVersion.class.getSimpleName() + "/" + FileVersionFlatFileRepository.REFERENCE_SUB_FOLDER_NAME );
         
         assertTrue(Files.exists(repositoryDir));
         assertTrue(Files.exists(propertyGroupDir));
         assertTrue(Files.exists(versionSetDir));
         assertTrue(Files.exists(fileVersionDir));
         assertTrue(Files.exists(fileVersionDataDir));
+        assertTrue(Files.exists(fileVersionBlobDir));
+        assertTrue(Files.exists(fileVersionReferenceDir));
     }
 
 }
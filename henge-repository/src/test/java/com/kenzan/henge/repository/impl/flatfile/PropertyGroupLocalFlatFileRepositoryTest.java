@@ -332,6 +332,32 @@ public class PropertyGroupLocalFlatFileRepositoryTest extends AbstractPropertyGr
 	    }
 	}
 	
+	/**
+	 * Tests that the latest version is still found after the newest file was
+	 * erased without going through the repository
+	 */
+	@Test
+	public void testReadLatestAfterFileErasedFromStorage() {
+	    
+	    createPropertyGroup(defaultPropertyGroupName, "1.0.0");
+	    
+	    expectedPropertyGroup = PropertyGroup.builder(defaultPropertyGroupName, "1.0.1")
+	        .withDescription("property-group-1-description")
+	        .withType(PropertyGroupType.APP.name())
+	        .withIsActive(true)
+	        .withProperties(property1, property2)
+	        .build(validator);
+	    propertyGroupRepository.update(defaultPropertyGroupName, expectedPropertyGroup);
+	    
+	    fileStorageService.delete(fileNamingService.getPath(PropertyGroup.class),
+	        fileNamingService.getCompleteFileName(defaultPropertyGroupName, "1.0.1"));
+	    
+	    final Optional<PropertyGroup> latest = propertyGroupRepository.read(defaultPropertyGroupName);
+	    assertThat(latest.isPresent()).isTrue();
+	    assertThat(latest.get().getVersion()).isEqualTo("1.0.0");
+	    assertThat(propertyGroupRepository.versions(defaultPropertyGroupName).get()).containsOnly("1.0.0");
+	}
+	
 	private void createPropertyGroup(final String propertyGroupName, final String propertyGroupVersion ) {
 		
 	    expectedPropertyGroup = PropertyGroup.builder(propertyGroupName, propertyGroupVersion)
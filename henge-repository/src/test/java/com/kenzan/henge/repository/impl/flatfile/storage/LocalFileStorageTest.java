@@ -10,6 +10,10 @@ import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.repository.impl.flatfile.storage.LocalFileStorageTest.TestConfig;
 
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -173,6 +177,45 @@ public class LocalFileStorageTest {
         
     }
 
+    @Test
+    public void testWriteStream() throws Exception {
+
+        final byte[] expectedBytes = new String("Text content of file").getBytes(textEncoding);
+        
+        fileStorageService.writeStream(StringUtils.EMPTY, "test-file", new ByteArrayInputStream(expectedBytes), false);
+        
+        final Path file = FileSystems.getDefault().getPath(repositoryLocation, "test-file");
+        assertTrue(Arrays.equals(expectedBytes, Files.readAllBytes(file)));
+        
+        //this should be allowed with no exception thrown
+        fileStorageService.writeStream(StringUtils.EMPTY, "test-file", new ByteArrayInputStream(expectedBytes), true);
+        
+        thrown.expect(HengeValidationException.class);
+        thrown.expectMessage("The file cannot be created because it already exists.");
+        //this should not be allowed because the file already exists and the overwrite flag is set to false
+        fileStorageService.writeStream(StringUtils.EMPTY, "test-file", new ByteArrayInputStream(expectedBytes), false);
+        
+    }
+
+    @Test
+    public void testOpenChannel() throws Exception {
+
+        final byte[] expectedBytes = new String("Text content of file").getBytes(textEncoding);
+        
+        final Path file = FileSystems.getDefault().getPath(repositoryLocation, "test-file");
+        Files.write(file, expectedBytes, StandardOpenOption.CREATE_NEW);
+        
+        try (ReadableByteChannel channel = fileStorageService.openChannel(StringUtils.EMPTY, "test-file").get()) {
+            assertTrue(channel instanceof FileChannel);
+            final ByteBuffer buffer = ByteBuffer.allocate(expectedBytes.length);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1);
+            assertTrue(Arrays.equals(expectedBytes, buffer.array()));
+        }
+        
+        assertFalse(fileStorageService.openChannel(StringUtils.EMPTY, "this-file-does-not-exist").isPresent());
+        
+    }
+
     @Test
     public void testDelete() throws Exception {
 
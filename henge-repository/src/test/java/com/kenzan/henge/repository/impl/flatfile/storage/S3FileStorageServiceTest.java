@@ -201,6 +201,30 @@ public class S3FileStorageServiceTest {
 
     }
 
+    @Test
+    public void testDeleteAllAndReadBytesAsync() throws Exception {
+
+        final byte[] expectedBytes = new String("Text content of file").getBytes(textEncoding);
+        final List<String> fileNames = new ArrayList<String>();
+        
+        for (int i=0; i<5; i++) {
+            fileNames.add(defaultTestFileName + i);
+            writeBytesToS3(defaultTestFileName + i, expectedBytes);
+        }
+        
+        for (String fileName : fileNames) {
+            assertTrue(Arrays.equals(expectedBytes, fileStorageService.readBytesAsync(StringUtils.EMPTY, fileName).join().get()));
+        }
+        assertFalse(fileStorageService.readBytesAsync(StringUtils.EMPTY, "this-file-does-not-exist").join().isPresent());
+        
+        List<String> deletedFiles = fileStorageService.deleteAll(StringUtils.EMPTY, fileNames);
+        assertTrue(deletedFiles.containsAll(fileNames));
+        for (String fileName : fileNames) {
+            assertFalse(amazonS3.doesObjectExist(bucketName, fileName));
+        }
+        
+    }
+
     @Test
     public void testExists() throws Exception {
 
@@ -254,6 +278,24 @@ public class S3FileStorageServiceTest {
         
     }
     
+    @Test
+    public void testGetFileNamesStartingWithAfterWriteAndDelete() throws Exception {
+        
+        final String expectedText = "Text content of file";
+        
+        fileStorageService.write(StringUtils.EMPTY, defaultTestFileName + 0, expectedText, false);
+        assertTrue(fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, defaultTestFileName).get().size() == 1);
+        
+        // the cached listing must reflect the writes and deletes made through the service
+        fileStorageService.write(StringUtils.EMPTY, defaultTestFileName + 1, expectedText, false);
+        assertTrue(fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, defaultTestFileName).get().size() == 2);
+        
+        fileStorageService.delete(StringUtils.EMPTY, defaultTestFileName + 0);
+        fileStorageService.delete(StringUtils.EMPTY, defaultTestFileName + 1);
+        assertFalse(fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, defaultTestFileName).isPresent());
+        
+    }
+    
     private void writeBytesToS3(String fileName, byte[] data) {
         final InputStream inputStream = new ByteArrayInputStream(data);
         
@@ -0,0 +1,150 @@
+package com.kenzan.henge.repository.mapping;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.kenzan.henge.config.TestContextConfig;
+import com.kenzan.henge.domain.model.Mapping;
+import com.kenzan.henge.domain.model.MappingKey;
+import com.kenzan.henge.domain.model.VersionSetReference;
+import com.kenzan.henge.domain.utils.ScopeUtils;
+import com.kenzan.henge.repository.MappingRepository;
+import com.kenzan.henge.repository.impl.flatfile.storage.FileStorageService;
+
+import java.util.Collections;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ * Tests that the entries put into or removed from the mapping through the
+ * journal of the file repository survive a reload, and that the journal is
+ * compacted into the snapshot.
+ *
+ * @author wmatsushita
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(TestContextConfig.class)
+@ActiveProfiles({"dev", "flatfile_local", "setmapping"})
+@TestPropertySource(properties={"versionset.mapping.file.name=test_version_set_mapping_journal", "versionset.mapping.journal.compaction.threshold=5"})
+public class VersionSetMappingJournalTest {
+
+    @Value("${versionset.mapping.file.name}")
+    private String mappingName;
+
+    @Autowired
+    private Mapping<VersionSetReference> mapping;
+
+    @Autowired
+    private MappingRepository<VersionSetReference> mappingRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @After
+    public void tearDown() throws Exception {
+
+        for (int i = 0; i < 10; i++) {
+            mapping.remove(key(i));
+        }
+        mappingRepository.save(mapping);
+
+    }
+
+    @Test
+    public void testPutAndRemoveSurviveReload() {
+
+        put(0);
+        put(1);
+        mapping.remove(key(0));
+        mappingRepository.remove(mapping, key(0));
+
+        assertThat(journalSize()).isEqualTo(3);
+
+        final Mapping<VersionSetReference> loaded = mappingRepository.load();
+        assertThat(loaded.get(key(0)).isPresent()).isFalse();
+        assertThat(loaded.get(key(1)).get()).isEqualTo(reference(1));
+
+    }
+
+    @Test
+    public void testJournalIsCompacted() {
+
+        for (int i = 0; i < 7; i++) {
+            put(i);
+        }
+
+        assertThat(journalSize()).isEqualTo(2);
+
+        final Mapping<VersionSetReference> loaded = mappingRepository.load();
+        for (int i = 0; i < 7; i++) {
+            assertThat(loaded.get(key(i)).get()).isEqualTo(reference(i));
+        }
+
+    }
+
+    @Test
+    public void testCompactionKeepsEntriesOfOtherInstances() {
+
+        put(0);
+
+        // another instance sharing the storage journals the next entry
+        final long last = fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, mappingName + ".journal.")
+            .get().stream().mapToLong(fileName -> Long.parseLong(fileName.substring(fileName.lastIndexOf('.') + 1))).max().getAsLong();
+        fileStorageService.write(StringUtils.EMPTY, String.format("%s.journal.%020d", mappingName, last + 1),
+            "{\"operation\":\"put\",\"key\":{\"scopeSet\":[{\"key\":\"application\",\"value\":\"journal-test-9\"}]},"
+                + "\"value\":{\"name\":\"journal-test-version-set-9\",\"version\":\"1.0.0\"}}", false);
+
+        for (int i = 1; i < 9; i++) {
+            put(i);
+        }
+
+        assertThat(mappingRepository.load().get(key(9)).get()).isEqualTo(reference(9));
+
+    }
+
+    @Test
+    public void testSaveClearsJournal() {
+
+        put(0);
+        mappingRepository.save(mapping);
+
+        assertThat(journalSize()).isEqualTo(0);
+        assertThat(mappingRepository.load().get(key(0)).get()).isEqualTo(reference(0));
+
+    }
+
+    private void put(int i) {
+
+        mapping.put(key(i), reference(i));
+        mappingRepository.put(mapping, key(i), reference(i));
+
+    }
+
+    private int journalSize() {
+
+        return fileStorageService.getFileNamesStartingWith(StringUtils.EMPTY, mappingName + ".journal.")
+            .orElse(Collections.emptySet()).size();
+
+    }
+
+    private static MappingKey key(int i) {
+
+        return new MappingKey(ScopeUtils.parseScopeString("application=journal-test-" + i));
+
+    }
+
+    private static VersionSetReference reference(int i) {
+
+        return VersionSetReference.builder("journal-test-version-set-" + i, "1.0.0").build();
+
+    }
+
+}
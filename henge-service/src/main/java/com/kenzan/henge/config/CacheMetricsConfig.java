@@ -0,0 +1,61 @@
+package com.kenzan.henge.config;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Exports the statistics of the caches configured in {@link CacheConfig}
+ * through the metrics registry, as gauges named cache.&lt;name&gt;.&lt;statistic&gt;.
+ *
+ * @author wmatsushita
+ */
+@Configuration
+@Profile("metrics")
+public class CacheMetricsConfig {
+
+    private final MetricRegistry metricRegistry;
+
+    private final CacheManager cacheManager;
+
+    @Autowired
+    public CacheMetricsConfig(final MetricRegistry metricRegistry, final CacheManager cacheManager) {
+        this.metricRegistry = metricRegistry;
+        this.cacheManager = cacheManager;
+    }
+
+    @PostConstruct
+    public void registerCacheMetrics() {
+        cacheManager.getCacheNames().forEach(name -> {
+            final Object nativeCache = cacheManager.getCache(name).getNativeCache();
+            if (nativeCache instanceof Cache) {
+                register(name, (Cache<?, ?>) nativeCache);
+            }
+        });
+    }
+
+    private void register(final String name, final Cache<?, ?> cache) {
+        metricRegistry.register(MetricRegistry.name("cache", name, "size"), (Gauge<Long>) cache::size);
+        metricRegistry.register(MetricRegistry.name("cache", name, "hitCount"), (Gauge<Long>) () -> cache.stats().hitCount());
+        metricRegistry.register(MetricRegistry.name("cache", name, "missCount"), (Gauge<Long>) () -> cache.stats().missCount());
+        metricRegistry.register(MetricRegistry.name("cache", name, "hitRatio"), (Gauge<Double>) () -> cache.stats().hitRate());
+        metricRegistry.register(MetricRegistry.name("cache", name, "evictionCount"),
+            (Gauge<Long>) () -> cache.stats().evictionCount());
+        metricRegistry.register(MetricRegistry.name("cache", name, "loadCount"), (Gauge<Long>) () -> cache.stats().loadCount());
+        metricRegistry.register(MetricRegistry.name("cache", name, "averageLoadMillis"),
+            (Gauge<Double>) () -> averageLoadMillis(cache.stats()));
+    }
+
+    private static double averageLoadMillis(final CacheStats stats) {
+        return stats.averageLoadPenalty() / 1000000d;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.kenzan.henge.resource.v1;
+
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * Helper for answering conditional GET requests.
+ *
+ * @author wmatsushita
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {
+
+    }
+
+    /**
+     * Answers 304 (Not Modified) when the If-None-Match header of the request
+     * matches the given tag, otherwise builds the response given by the
+     * supplier, which is only invoked in that case.
+     * 
+     * @param request the current request
+     * @param tag the tag of the current representation
+     * @param ok supplies the full response
+     * @return the response, tagged with the given {@link EntityTag}
+     */
+    static Response respond(final Request request, final EntityTag tag, final Supplier<ResponseBuilder> ok) {
+        final ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+
+        return ok.get().tag(tag).build();
+    }
+
+}
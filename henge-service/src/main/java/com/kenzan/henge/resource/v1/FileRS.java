@@ -11,6 +11,7 @@ import com.kenzan.henge.exception.HengeResourceNotFoundException;
 import com.kenzan.henge.exception.RuntimeHengeException;
 import com.kenzan.henge.service.FileBD;
 import com.kenzan.henge.service.VersionSetBD;
+import com.kenzan.henge.service.cache.EntityTagCache;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
@@ -20,8 +21,15 @@ import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Optional;
 import java.util.Set;
 
@@ -38,14 +46,16 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -61,19 +71,28 @@ public class FileRS {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileRS.class);
 
+	private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
 	private FileBD fileBD;
 
     private JsonUtils jsonUtils;
     
     private VersionSetBD versionSetBD;
+    
+    private EntityTagCache entityTagCache;
+
+    private long maxUploadSize;
 
 
 	@Autowired
-	public FileRS(FileBD fileBD, JsonUtils jsonUtils, VersionSetBD versionSetBD) {
+	public FileRS(FileBD fileBD, JsonUtils jsonUtils, VersionSetBD versionSetBD, EntityTagCache entityTagCache,
+			@Value("${file.upload.max.size:2097152}") long maxUploadSize) {
 		this.fileBD = fileBD;
 
         this.jsonUtils = jsonUtils;
         this.versionSetBD = versionSetBD;
+        this.entityTagCache = entityTagCache;
+        this.maxUploadSize = maxUploadSize;
                         
 	}
 
@@ -87,6 +106,7 @@ public class FileRS {
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"),
 			@ApiResponse(code = 403, message = "UNAUTHORIZED"),
 			@ApiResponse(code = 409, message = "CONFLICT"),
+			@ApiResponse(code = 413, message = "REQUEST ENTITY TOO LARGE"),
 			@ApiResponse(code = 500, message = "INTERNAL SERVER ERROR")    	
     })
 	@Timed(name = "create")
@@ -94,20 +114,18 @@ public class FileRS {
 	@Path("/upload")
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	public Response upload(@Context final HttpServletRequest request) {
-		long size = request.getContentLengthLong();
-        if (size > 2097152) { //2mb
-     	   throw new HengeException(Status.INTERNAL_SERVER_ERROR, "The field file exceeds its maximum permitted size of 2097152 bytes.");
-        }
+		checkUploadSize(request.getContentLengthLong());
         try {
-            final Part filePart = request.getPart("file");
-            final Part fileVersionPart = request.getPart("data");
+            final Part filePart = getPart(request, "file");
+            final Part fileVersionPart = getPart(request, "data");
             final String fileName = filePart.getSubmittedFileName();
             
-            try (InputStream fileInputStream = filePart.getInputStream();
+            try (InputStream fileInputStream = new SizeLimitedInputStream(filePart.getInputStream(), maxUploadSize);
                  InputStream dataInputStream = fileVersionPart.getInputStream()) {
                 final FileVersion fileVersion = jsonUtils.fromJson(dataInputStream, FileVersion.class);
-                final FileVersion fv = FileVersion.builder(fileVersion).withContent(IOUtils.toByteArray(fileInputStream)).withFileName(fileName).build();
-                final FileVersion result = fileBD.create(fv);
+                final FileVersion fv = FileVersion.builder(fileVersion).withContent(null).withContentHash(null).withContentLength(null)
+                    .withFileName(fileName).build();
+                final FileVersion result = fileBD.create(fv, fileInputStream);
                 return Response.ok(result).build();
             }
             
@@ -127,6 +145,7 @@ public class FileRS {
             @ApiResponse(code = 403, message = "UNAUTHORIZED"),
             @ApiResponse(code = 404, message = "NOT FOUND"),
             @ApiResponse(code = 409, message = "CONFLICT"),
+            @ApiResponse(code = 413, message = "REQUEST ENTITY TOO LARGE"),
             @ApiResponse(code = 500, message = "INTERNAL SERVER ERROR")     
     })
     @Timed(name = "update")
@@ -134,20 +153,18 @@ public class FileRS {
 	@Path("/update")
 	@Consumes(MediaType.MULTIPART_FORM_DATA)
 	public Response update(@Context final HttpServletRequest request) {
-		long size = request.getContentLengthLong();
-        if (size > 2097152) { //2mb
-     	   throw new HengeException(Status.INTERNAL_SERVER_ERROR, "The field file exceeds its maximum permitted size of 2097152 bytes.");
-        }
+		checkUploadSize(request.getContentLengthLong());
         try {
-            final Part filePart = request.getPart("file");
-            final Part fileVersionPart = request.getPart("data");
+            final Part filePart = getPart(request, "file");
+            final Part fileVersionPart = getPart(request, "data");
             final String fileName = filePart.getSubmittedFileName();
             
-            try (InputStream fileInputStream = filePart.getInputStream();
+            try (InputStream fileInputStream = new SizeLimitedInputStream(filePart.getInputStream(), maxUploadSize);
                  InputStream dataInputStream = fileVersionPart.getInputStream()) {
                 final FileVersion fileVersion = jsonUtils.fromJson(dataInputStream, FileVersion.class);
-                final FileVersion fv = FileVersion.builder(fileVersion).withContent(IOUtils.toByteArray(fileInputStream)).withFileName(fileName).build();
-                final Optional<FileVersion> result = fileBD.update(fv.getName() ,fv);
+                final FileVersion fv = FileVersion.builder(fileVersion).withContent(null).withContentHash(null).withContentLength(null)
+                    .withFileName(fileName).build();
+                final Optional<FileVersion> result = fileBD.update(fv.getName(), fv, fileInputStream);
                 if(!result.isPresent()) {
                     throw new HengeResourceNotFoundException("No FileVersion was found by the given name ["+fv.getName()+"] to be updated. Consider creating a new one.");
                 }
@@ -244,7 +261,7 @@ public class FileRS {
 	@ApiImplicitParams({
 			@ApiImplicitParam(name = "ACCEPT", value = "ACCEPT", defaultValue = "application/json", required = true, dataType = "string", paramType = "header") })
 	@ApiResponses(value = { @ApiResponse(code = 200, message = "SUCCESS", response = FileVersion.class),
-			@ApiResponse(code = 400, message = "INVALID REQUEST"),
+			@ApiResponse(code = 304, message = "NOT MODIFIED"), @ApiResponse(code = 400, message = "INVALID REQUEST"),
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"), @ApiResponse(code = 403, message = "UNAUTHORIZED"),
 			@ApiResponse(code = 404, message = "NOT FOUND"), @ApiResponse(code = 409, message = "CONFLICT"),
 			@ApiResponse(code = 500, message = "INTERNAL SERVER ERROR") })
@@ -252,12 +269,12 @@ public class FileRS {
 	@GET
 	@Path("/{fileVersionName}")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
-	public Response download(@PathParam(value = "fileVersionName") @ApiParam("fileVersionName") final String name)
-			throws HengeResourceNotFoundException {
+	public Response download(@PathParam(value = "fileVersionName") @ApiParam("fileVersionName") final String name,
+			@Context final Request request) throws HengeResourceNotFoundException {
 
 		LOGGER.info("FileRS :: Download Start : FileVersionName [{}]", name);
 
-		final Optional<FileVersion> entity = fileBD.read(name);
+		final Optional<FileVersion> entity = fileBD.readMetadata(name);
 		if (!entity.isPresent()) {
 			throw new HengeResourceNotFoundException(
 					"No FileVersion was found by the given name [" + name + "].");
@@ -265,7 +282,7 @@ public class FileRS {
 
 		LOGGER.info("FileRS :: Download End : FileVersionName [{}] \nEntity :\n{}", name, entity);
 
-		return downloadFile(entity.get());
+		return downloadFile(entity.get(), request);
 	}
 
 	/**
@@ -282,7 +299,7 @@ public class FileRS {
 	@ApiImplicitParams({
 			@ApiImplicitParam(name = "ACCEPT", value = "ACCEPT", defaultValue = "application/json", required = true, dataType = "string", paramType = "header") })
 	@ApiResponses(value = { @ApiResponse(code = 200, message = "SUCCESS", response = FileVersion.class),
-			@ApiResponse(code = 400, message = "INVALID REQUEST"),
+			@ApiResponse(code = 304, message = "NOT MODIFIED"), @ApiResponse(code = 400, message = "INVALID REQUEST"),
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"), @ApiResponse(code = 403, message = "UNAUTHORIZED"),
 			@ApiResponse(code = 404, message = "NOT FOUND"), @ApiResponse(code = 409, message = "CONFLICT"),
 			@ApiResponse(code = 500, message = "INTERNAL SERVER ERROR") })
@@ -292,18 +309,18 @@ public class FileRS {
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
 	public Response download(
 			@PathParam(value = "fileVersionName") @ApiParam("fileVersionName") final String fileVersionName,
-			@PathParam(value = "fileVersionVersion") @ApiParam("fileVersionName") final String fileVersionVersion)
-			throws HengeResourceNotFoundException {
+			@PathParam(value = "fileVersionVersion") @ApiParam("fileVersionName") final String fileVersionVersion,
+			@Context final Request request) throws HengeResourceNotFoundException {
 
 		LOGGER.info("FileVersionRS :: Download Start : FileVersionName [{}], FileVersionVersion[{}]", fileVersionName,
 				fileVersionVersion);
 
-		final Optional<FileVersion> entity = fileBD.read(fileVersionName, fileVersionVersion);
+		final Optional<FileVersion> entity = fileBD.readMetadata(fileVersionName, fileVersionVersion);
 		if (!entity.isPresent()) {
 			throw new HengeResourceNotFoundException("No FileVersion was found by the given name ["
 					+ fileVersionName + "] and version [" + fileVersionVersion + "].");
 		}
-		return downloadFile(entity.get());
+		return downloadFile(entity.get(), request);
 	}
 
 	/**
@@ -333,7 +350,7 @@ public class FileRS {
 
 		LOGGER.info("FileRS :: Read Latest Version Number Start : FileVersionName [{}]", name);
 
-		final Optional<FileVersion> entity = fileBD.read(name);
+		final Optional<FileVersion> entity = fileBD.readMetadata(name);
 		if (!entity.isPresent()) {
 			throw new HengeResourceNotFoundException(
 					"No FileVersion was found by the given name [" + name + "].");
@@ -393,7 +410,8 @@ public class FileRS {
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     public Response downloadFromVersionSet(@PathParam(value="versionSetName") final String versionSetName,
                                            @PathParam(value="versionSetVersion") final String versionSetVersion,
-                                           @PathParam(value="fileName") final String fileName) {
+                                           @PathParam(value="fileName") final String fileName,
+                                           @Context final Request request) {
                                             
 
         Optional<VersionSet> versionSet = versionSetBD.read(versionSetName, versionSetVersion);
@@ -405,14 +423,14 @@ public class FileRS {
         
         java.util.Optional<FileVersion> fileVersion = fileVersionReferences.parallelStream()
         .filter(fileVersionReference -> fileVersionReference.getName().equals(fileName))
-        .map(fileVersionReference -> fileBD.read(fileName, fileVersionReference.getVersion()).get())
+        .map(fileVersionReference -> fileBD.readMetadata(fileName, fileVersionReference.getVersion()).get())
         .findFirst();
         
         if(!fileVersion.isPresent()) {
             throw new HengeResourceNotFoundException("No File was found with the name ["+ fileName +"] in the given VersionSet ["+versionSetName+"] versionSet version ["+versionSetVersion+"].");
         }
 
-        return downloadFile(fileVersion.get());
+        return downloadFile(fileVersion.get(), request);
         
     }   
     
@@ -459,13 +477,133 @@ public class FileRS {
 
     }
 
-	private Response downloadFile(final FileVersion entity) {
-		StreamingOutput streaming = output -> {
-			output.write(entity.getContent());
-			output.flush();
-		};
-		return Response.ok(streaming)
-				.header("Content-Disposition", "attachment; filename=" + entity.getFilename()).build();
+	/**
+	 * Streams the content of the file from the storage. Local files are
+	 * transferred straight from their {@link FileChannel}.
+	 */
+	private Response downloadFile(final FileVersion entity, final Request request) {
+		return ConditionalGet.respond(request, entityTagCache.tagOf(entity), () -> {
+			final ReadableByteChannel content = fileBD.openContent(entity.getName(), entity.getVersion())
+					.orElseThrow(() -> new HengeResourceNotFoundException("The content of the FileVersion by the name ["
+							+ entity.getName() + "] and version [" + entity.getVersion() + "] was not found."));
+			StreamingOutput streaming = output -> {
+				try (ReadableByteChannel channel = content) {
+					transfer(channel, output);
+				}
+				output.flush();
+			};
+			final ResponseBuilder response = Response.ok(streaming)
+					.header("Content-Disposition", "attachment; filename=" + entity.getFilename());
+			if (content instanceof FileChannel) {
+				try {
+					response.header("Content-Length", ((FileChannel) content).size());
+				} catch (IOException e) {
+					LOGGER.warn("Could not read the size of the FileVersion [{}] content", entity.getName(), e);
+				}
+			}
+			return response;
+		});
+	}
+
+	/**
+	 * Rejects the request early when it declares a length above the limit.
+	 * The content is checked against the limit again as it is streamed, since
+	 * the declared length may be absent.
+	 */
+	private void checkUploadSize(final long size) {
+		if (size > maxUploadSize) {
+			throw uploadTooLarge(maxUploadSize);
+		}
+	}
+
+	/**
+	 * Reads a part of the request. The container fails the parsing of the
+	 * request with an {@link IllegalStateException} when a part is above the
+	 * multipart limit, which is the same as the upload limit.
+	 */
+	private Part getPart(final HttpServletRequest request, final String name) throws IOException, ServletException {
+		try {
+			return request.getPart(name);
+		} catch (IllegalStateException e) {
+			throw new HengeException(Status.REQUEST_ENTITY_TOO_LARGE,
+					"The field " + name + " exceeds its maximum permitted size of " + maxUploadSize + " bytes.", e);
+		}
+	}
+
+	private static HengeException uploadTooLarge(final long maxUploadSize) {
+		return new HengeException(Status.REQUEST_ENTITY_TOO_LARGE,
+				"The field file exceeds its maximum permitted size of " + maxUploadSize + " bytes.");
+	}
+
+	private static void transfer(final ReadableByteChannel channel, final OutputStream output) throws IOException {
+		final WritableByteChannel target = Channels.newChannel(output);
+		if (channel instanceof FileChannel) {
+			final FileChannel file = (FileChannel) channel;
+			final long size = file.size();
+			long position = 0;
+			while (position < size) {
+				position += file.transferTo(position, size - position, target);
+			}
+			return;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Fails the upload as soon as more than the permitted number of bytes
+	 * has been read.
+	 */
+	private static final class SizeLimitedInputStream extends FilterInputStream {
+
+		private final long maxSize;
+
+		private long size;
+
+		private SizeLimitedInputStream(final InputStream in, final long maxSize) {
+			super(in);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = in.read();
+			if (b != -1) {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = in.read(b, off, len);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = in.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		private void count(final long read) {
+			size += read;
+			if (size > maxSize) {
+				throw uploadTooLarge(maxSize);
+			}
+		}
+
 	}
 
 }
@@ -20,6 +20,7 @@ import com.kenzan.henge.domain.model.Property;
 import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.exception.HengeResourceNotFoundException;
 import com.kenzan.henge.service.PropertyGroupBD;
+import com.kenzan.henge.service.cache.EntityTagCache;
 
 import java.util.Optional;
 import java.util.Set;
@@ -33,6 +34,9 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,9 +75,12 @@ public class PropertyGroupRS {
 	
 	private PropertyGroupBD propertyGroupBD;
 	
+	private EntityTagCache entityTagCache;
+	
     @Autowired
-    public PropertyGroupRS(PropertyGroupBD propertyGroupBD) {
+    public PropertyGroupRS(PropertyGroupBD propertyGroupBD, EntityTagCache entityTagCache) {
         this.propertyGroupBD = propertyGroupBD;
+        this.entityTagCache = entityTagCache;
     }
 
 	/**
@@ -232,6 +239,7 @@ public class PropertyGroupRS {
     })            
     @ApiResponses(value = {
     		@ApiResponse(code = 200, message = "SUCCESS", response = PropertyGroup.class),
+    		@ApiResponse(code = 304, message = "NOT MODIFIED"),
     		@ApiResponse(code = 400, message = "INVALID REQUEST"), 
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"),
 			@ApiResponse(code = 403, message = "UNAUTHORIZED"),
@@ -242,19 +250,20 @@ public class PropertyGroupRS {
 	@Timed(name = "readSpecificVersion")
 	@GET
 	@Path("/{propertyGroupName}/versions/{propertyGroupVersion}")
-	public PropertyGroup read(
+	public Response read(
 			@PathParam(value="propertyGroupName") @ApiParam("propertyGroupName") final String propertyGroupName,
-			@PathParam(value="propertyGroupVersion") @ApiParam("propertyGroupName") final String propertyGroupVersion) {
+			@PathParam(value="propertyGroupVersion") @ApiParam("propertyGroupName") final String propertyGroupVersion,
+			@Context final Request request) {
 		
 		LOGGER.info("PropertyGroupRS :: Read Start : PropertyGroupName [{}], PropertyGroupVersion[{}]", propertyGroupName, propertyGroupVersion);
 		
-		Optional<PropertyGroup> entity = propertyGroupBD.read(propertyGroupName, propertyGroupVersion);
+		final Optional<PropertyGroup> entity = propertyGroupBD.read(propertyGroupName, propertyGroupVersion);
 		if(!entity.isPresent()) {
 		    throw new HengeResourceNotFoundException("No PropertyGroup was found by the given name ["+propertyGroupName+"] and version ["+propertyGroupVersion+"].");
 		}
 					
         LOGGER.info("PropertyGroupRS :: Read End : PropertyGroupName [{}], PropertyGroupVersion[{}] \nEntity :\n{}", propertyGroupName, propertyGroupVersion, entity);      
-        return entity.get();
+        return ConditionalGet.respond(request, entityTagCache.tagOf(entity.get()), () -> Response.ok(entity.get()));
 	}
 	
     /**
@@ -269,6 +278,7 @@ public class PropertyGroupRS {
     })            
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "SUCCESS", response = PropertyGroup.class),
+            @ApiResponse(code = 304, message = "NOT MODIFIED"),
             @ApiResponse(code = 400, message = "INVALID REQUEST"), 
             @ApiResponse(code = 401, message = "UNAUTHENTICATED"),
             @ApiResponse(code = 403, message = "UNAUTHORIZED"),
@@ -279,18 +289,19 @@ public class PropertyGroupRS {
     @Timed(name = "readLatestVersion")
     @GET
     @Path("/{propertyGroupName}/versions/latest")
-    public PropertyGroup readLatest(
-            @PathParam(value="propertyGroupName") @ApiParam("propertyGroupName") final String propertyGroupName) {
+    public Response readLatest(
+            @PathParam(value="propertyGroupName") @ApiParam("propertyGroupName") final String propertyGroupName,
+            @Context final Request request) {
         
         LOGGER.info("PropertyGroupRS :: Read Start : PropertyGroupName [{}]", propertyGroupName);
         
-        Optional<PropertyGroup> entity = propertyGroupBD.read(propertyGroupName);
+        final Optional<PropertyGroup> entity = propertyGroupBD.read(propertyGroupName);
         if(!entity.isPresent()) {
             throw new HengeResourceNotFoundException("No PropertyGroup was found by the given name ["+propertyGroupName+"]");
         }
             
         LOGGER.info("PropertyGroupRS :: Read End : PropertyGroupName [{}], \nEntity :\n{}", propertyGroupName, entity);      
-        return entity.get();
+        return ConditionalGet.respond(request, entityTagCache.tagOf(entity.get()), () -> Response.ok(entity.get()));
     }
 
 	/**
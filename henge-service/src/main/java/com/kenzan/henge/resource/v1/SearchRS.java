@@ -18,6 +18,8 @@ package com.kenzan.henge.resource.v1;
 import com.codahale.metrics.annotation.Timed;
 import com.kenzan.henge.exception.HengeResourceNotFoundException;
 import com.kenzan.henge.service.SearchBD;
+import com.kenzan.henge.service.SearchWatchBD;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
@@ -28,18 +30,28 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
@@ -57,10 +69,16 @@ public class SearchRS {
 	
 	private SearchBD searchBD;
 	
+	private SearchWatchBD searchWatchBD;
+	
+	private long watchTimeoutSeconds;
+	
 	
     @Autowired
-    public SearchRS(SearchBD searchBD) {
+    public SearchRS(SearchBD searchBD, SearchWatchBD searchWatchBD, @Value("${search.watch.timeout.seconds:30}") long watchTimeoutSeconds) {
         this.searchBD = searchBD;
+        this.searchWatchBD = searchWatchBD;
+        this.watchTimeoutSeconds = watchTimeoutSeconds;
     }
 
 	@ApiOperation(value = "Gets the Application properties and internal libraries properties within given precedence scopes. ")
@@ -69,6 +87,7 @@ public class SearchRS {
     })            
     @ApiResponses(value = {
     		@ApiResponse(code = 200, message = "SUCCESS", response = Response.class),
+    		@ApiResponse(code = 304, message = "NOT MODIFIED"),
     		@ApiResponse(code = 400, message = "INVALID REQUEST"), 
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"),
 			@ApiResponse(code = 403, message = "UNAUTHORIZED"),
@@ -82,16 +101,18 @@ public class SearchRS {
 	@Path("/{application}")
 	public Response findMatches(@PathParam(value="application") @ApiParam("application") final String application, 
 								@QueryParam(value = "scopes") @ApiParam("scopes") final String scopes,
-                                @QueryParam(value = "libs") @ApiParam("libs") final String libs) {
+                                @QueryParam(value = "libs") @ApiParam("libs") final String libs,
+                                @Context final Request request) {
 		try {
 		    
-			Optional<String> properties = searchBD.findProperties(application, scopes, Optional.ofNullable(libs));
+			final Optional<RenderedSearchResult> properties = searchBD.findRenderedProperties(application, scopes, Optional.ofNullable(libs));
 			
 			if(!properties.isPresent()) {
                 throw new HengeResourceNotFoundException("No Properties were found by the given application ["+application+"] and scopeString [" + scopes + "].");
             }
 			
-			return Response.ok().entity(properties.get()).type(MediaType.TEXT_PLAIN).build();
+			return ConditionalGet.respond(request, new EntityTag(properties.get().getEtag()),
+			    () -> Response.ok().entity(properties.get().getContent()).type(MediaType.TEXT_PLAIN));
 			
 		} catch (Exception e) {
 			LOGGER.error("VersionSetRS :: findMatches ERROR : \nApplication \n{}", application, e);
@@ -99,4 +120,56 @@ public class SearchRS {
 		}
 	}
 	
+	@ApiOperation(value = "Waits until the Application properties within given precedence scopes differ from the ones identified by the since parameter, then returns them.")
+    @ApiResponses(value = {
+    		@ApiResponse(code = 200, message = "SUCCESS", response = Response.class),
+    		@ApiResponse(code = 304, message = "NOT MODIFIED"),
+    		@ApiResponse(code = 400, message = "INVALID REQUEST"), 
+			@ApiResponse(code = 401, message = "UNAUTHENTICATED"),
+			@ApiResponse(code = 403, message = "UNAUTHORIZED"),
+			@ApiResponse(code = 404, message = "NOT FOUND"),
+			@ApiResponse(code = 500, message = "INTERNAL SERVER ERROR")    	
+    })
+	@GET
+	@Produces(MediaType.TEXT_PLAIN)
+	@Path("/{application}/watch")
+	public void watch(@PathParam(value="application") @ApiParam("application") final String application, 
+	                  @QueryParam(value = "scopes") @ApiParam("scopes") final String scopes,
+	                  @QueryParam(value = "libs") @ApiParam("libs") final String libs,
+	                  @QueryParam(value = "since") @ApiParam("the ETag of the properties the caller already has") final String since,
+	                  @Suspended final AsyncResponse asyncResponse) {
+	    
+	    final Optional<String> sinceTag = Optional.ofNullable(StringUtils.trimToNull(since)).map(SearchRS::stripEntityTag);
+	    final CompletableFuture<Optional<RenderedSearchResult>> change =
+	        searchWatchBD.watch(application, scopes, Optional.ofNullable(libs), sinceTag);
+	    
+	    asyncResponse.setTimeout(watchTimeoutSeconds, TimeUnit.SECONDS);
+	    asyncResponse.setTimeoutHandler(response -> {
+	        change.cancel(false);
+	        response.resume(Response.notModified(new EntityTag(sinceTag.get())).build());
+	    });
+	    
+	    change.whenComplete((properties, error) -> {
+	        if (error instanceof CancellationException) {
+	            return;
+	        }
+	        if (error != null) {
+	            LOGGER.error("SearchRS :: watch ERROR : \nApplication \n{}", application, error);
+	            asyncResponse.resume(error);
+	        } else if (!properties.isPresent()) {
+	            asyncResponse.resume(new HengeResourceNotFoundException("No Properties were found by the given application ["+application+"] and scopeString [" + scopes + "]."));
+	        } else {
+	            asyncResponse.resume(Response.ok().entity(properties.get().getContent()).type(MediaType.TEXT_PLAIN)
+	                .tag(new EntityTag(properties.get().getEtag())).build());
+	        }
+	    });
+	}
+	
+	/**
+	 * Accepts the since parameter both as the raw tag and as sent in the ETag header.
+	 */
+	private static String stripEntityTag(final String tag) {
+	    return StringUtils.strip(StringUtils.removeStart(tag, "W/"), "\"");
+	}
+	
 }
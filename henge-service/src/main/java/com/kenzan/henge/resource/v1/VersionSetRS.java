@@ -23,6 +23,7 @@ import com.kenzan.henge.domain.model.VersionSet;
 import com.kenzan.henge.domain.validator.CheckVersionSet;
 import com.kenzan.henge.exception.HengeResourceNotFoundException;
 import com.kenzan.henge.service.VersionSetBD;
+import com.kenzan.henge.service.cache.EntityTagCache;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
@@ -44,6 +45,9 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,10 +77,13 @@ public class VersionSetRS {
 
 	private VersionSetBD versionSetBD;
 	
+	private EntityTagCache entityTagCache;
+	
 	
 	@Autowired
-	public VersionSetRS(VersionSetBD versionSetBD) {
+	public VersionSetRS(VersionSetBD versionSetBD, EntityTagCache entityTagCache) {
 	    this.versionSetBD = versionSetBD;
+	    this.entityTagCache = entityTagCache;
 	}
 	
 
@@ -232,6 +239,7 @@ public class VersionSetRS {
     })            
     @ApiResponses(value = {
     		@ApiResponse(code = 200, message = "SUCCESS", response = VersionSet.class),
+    		@ApiResponse(code = 304, message = "NOT MODIFIED"),
     		@ApiResponse(code = 400, message = "INVALID REQUEST"), 
 			@ApiResponse(code = 401, message = "UNAUTHENTICATED"),
 			@ApiResponse(code = 403, message = "UNAUTHORIZED"),
@@ -242,17 +250,18 @@ public class VersionSetRS {
 	@Timed(name = "readLatestVersion")
 	@GET
 	@Path("/{versionSetName}")
-	public VersionSet read(@PathParam(value="versionSetName") @ApiParam("versionSetName") final String name) {
+	public Response read(@PathParam(value="versionSetName") @ApiParam("versionSetName") final String name,
+	                     @Context final Request request) {
 		
 		LOGGER.info("VesionSetRS :: Read Start : VersionSetName [{}]", name);
 		
-		Optional<VersionSet> entity = versionSetBD.read(name);
+		final Optional<VersionSet> entity = versionSetBD.read(name);
         if(!entity.isPresent()) {
             throw new HengeResourceNotFoundException("No VersionSet was found by the given name ["+name+"].");
         }
 			
         LOGGER.info("VesionSetRS :: Read End : VersionSetName [{}] \nEntity :\n{}", name, entity);
-        return entity.get();
+        return ConditionalGet.respond(request, entityTagCache.tagOf(entity.get()), () -> Response.ok(entity.get()));
         
 	}
 	
@@ -269,6 +278,7 @@ public class VersionSetRS {
     })            
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "SUCCESS", response = VersionSet.class),
+            @ApiResponse(code = 304, message = "NOT MODIFIED"),
             @ApiResponse(code = 400, message = "INVALID REQUEST"), 
             @ApiResponse(code = 401, message = "UNAUTHENTICATED"),
             @ApiResponse(code = 403, message = "UNAUTHORIZED"),
@@ -279,20 +289,21 @@ public class VersionSetRS {
     @Timed(name = "readSpecificVersion")
     @GET
     @Path("/{versionSetName}/versions/{versionSetVersion}")
-    public VersionSet read(
+    public Response read(
             @PathParam(value="versionSetName") @ApiParam("versionSetName") final String versionSetName,
-            @PathParam(value="versionSetVersion") @ApiParam("versionSetName") final String versionSetVersion) {
+            @PathParam(value="versionSetVersion") @ApiParam("versionSetName") final String versionSetVersion,
+            @Context final Request request) {
         
         LOGGER.info("VersionSetRS :: Read Start : VersionSetName [{}], VersionSetVersion[{}]", versionSetName, versionSetVersion);
         
-        Optional<VersionSet> entity = versionSetBD.read(versionSetName, versionSetVersion);
+        final Optional<VersionSet> entity = versionSetBD.read(versionSetName, versionSetVersion);
         if(!entity.isPresent()) {
             throw new HengeResourceNotFoundException("No VersionSet was found by the given name ["+versionSetName+"] and version ["+versionSetVersion+"].");
         }
             
         
         LOGGER.info("VersionSetRS :: Read End : VersionSetName [{}], VersionSetVersion[{}] \nEntity :\n{}", versionSetName, versionSetVersion, entity);      
-        return entity.get();
+        return ConditionalGet.respond(request, entityTagCache.tagOf(entity.get()), () -> Response.ok(entity.get()));
     }
     
     /**
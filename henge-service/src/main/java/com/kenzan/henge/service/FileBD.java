@@ -1,5 +1,7 @@
 package com.kenzan.henge.service;
 
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Optional;
 
 import com.kenzan.henge.domain.model.FileVersion;
@@ -13,6 +15,23 @@ import com.kenzan.henge.domain.model.FileVersion;
  */
 public interface FileBD extends BaseCrudBD<FileVersion>{
 
+	/**
+	 * Creates the binary file, streaming its content into the repository
+	 * @param entity the {@link FileVersion} without content
+	 * @param content the stream with the content
+	 * @return {@link FileVersion}
+	 */
+	FileVersion create(final FileVersion entity, final InputStream content);
+
+	/**
+	 * Updates the binary file, streaming its content into the repository
+	 * @param name
+	 * @param entity the {@link FileVersion} without content
+	 * @param content the stream with the content
+	 * @return {@link FileVersion}
+	 */
+	Optional<FileVersion> update(final String name, final FileVersion entity, final InputStream content);
+
 	/**
 	 * Set the current version of the binary file
 	 * @param fileVersionName
@@ -28,4 +47,27 @@ public interface FileBD extends BaseCrudBD<FileVersion>{
 	 */
 	Optional<FileVersion> getCurrentVersion(String fileVersionName);
 
+	/**
+	 * Reads the latest version of the binary file without its content
+	 * @param fileVersionName
+	 * @return {@link FileVersion} without content
+	 */
+	Optional<FileVersion> readMetadata(final String fileVersionName);
+
+	/**
+	 * Reads a version of the binary file without its content
+	 * @param fileVersionName
+	 * @param fileVersionVersion
+	 * @return {@link FileVersion} without content
+	 */
+	Optional<FileVersion> readMetadata(final String fileVersionName, final String fileVersionVersion);
+
+	/**
+	 * Opens the content of the binary file for streaming. The content is not cached.
+	 * @param fileVersionName
+	 * @param fileVersionVersion
+	 * @return a channel over the content, which the caller must close
+	 */
+	Optional<ReadableByteChannel> openContent(final String fileVersionName, final String fileVersionVersion);
+
 }
@@ -5,6 +5,7 @@ import java.util.Optional;
 import com.kenzan.henge.domain.model.Property;
 import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.domain.model.VersionSet;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
 
 /**
  * Provides the search service
@@ -28,4 +29,16 @@ public interface SearchBD {
      */
     public Optional<String> findProperties(final String application, final String scopeString, final Optional<String> libs);
     
+    /**
+     * Same as {@link #findProperties(String, String, Optional)}, but returns
+     * the response already rendered to bytes, along with its entity tag.
+     * 
+     * @param application the name of the application
+     * @param scopeString the set of scopes in string format
+     * @param libs the list of libraries desired as part of the properties
+     *        returned.
+     * @return the rendered properties
+     */
+    public Optional<RenderedSearchResult> findRenderedProperties(final String application, final String scopeString, final Optional<String> libs);
+    
 }
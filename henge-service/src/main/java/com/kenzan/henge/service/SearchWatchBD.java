@@ -0,0 +1,35 @@
+package com.kenzan.henge.service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import com.kenzan.henge.domain.model.Property;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
+
+/**
+ * Notifies configuration consumers when the result of a search changes.
+ *
+ * @author wmatsushita
+ */
+public interface SearchWatchBD {
+
+    /**
+     * Watches the result of a search, as given by
+     * {@link SearchBD#findRenderedProperties(String, String, Optional)}.
+     * 
+     * @param application the name of the application
+     * @param scopeString the set of scopes in string format
+     * @param libs the list of libraries desired as part of the properties
+     *        returned.
+     * @param since the entity tag of the result the caller already has. If
+     *        absent, or different from the current one, the returned future is
+     *        already completed.
+     * @return a future completed with the rendered {@link Property}s as soon as
+     *         their entity tag differs from the given one, or with an empty
+     *         {@link Optional} if the search stops matching. Cancelling the
+     *         future stops the watch.
+     */
+    public CompletableFuture<Optional<RenderedSearchResult>> watch(final String application, final String scopeString,
+                                                                   final Optional<String> libs, final Optional<String> since);
+
+}
@@ -0,0 +1,77 @@
+package com.kenzan.henge.service.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.kenzan.henge.domain.model.FileVersion;
+import com.kenzan.henge.exception.RuntimeHengeException;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response.Status;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Computes content-hash entity tags for the entities served by the
+ * resources. Entities are immutable and served from the business delegate
+ * caches, so the tags are memoized per instance and dropped along with it.
+ *
+ * @author wmatsushita
+ */
+@Component
+public class EntityTagCache {
+
+    private final ObjectMapper objectMapper;
+
+    private final LoadingCache<Object, EntityTag> tags = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(CacheLoader.from(this::computeTag));
+
+    @Autowired
+    public EntityTagCache(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @param entity an immutable entity
+     * @return the tag of the entity. For a {@link FileVersion} it is the hash
+     *         of the file content, as recorded when the content was streamed
+     *         in or computed from the content otherwise, for any other entity
+     *         or a {@link FileVersion} read without its content the hash of
+     *         its JSON representation.
+     */
+    public EntityTag tagOf(final Object entity) {
+        return tags.getUnchecked(entity);
+    }
+
+    /**
+     * @param content the exact bytes sent to the client
+     * @return the tag of the given content
+     */
+    public static EntityTag tagOf(final byte[] content) {
+        return new EntityTag(Hashing.murmur3_128().hashBytes(content).toString());
+    }
+
+    private EntityTag computeTag(final Object entity) {
+        if (entity instanceof FileVersion) {
+            final FileVersion fileVersion = (FileVersion) entity;
+            if (fileVersion.getContentHash() != null) {
+                return new EntityTag(fileVersion.getContentHash());
+            }
+            if (fileVersion.getContent() != null) {
+                return tagOf(fileVersion.getContent());
+            }
+            // versions are immutable, so the metadata alone identifies the content
+        }
+        try {
+            return tagOf(objectMapper.writeValueAsBytes(entity));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeHengeException(Status.INTERNAL_SERVER_ERROR, "Error while computing the entity tag", e);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.kenzan.henge.service.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.VersionSet;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A search response already rendered to UTF-8 bytes, along with the content
+ * hash used as its entity tag and the names of the entities it was rendered
+ * from, which are used to invalidate it.
+ *
+ * @author wmatsushita
+ */
+public final class RenderedSearchResult {
+
+    private final byte[] content;
+
+    private final String etag;
+
+    private final String versionSetName;
+
+    private final ImmutableSet<String> propertyGroupNames;
+
+    public RenderedSearchResult(final String text, final String versionSetName, final ImmutableSet<String> propertyGroupNames) {
+        this.content = text.getBytes(StandardCharsets.UTF_8);
+        this.etag = Hashing.murmur3_128().hashBytes(content).toString();
+        this.versionSetName = versionSetName;
+        this.propertyGroupNames = propertyGroupNames;
+    }
+
+    /**
+     * @return the rendered bytes. The array is shared between requests and
+     *         must not be modified.
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getText() {
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the name of the {@link VersionSet} this result was rendered from
+     */
+    public String getVersionSetName() {
+        return versionSetName;
+    }
+
+    /**
+     * @return the names of every {@link PropertyGroup} referenced by the
+     *         {@link VersionSet} this result was rendered from
+     */
+    public ImmutableSet<String> getPropertyGroupNames() {
+        return propertyGroupNames;
+    }
+
+}
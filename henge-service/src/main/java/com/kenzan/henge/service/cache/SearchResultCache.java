@@ -0,0 +1,187 @@
+package com.kenzan.henge.service.cache;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.domain.model.Mapping;
+import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.model.VersionSet;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Materialized view of the search responses, keyed by application, scopes and
+ * libraries. Entries are invalidated by the business delegates whenever a
+ * {@link PropertyGroup}, {@link VersionSet} or the version set {@link Mapping}
+ * they were rendered from is written.
+ * <p>
+ * Every invalidation bumps a generation counter. A result rendered while an
+ * invalidation happened is discarded instead of stored, so a write can never
+ * be shadowed by a render that read the previous state.
+ * <p>
+ * Writes made through other instances are not seen by this one, so entries
+ * also expire search.cache.expiration.seconds after they were rendered.
+ *
+ * @author wmatsushita
+ */
+@Component
+public class SearchResultCache {
+
+    private final Cache<Key, RenderedSearchResult> results;
+
+    private long generation;
+
+    private final List<Consumer<Invalidation>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public SearchResultCache(@Value("${search.cache.maximum.size:10000}") final long maximumSize,
+                             @Value("${search.cache.expiration.seconds:60}") final long expirationSeconds) {
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize);
+        if (expirationSeconds > 0) {
+            builder.expireAfterWrite(expirationSeconds, TimeUnit.SECONDS);
+        }
+        this.results = builder.build();
+    }
+
+    /**
+     * Creates the cache key for a search. The scopes and libraries are
+     * compared as sets, so the order they were given in is irrelevant.
+     */
+    public static Key key(final String application, final Set<Scope> scopes, final Set<String> libs) {
+        return new Key(application, ImmutableSet.copyOf(scopes), ImmutableSet.copyOf(libs));
+    }
+
+    public Optional<RenderedSearchResult> get(final Key key) {
+        return Optional.ofNullable(results.getIfPresent(key));
+    }
+
+    /**
+     * @return the current generation, to be captured before rendering a result
+     *         that will later be given to {@link #put(Key, RenderedSearchResult, long)}
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Stores the result unless an invalidation happened since the given
+     * generation was captured.
+     */
+    public synchronized void put(final Key key, final RenderedSearchResult result, final long renderedGeneration) {
+        if (renderedGeneration == generation) {
+            results.put(key, result);
+        }
+    }
+
+    /**
+     * Registers a listener to be notified after every invalidation, with the
+     * searches it affected. Listeners run on the writing thread and must
+     * return quickly.
+     */
+    public void addInvalidationListener(final Consumer<Invalidation> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public void invalidatePropertyGroup(final String name) {
+        invalidate(new Invalidation((key, result) -> !result.isPresent() || result.get().getPropertyGroupNames().contains(name)));
+    }
+
+    public void invalidateVersionSet(final String name) {
+        invalidate(new Invalidation((key, result) -> !result.isPresent() || result.get().getVersionSetName().equals(name)));
+    }
+
+    /**
+     * Invalidates the searches of the given application, whose mapping
+     * entries changed.
+     */
+    public void invalidateApplication(final String application) {
+        invalidate(new Invalidation((key, result) -> Objects.equal(key.application, application)));
+    }
+
+    public void invalidateAll() {
+        invalidate(new Invalidation((key, result) -> true));
+    }
+
+    private void invalidate(final Invalidation invalidation) {
+        synchronized (this) {
+            generation++;
+            results.asMap().entrySet()
+                .removeIf(entry -> invalidation.affects(entry.getKey(), Optional.of(entry.getValue())));
+        }
+        invalidationListeners.forEach(listener -> listener.accept(invalidation));
+    }
+
+    /**
+     * The searches affected by an invalidation. A search without a result
+     * is affected by every write to a {@link PropertyGroup} or {@link VersionSet},
+     * since it may be the one it was missing.
+     */
+    public static final class Invalidation {
+
+        private final BiPredicate<Key, Optional<RenderedSearchResult>> affected;
+
+        private Invalidation(final BiPredicate<Key, Optional<RenderedSearchResult>> affected) {
+            this.affected = affected;
+        }
+
+        /**
+         * @param key the search parameters
+         * @param result the last result rendered for them, if any
+         * @return whether the search may now render a different result
+         */
+        public boolean affects(final Key key, final Optional<RenderedSearchResult> result) {
+            return affected.test(key, result);
+        }
+
+    }
+
+    /**
+     * Search parameters identifying a rendered result.
+     */
+    public static final class Key {
+
+        private final String application;
+
+        private final ImmutableSet<Scope> scopes;
+
+        private final ImmutableSet<String> libs;
+
+        private Key(final String application, final ImmutableSet<Scope> scopes, final ImmutableSet<String> libs) {
+            this.application = application;
+            this.scopes = scopes;
+            this.libs = libs;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return Objects.equal(application, other.application) && scopes.equals(other.scopes)
+                && libs.equals(other.libs);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(application, scopes, libs);
+        }
+
+    }
+
+}
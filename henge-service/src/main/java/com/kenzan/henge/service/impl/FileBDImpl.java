@@ -1,12 +1,15 @@
 package com.kenzan.henge.service.impl;
 
 import com.kenzan.henge.config.CacheConfig;
+import com.kenzan.henge.config.RefreshingCache;
 import com.kenzan.henge.domain.model.FileVersion;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.repository.CurrentFileVersionRepository;
 import com.kenzan.henge.repository.FileVersionRepository;
 import com.kenzan.henge.service.FileBD;
 
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Optional;
 import java.util.Set;
 
@@ -16,10 +19,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 /**
+ * The {@link CacheConfig#FILE_API_CACHE} holds the {@link FileVersion}s
+ * without their content, which is always read from the repository.
+ * 
  * @author Igor K. Shiohara
  */
 @Component
@@ -40,31 +45,45 @@ public class FileBDImpl implements FileBD {
 	public FileVersion create(FileVersion entity) {
 		final FileVersion fileVersion = repository.create(entity);
 		
-		fileApiCache.put(entity.getName(), Optional.of(fileVersion));
-		fileApiCache.put(entity.getName() + entity.getVersion(), Optional.of(fileVersion));
+		cacheMetadata(entity.getName(), entity.getVersion(), Optional.of(fileVersion));
+		
+		return fileVersion; 
+	}
+
+	@Override
+	public FileVersion create(FileVersion entity, InputStream content) {
+		final FileVersion fileVersion = repository.create(entity, content);
+		
+		cacheMetadata(entity.getName(), entity.getVersion(), Optional.of(fileVersion));
 		
 		return fileVersion; 
 	}
 
 	@Override
 	public Optional<FileVersion> update(String name, FileVersion fileVersion) {
-		Optional<FileVersion> last = repository.read(name);
-		if (!last.isPresent()) {
+		if (!checkUpdatable(name, fileVersion)) {
 			return Optional.empty();
 		}
-		if (fileVersion.compareTo(last.get()) <= 0) {
-			throw new HengeValidationException(Status.CONFLICT, "The FileVersion " + fileVersion.getName()
-                    + " object given for update has a version number [" + fileVersion.getVersion()
-                    + "] that is lesser than or equal to the current version [" + last.get().getVersion()
-                    + "].");
-		}
 		
 	    final FileVersion newEntity = (FileVersion.builder(fileVersion)).build();
 	    final Optional<FileVersion> updated = repository.update(name, newEntity); 
 	    
-	    fileApiCache.put(fileVersion.getName(), updated);
-	    fileApiCache.put(fileVersion.getName() + fileVersion.getVersion(), updated);
+	    cacheMetadata(fileVersion.getName(), fileVersion.getVersion(), updated);
+	    
+	    
+		return updated;
+		
+	}
+
+	@Override
+	public Optional<FileVersion> update(String name, FileVersion fileVersion, InputStream content) {
+		if (!checkUpdatable(name, fileVersion)) {
+			return Optional.empty();
+		}
+		
+	    final Optional<FileVersion> updated = repository.update(name, fileVersion, content); 
 	    
+	    cacheMetadata(fileVersion.getName(), fileVersion.getVersion(), updated);
 	    
 		return updated;
 		
@@ -83,25 +102,38 @@ public class FileBDImpl implements FileBD {
 	}
 
 	@Override
-	@Cacheable(value = CacheConfig.FILE_API_CACHE, key = "#name")
 	public Optional<FileVersion> read(String name) {
 		return repository.read(name);
 	}
 
 	@Override
-	@Cacheable(value = CacheConfig.FILE_API_CACHE, key = "#name + #version")
 	public Optional<FileVersion> read(String name, String version) {
 		return repository.read(name, version);
 	}
 
+	@Override
+	public Optional<FileVersion> readMetadata(String name) {
+		return RefreshingCache.get(fileApiCache, name, () -> repository.readMetadata(name));
+	}
+
+	@Override
+	public Optional<FileVersion> readMetadata(String name, String version) {
+		return RefreshingCache.get(fileApiCache, name + version, () -> repository.readMetadata(name, version));
+	}
+
 	@Override
 	public Optional<Set<String>> versions(String name) {
 		return repository.versions(name);
 	}
 
+	@Override
+	public Optional<ReadableByteChannel> openContent(String name, String version) {
+		return repository.openContent(name, version);
+	}
+
 	@Override
 	public FileVersion setCurrentVersion(final String fileVersionName, final String fileVersionVersion) {
-		Optional<FileVersion> existent = repository.read(fileVersionName, fileVersionVersion);
+		Optional<FileVersion> existent = repository.readMetadata(fileVersionName, fileVersionVersion);
 		if (!existent.isPresent()) {
 			throw new HengeValidationException(Status.NO_CONTENT, "This FileVersion with name "+ fileVersionName +" and version " + fileVersionVersion + " doesn't exists.");
 		}
@@ -115,7 +147,32 @@ public class FileBDImpl implements FileBD {
 		if (!version.isPresent()) {
 			throw new HengeValidationException(Status.NO_CONTENT, "This FileVersion with name "+ fileVersionName +" and version " + version.get() + " doesn't exists.");
 		}
-		return repository.read(fileVersionName, version.get());
+		return repository.readMetadata(fileVersionName, version.get());
+	}
+
+	private void cacheMetadata(String name, String version, Optional<FileVersion> fileVersion) {
+		final Optional<FileVersion> metadata = fileVersion.map(fv -> FileVersion.builder(fv).withContent(null).build());
+		fileApiCache.put(name, metadata);
+		fileApiCache.put(name + version, metadata);
+		RefreshingCache.evictAbsent(fileApiCache, name);
+	}
+
+	/**
+	 * @return false if there is no {@link FileVersion} by the given name
+	 * @throws HengeValidationException if the given version is not greater than the current one
+	 */
+	private boolean checkUpdatable(String name, FileVersion fileVersion) {
+		Optional<FileVersion> last = repository.readMetadata(name);
+		if (!last.isPresent()) {
+			return false;
+		}
+		if (fileVersion.compareTo(last.get()) <= 0) {
+			throw new HengeValidationException(Status.CONFLICT, "The FileVersion " + fileVersion.getName()
+                    + " object given for update has a version number [" + fileVersion.getVersion()
+                    + "] that is lesser than or equal to the current version [" + last.get().getVersion()
+                    + "].");
+		}
+		return true;
 	}
 
 }
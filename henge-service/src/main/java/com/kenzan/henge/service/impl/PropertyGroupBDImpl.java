@@ -16,8 +16,13 @@
 package com.kenzan.henge.service.impl;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -27,17 +32,18 @@ import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.Cache;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.Cache.ValueWrapper;
 import org.springframework.stereotype.Component;
 
 import com.kenzan.henge.config.CacheConfig;
+import com.kenzan.henge.config.RefreshingCache;
 import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.domain.model.VersionSet;
 import com.kenzan.henge.domain.model.type.PropertyGroupType;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.repository.PropertyGroupRepository;
 import com.kenzan.henge.service.PropertyGroupBD;
+import com.kenzan.henge.service.cache.SearchResultCache;
 
 /**
  * @author kylebober
@@ -50,11 +56,20 @@ public class PropertyGroupBDImpl implements PropertyGroupBD {
 	private PropertyGroupRepository propertyGroupRepository;
 	
 	private Cache propertyGroupCache;
+	
+	private SearchResultCache searchResultCache;
+	
+	/**
+	 * The asynchronous reads in flight by cache key, shared by the searches missing the same key
+	 */
+	private final ConcurrentMap<String, CompletableFuture<Optional<PropertyGroup>>> pendingReads = new ConcurrentHashMap<>();
 
 	@Autowired
-    public PropertyGroupBDImpl(PropertyGroupRepository propertyGroupRepository, @Qualifier(CacheConfig.PROPERTY_GROUP_CACHE) Cache propertyGroupCache) {
+    public PropertyGroupBDImpl(PropertyGroupRepository propertyGroupRepository, @Qualifier(CacheConfig.PROPERTY_GROUP_CACHE) Cache propertyGroupCache,
+                               SearchResultCache searchResultCache) {
         this.propertyGroupRepository = propertyGroupRepository;
         this.propertyGroupCache = propertyGroupCache;
+        this.searchResultCache = searchResultCache;
     }
 
 	@Override
@@ -64,6 +79,8 @@ public class PropertyGroupBDImpl implements PropertyGroupBD {
 		
 		propertyGroupCache.put(entity.getName(), Optional.of(propertyGroup));
 		propertyGroupCache.put(entity.getName() + entity.getVersion(), Optional.of(propertyGroup));
+		RefreshingCache.evictAbsent(propertyGroupCache, entity.getName());
+		searchResultCache.invalidatePropertyGroup(entity.getName());
 		
 		return propertyGroup;
 		
@@ -87,40 +104,54 @@ public class PropertyGroupBDImpl implements PropertyGroupBD {
 	    
 	    propertyGroupCache.put(entity.getName(), propertyGroup);
 	    propertyGroupCache.put(entity.getName() + entity.getVersion(), propertyGroup);
-	    
+	    RefreshingCache.evictAbsent(propertyGroupCache, entity.getName());
+	    searchResultCache.invalidatePropertyGroup(entity.getName());
 	    
 		return propertyGroup;		
 	}
 
+	/**
+	 * Evicts the cached versions before invalidating the search results, so
+	 * that a search rendered in between does not read the deleted ones.
+	 */
 	@Override
-	@CacheEvict(cacheNames=CacheConfig.PROPERTY_GROUP_CACHE, key = "#propertyGroupName")
 	public Optional<PropertyGroup> delete(final String propertyGroupName) {
 		
-		return propertyGroupRepository.delete(propertyGroupName);
+		final Optional<Set<String>> versions = propertyGroupRepository.versions(propertyGroupName);
+		final Optional<PropertyGroup> deleted = propertyGroupRepository.delete(propertyGroupName);
+		propertyGroupCache.evict(propertyGroupName);
+		versions.ifPresent(all -> all.forEach(version -> propertyGroupCache.evict(propertyGroupName + version)));
+		searchResultCache.invalidatePropertyGroup(propertyGroupName);
+		
+		return deleted;
 		
 	}
 	
 	@Override
-	@CacheEvict(cacheNames=CacheConfig.PROPERTY_GROUP_CACHE, key = "#name + #version")
 	public Optional<PropertyGroup> delete(String name, String version) {
 		
-		return propertyGroupRepository.delete(name, version);
+		final Optional<PropertyGroup> deleted = propertyGroupRepository.delete(name, version);
+		propertyGroupCache.evict(name + version);
+		// the latest version may have been the deleted one
+		propertyGroupCache.evict(name);
+		searchResultCache.invalidatePropertyGroup(name);
+		
+		return deleted;
 		
 	}
 	
 	@Override
-	@Cacheable(value = CacheConfig.PROPERTY_GROUP_CACHE, key = "#propertyGroupName")
 	public Optional<PropertyGroup> read(final String propertyGroupName) {
 		
-		return propertyGroupRepository.read(propertyGroupName);
+		return RefreshingCache.get(propertyGroupCache, propertyGroupName, () -> propertyGroupRepository.read(propertyGroupName));
 		
 	}
 
 	@Override
-	@Cacheable(value = CacheConfig.PROPERTY_GROUP_CACHE, key = "#propertyGroupName + #propertyGroupVersion")
 	public Optional<PropertyGroup> read(final String propertyGroupName, final String propertyGroupVersion) {
 		
-		return propertyGroupRepository.read(propertyGroupName, propertyGroupVersion);
+		return RefreshingCache.get(propertyGroupCache, propertyGroupName + propertyGroupVersion,
+				() -> propertyGroupRepository.read(propertyGroupName, propertyGroupVersion));
 		
 	}
 	
@@ -131,12 +162,17 @@ public class PropertyGroupBDImpl implements PropertyGroupBD {
     }
 
 	/**
-	 * Retrieve all PropertyGroup filtering by {@link PropertyGroupType} and libraries
+	 * Retrieve all PropertyGroup filtering by {@link PropertyGroupType} and libraries.
+	 * The reads missing the cache are all issued before waiting on any of them.
 	 */
 	@Override
 	public Set<PropertyGroup> getPropertyGroup(final VersionSet versionSet, final PropertyGroupType type, final java.util.Optional<Set<String>> libs) {
-		return versionSet.getPropertyGroupReferences().parallelStream()
-				.map(reference -> propertyGroupRepository.read(reference.getName(), reference.getVersion()).get())
+		final List<CompletableFuture<Optional<PropertyGroup>>> reads = versionSet.getPropertyGroupReferences().stream()
+				.map(reference -> readThroughCache(reference.getName(), reference.getVersion()))
+				.collect(Collectors.toList());
+		
+		return reads.stream()
+				.map(read -> join(read).get())
 				.filter(PropertyGroupType.LIB.equals(type) ? libsPredicate(libs.get()) : appPredicate())
 				.collect(Collectors.toSet());
 	}
@@ -149,6 +185,75 @@ public class PropertyGroupBDImpl implements PropertyGroupBD {
 		return getPropertyGroup(versionSet, type, java.util.Optional.empty());
 	}
 	
+	/**
+	 * Reads a {@link PropertyGroup} version using the same cache entries as
+	 * {@link #read(String, String)}, so repeated searches share instances.
+	 * Concurrent misses on the same version wait for a single read, as they
+	 * do through {@link RefreshingCache}.
+	 */
+	private CompletableFuture<Optional<PropertyGroup>> readThroughCache(final String name, final String version) {
+		final String key = name + version;
+		final Optional<PropertyGroup> cached = cached(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		
+		final CompletableFuture<Optional<PropertyGroup>> read = new CompletableFuture<>();
+		final CompletableFuture<Optional<PropertyGroup>> pending = pendingReads.putIfAbsent(key, read);
+		if (pending != null) {
+			return pending;
+		}
+		
+		// the read that was pending on the first lookup may have completed since
+		final Optional<PropertyGroup> loaded = cached(key);
+		if (loaded != null) {
+			pendingReads.remove(key, read);
+			read.complete(loaded);
+			return read;
+		}
+		
+		try {
+			propertyGroupRepository.readAsync(name, version).whenComplete((propertyGroup, error) -> {
+				if (error == null && propertyGroup.isPresent()) {
+					propertyGroupCache.put(key, propertyGroup);
+				}
+				pendingReads.remove(key, read);
+				if (error != null) {
+					read.completeExceptionally(error);
+				} else {
+					read.complete(propertyGroup);
+				}
+			});
+		} catch (RuntimeException e) {
+			pendingReads.remove(key, read);
+			read.completeExceptionally(e);
+		}
+		return read;
+	}
+	
+	/**
+	 * @return the cached version, or null if it is not cached
+	 */
+	@SuppressWarnings("unchecked")
+	private Optional<PropertyGroup> cached(final String key) {
+		final ValueWrapper cached = propertyGroupCache.get(key);
+		return (cached != null) ? (Optional<PropertyGroup>) cached.get() : null;
+	}
+	
+	/**
+	 * Waits for the read, rethrowing the exception it failed with as is.
+	 */
+	private static <T> T join(final CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+	
 	private Predicate<PropertyGroup> appPredicate() {
 		return pg -> PropertyGroupType.APP.toString().equalsIgnoreCase(pg.getType()) && 
 				pg.isActive();
@@ -1,25 +1,36 @@
 package com.kenzan.henge.service.impl;
 
+import com.codahale.metrics.Timer;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Maps;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.kenzan.henge.domain.model.Property;
 import com.kenzan.henge.domain.model.PropertyGroup;
+import com.kenzan.henge.domain.model.PropertyGroupReference;
 import com.kenzan.henge.domain.model.PropertyScopedValue;
 import com.kenzan.henge.domain.model.Scope;
 import com.kenzan.henge.domain.model.ScopePrecedenceConfiguration;
 import com.kenzan.henge.domain.model.VersionSet;
 import com.kenzan.henge.domain.model.type.PropertyGroupType;
+import com.kenzan.henge.domain.utils.PropertyResolutionIndex;
+import com.kenzan.henge.domain.utils.PropertyResolutionIndex.CompiledProperty;
 import com.kenzan.henge.domain.utils.ScopeUtils;
 import com.kenzan.henge.exception.HengeException;
 import com.kenzan.henge.service.PropertyGroupBD;
 import com.kenzan.henge.service.SearchBD;
 import com.kenzan.henge.service.VersionSetMappingBD;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
+import com.kenzan.henge.service.cache.SearchResultCache;
+import com.kenzan.henge.service.metrics.SearchMetrics;
 
 import java.util.LinkedHashSet;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,13 +49,28 @@ public class SearchBDImpl implements SearchBD {
     private PropertyGroupBD propertyGroupBD;
 
     private ScopePrecedenceConfiguration scopePrecedenceConfig;
-    
+
+    private SearchResultCache searchResultCache;
+
+    private SearchMetrics searchMetrics;
+
+    /**
+     * Compiled scope resolution indexes. {@link PropertyGroup}s are immutable
+     * and served from the property group cache, so the index is keyed by
+     * instance and dropped once the instance is no longer referenced.
+     */
+    private final LoadingCache<PropertyGroup, PropertyResolutionIndex> resolutionIndexes = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build(CacheLoader.from(PropertyResolutionIndex::compile));
     
     @Autowired
-    public SearchBDImpl(VersionSetMappingBD versionSetMappingBD, PropertyGroupBD propertyGroupBD, ScopePrecedenceConfiguration scopePrecedenceConfig) {
+    public SearchBDImpl(VersionSetMappingBD versionSetMappingBD, PropertyGroupBD propertyGroupBD, ScopePrecedenceConfiguration scopePrecedenceConfig,
+                        SearchResultCache searchResultCache, SearchMetrics searchMetrics) {
         this.versionSetMappingBD = versionSetMappingBD;
         this.propertyGroupBD = propertyGroupBD;
         this.scopePrecedenceConfig = scopePrecedenceConfig;
+        this.searchResultCache = searchResultCache;
+        this.searchMetrics = searchMetrics;
     }
 
     /**
@@ -64,17 +90,45 @@ public class SearchBDImpl implements SearchBD {
     @Override
     public Optional<String> findProperties(final String application, final String scopeString, final Optional<String> libs) {
 
+        return findRenderedProperties(application, scopeString, libs).map(RenderedSearchResult::getText);
+
+    }
+
+    /**
+     * Serves the rendered properties from the {@link SearchResultCache},
+     * rendering and storing them on a miss.
+     * 
+     * @see #findProperties(String, String, Optional)
+     */
+    @Override
+    public Optional<RenderedSearchResult> findRenderedProperties(final String application, final String scopeString, final Optional<String> libs) {
+
         final Set<String> libraries =
             libs.isPresent() ? Sets.newHashSet(Splitter.on(',').split(libs.get())) : Sets.newHashSet();
         final Set<Scope> scopeSet =
             StringUtils.isNotBlank(scopeString) ? ScopeUtils.parseScopeString(scopeString) : Sets.newHashSet();
 
+        final SearchResultCache.Key key = SearchResultCache.key(application, scopeSet, libraries);
+        final Optional<RenderedSearchResult> cached = searchResultCache.get(key);
+        searchMetrics.markResultCache(cached.isPresent());
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        final long generation = searchResultCache.generation();
         Optional<VersionSet> versionSet = versionSetMappingBD.findMatch(application, scopeSet);
         if (!versionSet.isPresent()) {
             return Optional.empty();
         }
 
-        return Optional.of(convertToProperties(application, scopeSet, versionSet.get(), libraries));
+        final ImmutableSet<String> propertyGroupNames = versionSet.get().getPropertyGroupReferences() == null ? ImmutableSet.<String>of()
+            : ImmutableSet.copyOf(versionSet.get().getPropertyGroupReferences().stream()
+                .map(PropertyGroupReference::getName).collect(Collectors.toSet()));
+        final RenderedSearchResult result = new RenderedSearchResult(
+            convertToProperties(application, scopeSet, versionSet.get(), libraries), versionSet.get().getName(), propertyGroupNames);
+        searchResultCache.put(key, result, generation);
+
+        return Optional.of(result);
 
     }
     
@@ -93,13 +147,23 @@ public class SearchBDImpl implements SearchBD {
     private String convertToProperties(final String application, final Set<Scope> scopeSet,
                                        VersionSet versionSet, final Set<String> libs) {
 
-        Set<PropertyGroup> apps = propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.APP);
-        Set<PropertyGroup> libraries =
-            propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, java.util.Optional.of(libs));
-
         Set<PropertyGroup> propertyGroups = Sets.newLinkedHashSet();
-        propertyGroups.addAll(apps);
-        propertyGroups.addAll(libraries);
+        try (Timer.Context context = searchMetrics.timePropertyGroupFanOut()) {
+            propertyGroups.addAll(propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.APP));
+            propertyGroups.addAll(
+                propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, java.util.Optional.of(libs)));
+        }
+
+        try (Timer.Context context = searchMetrics.timeRender()) {
+            return render(versionSet, propertyGroups, scopeSet);
+        }
+        
+    }
+
+    /**
+     * Renders the header of the version set and its resolved properties.
+     */
+    private String render(final VersionSet versionSet, final Set<PropertyGroup> propertyGroups, final Set<Scope> scopeSet) {
 
         Set<String> properties = new LinkedHashSet<>();
         properties.add("# version-set name: " + versionSet.getName());
@@ -126,36 +190,39 @@ public class SearchBDImpl implements SearchBD {
     private String parseProperties(final Set<PropertyGroup> propertyGroups, final Set<Scope> scopes) {
 
         StringBuilder builder = new StringBuilder();
-        Map<String, Property> properties = Maps.newLinkedHashMap();
+        Set<String> properties = Sets.newHashSet();
+        int scopedValues = 0;
+        final ImmutableList<ImmutableSet<Scope>> candidates =
+            ScopeUtils.candidateScopeSets(scopes, scopePrecedenceConfig.getInnerRepresentation());
 
         for (PropertyGroup pg : propertyGroups) {
             final String propertyGroupName = pg.getName();
             final String propertyGroupDescription = pg.getDescription();
             final String propertyGroupType = pg.getType();
 
-            for (Property p : pg.getProperties()) {
+            for (CompiledProperty p : resolutionIndexes.getUnchecked(pg).getProperties()) {
 
-                if (!properties.containsKey(p.getName())) {
+                if (properties.add(p.getName())) {
+                    scopedValues += p.getProperty().getPropertyScopedValues() == null ? 0
+                        : p.getProperty().getPropertyScopedValues().size();
                     builder.append("# property group name: ").append(propertyGroupName);
                     builder.append(System.lineSeparator());
                     builder.append("# property group description: ").append(propertyGroupDescription);
                     builder.append(System.lineSeparator());
-                    String[] scope = ScopeUtils.getScopeValue(p, scopes,
-                            scopePrecedenceConfig.getInnerRepresentation());
+                    String[] scope = p.resolve(candidates);
                     builder.append("# scope: " + scope[0]);
                     builder.append(System.lineSeparator());
                     builder.append("# type: ").append(propertyGroupType);
                     builder.append(System.lineSeparator());
                     builder.append(p.getName()).append("=")
-                        .append(StringUtils.isBlank(scope[1]) ? p.getDefaultValue() : scope[1]);
+                        .append(StringUtils.isBlank(scope[1]) ? p.getProperty().getDefaultValue() : scope[1]);
                     builder.append(System.lineSeparator()).append(System.lineSeparator());
-
-                    properties.put(p.getName(), p);
                 }
             }
 
         }
 
+        searchMetrics.updateSearchSize(propertyGroups.size(), properties.size(), scopedValues);
         return builder.toString();
         
     }
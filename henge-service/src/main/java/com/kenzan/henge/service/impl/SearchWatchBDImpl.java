@@ -0,0 +1,215 @@
+package com.kenzan.henge.service.impl;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.utils.ScopeUtils;
+import com.kenzan.henge.service.SearchBD;
+import com.kenzan.henge.service.SearchWatchBD;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
+import com.kenzan.henge.service.cache.SearchResultCache;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the pending watches grouped by search and re-evaluates the ones an
+ * invalidation of the {@link SearchResultCache} affects. Waiting callers hold
+ * no thread: the re-evaluation runs on a single worker, once per distinct
+ * search, and consecutive invalidations are coalesced into one pass.
+ * <p>
+ * Writes made through other instances invalidate nothing here, so every watch
+ * is also re-evaluated each search.watch.recheck.seconds. Such a write is seen
+ * once the cached result it replaces has expired.
+ *
+ * @author wmatsushita
+ */
+@Component
+public class SearchWatchBDImpl implements SearchWatchBD {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchWatchBDImpl.class);
+
+    private SearchBD searchBD;
+
+    private final Map<SearchResultCache.Key, WatchedSearch> watchedSearches = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "search-watch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Queue<SearchResultCache.Invalidation> pendingInvalidations = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean evaluationPending = new AtomicBoolean();
+
+    @Autowired
+    public SearchWatchBDImpl(SearchBD searchBD, SearchResultCache searchResultCache,
+                             @Value("${search.watch.recheck.seconds:10}") long recheckSeconds) {
+        this.searchBD = searchBD;
+        searchResultCache.addInvalidationListener(this::scheduleEvaluation);
+        if (recheckSeconds > 0) {
+            worker.scheduleWithFixedDelay(() -> evaluate(watchedSearches.keySet()), recheckSeconds, recheckSeconds,
+                TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<RenderedSearchResult>> watch(final String application, final String scopeString,
+                                                                   final Optional<String> libs, final Optional<String> since) {
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change = new CompletableFuture<>();
+        if (!since.isPresent()) {
+            change.complete(searchBD.findRenderedProperties(application, scopeString, libs));
+            return change;
+        }
+
+        // registers before reading the current result, so a write in between is not missed
+        final SearchResultCache.Key key = key(application, scopeString, libs);
+        final Waiter waiter = new Waiter(since.get(), change);
+        final WatchedSearch watchedSearch = watchedSearches.compute(key, (k, existing) -> {
+            final WatchedSearch search = (existing == null) ? new WatchedSearch(application, scopeString, libs) : existing;
+            search.waiters.add(waiter);
+            return search;
+        });
+        change.whenComplete((result, error) -> watchedSearch.waiters.remove(waiter));
+
+        try {
+            final Optional<RenderedSearchResult> current = searchBD.findRenderedProperties(application, scopeString, libs);
+            watchedSearch.lastResult = current;
+            waiter.offer(current);
+        } catch (RuntimeException e) {
+            change.completeExceptionally(e);
+        }
+
+        return change;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private void scheduleEvaluation(final SearchResultCache.Invalidation invalidation) {
+        pendingInvalidations.add(invalidation);
+        if (evaluationPending.compareAndSet(false, true)) {
+            worker.execute(this::evaluatePending);
+        }
+    }
+
+    private void evaluatePending() {
+        evaluationPending.set(false);
+
+        final List<SearchResultCache.Invalidation> invalidations = Lists.newArrayList();
+        SearchResultCache.Invalidation invalidation;
+        while ((invalidation = pendingInvalidations.poll()) != null) {
+            invalidations.add(invalidation);
+        }
+
+        evaluate(watchedSearches.entrySet().stream()
+            .filter(entry -> invalidations.stream()
+                .anyMatch(invalidation -> invalidation.affects(entry.getKey(), entry.getValue().lastResult)))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList()));
+    }
+
+    private void evaluate(final Collection<SearchResultCache.Key> keys) {
+        keys.forEach(key -> {
+            final WatchedSearch watchedSearch = watchedSearches.get(key);
+            if (watchedSearch == null) {
+                return;
+            }
+            if (watchedSearch.waiters.isEmpty()) {
+                watchedSearches.computeIfPresent(key, (k, existing) -> existing.waiters.isEmpty() ? null : existing);
+                return;
+            }
+            try {
+                final Optional<RenderedSearchResult> current =
+                    searchBD.findRenderedProperties(watchedSearch.application, watchedSearch.scopeString, watchedSearch.libs);
+                watchedSearch.lastResult = current;
+                watchedSearch.waiters.forEach(waiter -> waiter.offer(current));
+            } catch (RuntimeException e) {
+                LOGGER.error("SearchWatchBDImpl :: evaluate ERROR : Application [{}], scopeString [{}]",
+                    watchedSearch.application, watchedSearch.scopeString, e);
+                watchedSearch.waiters.forEach(waiter -> waiter.change.completeExceptionally(e));
+            }
+        });
+    }
+
+    private static SearchResultCache.Key key(final String application, final String scopeString, final Optional<String> libs) {
+        final Set<String> libraries =
+            libs.isPresent() ? Sets.newHashSet(Splitter.on(',').split(libs.get())) : Sets.newHashSet();
+        final Set<Scope> scopeSet =
+            StringUtils.isNotBlank(scopeString) ? ScopeUtils.parseScopeString(scopeString) : Sets.newHashSet();
+
+        return SearchResultCache.key(application, scopeSet, libraries);
+    }
+
+    /**
+     * The parameters of a watched search and the callers waiting on it.
+     */
+    private static final class WatchedSearch {
+
+        private final String application;
+
+        private final String scopeString;
+
+        private final Optional<String> libs;
+
+        private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+        /**
+         * The result last rendered for the search, to tell which invalidations affect it
+         */
+        private volatile Optional<RenderedSearchResult> lastResult = Optional.empty();
+
+        private WatchedSearch(final String application, final String scopeString, final Optional<String> libs) {
+            this.application = application;
+            this.scopeString = scopeString;
+            this.libs = libs;
+        }
+
+    }
+
+    private static final class Waiter {
+
+        private final String since;
+
+        private final CompletableFuture<Optional<RenderedSearchResult>> change;
+
+        private Waiter(final String since, final CompletableFuture<Optional<RenderedSearchResult>> change) {
+            this.since = since;
+            this.change = change;
+        }
+
+        private void offer(final Optional<RenderedSearchResult> current) {
+            if (!current.isPresent() || !current.get().getEtag().equals(since)) {
+                change.complete(current);
+            }
+        }
+
+    }
+
+}
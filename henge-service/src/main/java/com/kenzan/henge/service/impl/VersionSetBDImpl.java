@@ -24,15 +24,15 @@ import javax.ws.rs.core.Response.Status;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.Cache;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 import com.kenzan.henge.config.CacheConfig;
+import com.kenzan.henge.config.RefreshingCache;
 import com.kenzan.henge.domain.model.VersionSet;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.repository.VersionSetRepository;
 import com.kenzan.henge.service.VersionSetBD;
+import com.kenzan.henge.service.cache.SearchResultCache;
 
 /**
  * @author kylebober
@@ -44,11 +44,15 @@ public class VersionSetBDImpl implements VersionSetBD {
     private VersionSetRepository versionSetRepository;
     
 	private Cache versionSetCache;
+	
+	private SearchResultCache searchResultCache;
     
     @Autowired
-    public VersionSetBDImpl(VersionSetRepository versionSetRepository, @Qualifier(CacheConfig.VERSION_SET_CACHE) Cache versionSetCache) {
+    public VersionSetBDImpl(VersionSetRepository versionSetRepository, @Qualifier(CacheConfig.VERSION_SET_CACHE) Cache versionSetCache,
+                            SearchResultCache searchResultCache) {
         this.versionSetRepository = versionSetRepository;
         this.versionSetCache = versionSetCache;
+        this.searchResultCache = searchResultCache;
     }
     
 	@Override
@@ -59,6 +63,8 @@ public class VersionSetBDImpl implements VersionSetBD {
 		
 		versionSetCache.put(entity.getName(), Optional.of(versionSet));
 		versionSetCache.put(entity.getName() + entity.getVersion(), Optional.of(versionSet));
+		RefreshingCache.evictAbsent(versionSetCache, entity.getName());
+		searchResultCache.invalidateVersionSet(entity.getName());
 		
 		return versionSet;
 		
@@ -83,39 +89,49 @@ public class VersionSetBDImpl implements VersionSetBD {
 	    
 	    versionSetCache.put(entity.getName(), versionSet);
 		versionSetCache.put(entity.getName() + entity.getVersion(), versionSet);
+		RefreshingCache.evictAbsent(versionSetCache, entity.getName());
+		searchResultCache.invalidateVersionSet(entity.getName());
 	    
 	    return versionSet;
 	}
 
+	/**
+	 * Evicts the cached version sets before invalidating the search results,
+	 * so that a search rendered in between does not read the deleted ones.
+	 */
 	@Override
-	@CacheEvict(cacheNames=CacheConfig.VERSION_SET_CACHE, allEntries=true)
 	public Optional<VersionSet> delete(final String name) {
 	    
-	    return versionSetRepository.delete(name);
+	    final Optional<VersionSet> deleted = versionSetRepository.delete(name);
+	    versionSetCache.clear();
+	    searchResultCache.invalidateVersionSet(name);
+	    
+	    return deleted;
 	    
 	}
 	
 	@Override
-	@CacheEvict(cacheNames=CacheConfig.VERSION_SET_CACHE, allEntries=true)
     public Optional<VersionSet> delete(String name, String version) {
 	    
-	    return versionSetRepository.delete(name, version);
+	    final Optional<VersionSet> deleted = versionSetRepository.delete(name, version);
+	    versionSetCache.clear();
+	    searchResultCache.invalidateVersionSet(name);
+	    
+	    return deleted;
 	    
     }
 
 	@Override
-	@Cacheable(value = CacheConfig.VERSION_SET_CACHE, key = "#name")
 	public Optional<VersionSet> read(final String name) {
 	    
-	    return versionSetRepository.read(name);
+	    return RefreshingCache.get(versionSetCache, name, () -> versionSetRepository.read(name));
 	    
 	}
 
 	@Override
-	@Cacheable(value = CacheConfig.VERSION_SET_CACHE, key= "#name + #version")
     public Optional<VersionSet> read(String name, String version) {
 
-	    return versionSetRepository.read(name, version);
+	    return RefreshingCache.get(versionSetCache, name + version, () -> versionSetRepository.read(name, version));
 	    
     }
 	
@@ -1,5 +1,6 @@
 package com.kenzan.henge.service.impl;
 
+import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableSet;
 import com.kenzan.henge.domain.model.Mapping;
 import com.kenzan.henge.domain.model.MappingKey;
@@ -10,6 +11,8 @@ import com.kenzan.henge.exception.HengeException;
 import com.kenzan.henge.repository.MappingRepository;
 import com.kenzan.henge.service.VersionSetBD;
 import com.kenzan.henge.service.VersionSetMappingBD;
+import com.kenzan.henge.service.cache.SearchResultCache;
+import com.kenzan.henge.service.metrics.SearchMetrics;
 
 import java.util.HashSet;
 import java.util.Map;
@@ -37,13 +40,20 @@ public class VersionSetMappingBDImpl implements VersionSetMappingBD {
     private VersionSetBD versionSetBD;
     
     private Mapping<VersionSetReference> mapping;
+    
+    private SearchResultCache searchResultCache;
+
+    private SearchMetrics searchMetrics;
 
 
     @Autowired
-    public VersionSetMappingBDImpl(MappingRepository<VersionSetReference> mappingRepository, VersionSetBD versionSetBD, Mapping<VersionSetReference> mapping) {
+    public VersionSetMappingBDImpl(MappingRepository<VersionSetReference> mappingRepository, VersionSetBD versionSetBD, Mapping<VersionSetReference> mapping,
+                                   SearchResultCache searchResultCache, SearchMetrics searchMetrics) {
         this.versionSetBD = versionSetBD;
         this.mappingRepository = mappingRepository;
         this.mapping = mapping;
+        this.searchResultCache = searchResultCache;
+        this.searchMetrics = searchMetrics;
     }
     
     
@@ -62,11 +72,19 @@ public class VersionSetMappingBDImpl implements VersionSetMappingBD {
         // Adds the application name as part of the scope
         ImmutableSet<Scope> scopeWithApplication = addApplicationToScope(scopeSet, application);
         
-        Optional<VersionSetReference> vsReference = mapping.get(new MappingKey(scopeWithApplication));
+        final MappingKey key = new MappingKey(scopeWithApplication);
+        final Optional<VersionSetReference> vsReference;
+        try (Timer.Context context = searchMetrics.timeMappingMatch()) {
+            vsReference = mapping.get(key);
+        }
+        searchMetrics.markMappingMatch(vsReference.isPresent(),
+            vsReference.isPresent() && mapping.getInnerRepresentation().containsKey(key));
         if (!vsReference.isPresent())
             return Optional.empty();
 
-        return versionSetBD.read(vsReference.get().getName(), vsReference.get().getVersion());
+        try (Timer.Context context = searchMetrics.timeVersionSetRead()) {
+            return versionSetBD.read(vsReference.get().getName(), vsReference.get().getVersion());
+        }
 
     }
     
@@ -86,7 +104,8 @@ public class VersionSetMappingBDImpl implements VersionSetMappingBD {
         MappingKey key = new MappingKey(ImmutableSet.copyOf(scopeSet));
         mapping.put(key, versionSetReference);
         
-        mappingRepository.save(mapping);
+        mappingRepository.put(mapping, key, versionSetReference);
+        invalidateSearches(application);
         
     }
     
@@ -112,10 +131,24 @@ public class VersionSetMappingBDImpl implements VersionSetMappingBD {
         
         mapping.remove(key);
         
-        mappingRepository.save(mapping);
+        mappingRepository.remove(mapping, key);
+        invalidateSearches(application);
 		
 	}
 
+    /**
+     * An entry keyed by an application only matches the searches of that
+     * application, while one keyed by scopes alone may be the fallback match
+     * of any search.
+     */
+    private void invalidateSearches(final Optional<String> application) {
+        if (application.isPresent()) {
+            searchResultCache.invalidateApplication(application.get());
+        } else {
+            searchResultCache.invalidateAll();
+        }
+    }
+
 
 	private ImmutableSet<Scope> addApplicationToScope(Set<Scope> scopeSet, String application) {
         Set<Scope> myScopeSet = (scopeSet == null)? new HashSet<>() : new HashSet<>(scopeSet);
@@ -0,0 +1,128 @@
+package com.kenzan.henge.service.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The metrics of the stages of a search, named search.&lt;metric&gt;. They are
+ * published through the metrics registry under the metrics profile, and kept
+ * in a registry of their own otherwise.
+ *
+ * @author wmatsushita
+ */
+@Component
+public class SearchMetrics {
+
+    private final Timer mappingMatch;
+
+    private final Timer versionSetRead;
+
+    private final Timer propertyGroupFanOut;
+
+    private final Timer render;
+
+    private final Counter exactMatches;
+
+    private final Counter fallbackMatches;
+
+    private final Counter noMatches;
+
+    private final Counter resultCacheHits;
+
+    private final Counter resultCacheMisses;
+
+    private final Histogram propertyGroups;
+
+    private final Histogram properties;
+
+    private final Histogram scopedValues;
+
+    @Autowired
+    public SearchMetrics(final Optional<MetricRegistry> metricRegistry) {
+        this(metricRegistry.orElseGet(MetricRegistry::new));
+    }
+
+    public SearchMetrics(final MetricRegistry metricRegistry) {
+        this.mappingMatch = metricRegistry.timer(name("mappingMatch"));
+        this.versionSetRead = metricRegistry.timer(name("versionSetRead"));
+        this.propertyGroupFanOut = metricRegistry.timer(name("propertyGroupFanOut"));
+        this.render = metricRegistry.timer(name("render"));
+        this.exactMatches = metricRegistry.counter(name("mapping", "exactMatch"));
+        this.fallbackMatches = metricRegistry.counter(name("mapping", "fallbackMatch"));
+        this.noMatches = metricRegistry.counter(name("mapping", "noMatch"));
+        this.resultCacheHits = metricRegistry.counter(name("resultCache", "hit"));
+        this.resultCacheMisses = metricRegistry.counter(name("resultCache", "miss"));
+        this.propertyGroups = metricRegistry.histogram(name("propertyGroups"));
+        this.properties = metricRegistry.histogram(name("properties"));
+        this.scopedValues = metricRegistry.histogram(name("scopedValues"));
+    }
+
+    /**
+     * Times the lookup of the {@link com.kenzan.henge.domain.model.VersionSetReference}
+     * in the mapping.
+     */
+    public Timer.Context timeMappingMatch() {
+        return mappingMatch.time();
+    }
+
+    /**
+     * Times the read of the matched {@link com.kenzan.henge.domain.model.VersionSet}.
+     */
+    public Timer.Context timeVersionSetRead() {
+        return versionSetRead.time();
+    }
+
+    /**
+     * Times the reads of the {@link com.kenzan.henge.domain.model.PropertyGroup}s
+     * referenced by the matched version set.
+     */
+    public Timer.Context timePropertyGroupFanOut() {
+        return propertyGroupFanOut.time();
+    }
+
+    /**
+     * Times the resolution and rendering of the properties.
+     */
+    public Timer.Context timeRender() {
+        return render.time();
+    }
+
+    /**
+     * Counts a mapping lookup by whether it matched the searched scopes
+     * exactly, fell back to a more generic mapping, or did not match at all.
+     */
+    public void markMappingMatch(final boolean found, final boolean exact) {
+        if (!found) {
+            noMatches.inc();
+        } else if (exact) {
+            exactMatches.inc();
+        } else {
+            fallbackMatches.inc();
+        }
+    }
+
+    public void markResultCache(final boolean hit) {
+        (hit ? resultCacheHits : resultCacheMisses).inc();
+    }
+
+    /**
+     * Records the size of a rendered search.
+     */
+    public void updateSearchSize(final int propertyGroupCount, final int propertyCount, final int scopedValueCount) {
+        propertyGroups.update(propertyGroupCount);
+        properties.update(propertyCount);
+        scopedValues.update(scopedValueCount);
+    }
+
+    private static String name(final String... names) {
+        return MetricRegistry.name("search", names);
+    }
+
+}
@@ -100,7 +100,7 @@ public class FileRSIT extends AbstractIntegrationTest {
 								.multiPart(fileMoreThan2mbSize)
 								.formParam("data", jsonRequest)
 								.when().post("/henge/v1/files/upload");
-		assertEquals(500, response.getStatusCode());
+		assertEquals(413, response.getStatusCode());
 		assertEquals("The field file exceeds its maximum permitted size of 2097152 bytes.", response.getBody().asString());
 		
 	}
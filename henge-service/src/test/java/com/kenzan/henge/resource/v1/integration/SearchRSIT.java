@@ -1,6 +1,7 @@
 package com.kenzan.henge.resource.v1.integration;
 
 import static com.jayway.restassured.RestAssured.given;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.common.collect.Sets;
@@ -323,6 +324,22 @@ public class SearchRSIT {
         
 	}
 	
+	@Test
+	public void testConditionalSearch() {
+	    
+	    final String etag = given().auth().basic("user", "user").when().get("/henge/v1/search/unmatchableAppName?scopes=env=env-0,region=region-1")
+	        .then().statusCode(200).extract().header("ETag");
+	    assertNotNull(etag);
+	    
+	    // Same scopes in a different order hit the same representation
+	    given().auth().basic("user", "user").header("If-None-Match", etag)
+	        .when().get("/henge/v1/search/unmatchableAppName?scopes=region=region-1,env=env-0").then().statusCode(304);
+	    
+	    given().auth().basic("user", "user").header("If-None-Match", etag)
+	        .when().get("/henge/v1/search/unmatchableAppName?scopes=env=env-1,region=region-1").then().statusCode(200);
+	    
+	}
+	
     /**
      * Deletes files created and removes all the mapping keys inserted during
      * the test.
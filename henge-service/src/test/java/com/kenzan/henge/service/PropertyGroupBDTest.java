@@ -5,10 +5,17 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,6 +36,7 @@ import com.kenzan.henge.domain.model.PropertyGroup;
 import com.kenzan.henge.domain.model.type.PropertyGroupType;
 import com.kenzan.henge.exception.HengeValidationException;
 import com.kenzan.henge.repository.PropertyGroupRepository;
+import com.kenzan.henge.service.cache.SearchResultCache;
 import com.kenzan.henge.service.impl.PropertyGroupBDImpl;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -46,6 +54,9 @@ public class PropertyGroupBDTest extends FixtureBD {
 	@Mock
 	private Cache propertyGroupCache;
 	
+	@Mock
+	private SearchResultCache searchResultCache;
+	
 	@Test
 	public void getOnlyLibsTest() {
 	    
@@ -53,6 +64,10 @@ public class PropertyGroupBDTest extends FixtureBD {
         when(propertyGroupRepository.read("PropertyGroup-Lib-1", VERSION_1)).thenReturn(Optional.of(lib1));
         when(propertyGroupRepository.read("PropertyGroup-Lib-2", VERSION_1)).thenReturn(Optional.of(lib2));
         when(propertyGroupRepository.read("PropertyGroup-Lib-3", VERSION_1)).thenReturn(Optional.of(lib3));
+        when(propertyGroupRepository.readAsync("PropertyGroup-App", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(app)));
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-1", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(lib1)));
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-2", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(lib2)));
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-3", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(lib3)));
 		
 	    final Set<PropertyGroup> propertyGroup = propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, java.util.Optional.of(Sets.newHashSet(lib1.getName(), lib2.getName(), lib3.getName())));
 		assertEquals(3, propertyGroup.size());
@@ -61,6 +76,30 @@ public class PropertyGroupBDTest extends FixtureBD {
 		assertEquals(2, propertyGroup2.size());
 	}
 	
+    @Test
+    public void concurrentMissesShareOneReadTest() throws Exception {
+        
+        final CompletableFuture<Optional<PropertyGroup>> lib1Read = new CompletableFuture<>();
+        when(propertyGroupRepository.readAsync("PropertyGroup-App", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(app)));
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-1", VERSION_1)).thenReturn(lib1Read);
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-2", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(lib2)));
+        when(propertyGroupRepository.readAsync("PropertyGroup-Lib-3", VERSION_1)).thenReturn(CompletableFuture.completedFuture(Optional.of(lib3)));
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Set<PropertyGroup>> first = executor.submit(() -> propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, java.util.Optional.of(Sets.newHashSet(lib1.getName()))));
+            final Future<Set<PropertyGroup>> second = executor.submit(() -> propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, java.util.Optional.of(Sets.newHashSet(lib1.getName()))));
+            Thread.sleep(200);
+            lib1Read.complete(Optional.of(lib1));
+            
+            assertThat(first.get(5, TimeUnit.SECONDS)).containsOnly(lib1);
+            assertThat(second.get(5, TimeUnit.SECONDS)).containsOnly(lib1);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(propertyGroupRepository, times(1)).readAsync("PropertyGroup-Lib-1", VERSION_1);
+    }
+	
     @Test
     public void testReadPropertyGroup() {
         
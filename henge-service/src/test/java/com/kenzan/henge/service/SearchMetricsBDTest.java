@@ -0,0 +1,109 @@
+package com.kenzan.henge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.kenzan.henge.domain.model.MappingKey;
+import com.kenzan.henge.domain.model.Scope;
+import com.kenzan.henge.domain.model.ScopePrecedenceConfiguration;
+import com.kenzan.henge.domain.model.VersionSetMapping;
+import com.kenzan.henge.domain.model.VersionSetReference;
+import com.kenzan.henge.domain.model.type.PropertyGroupType;
+import com.kenzan.henge.repository.MappingRepository;
+import com.kenzan.henge.service.cache.SearchResultCache;
+import com.kenzan.henge.service.impl.SearchBDImpl;
+import com.kenzan.henge.service.impl.VersionSetMappingBDImpl;
+import com.kenzan.henge.service.metrics.SearchMetrics;
+
+/**
+ * Tests the metrics recorded by the stages of a search, against a real
+ * {@link VersionSetMapping}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SearchMetricsBDTest extends FixtureBD {
+
+    private static final String APPLICATION = "application-0";
+
+    @Mock
+    private MappingRepository<VersionSetReference> mappingRepository;
+
+    @Mock
+    private VersionSetBD versionSetBD;
+
+    @Mock
+    private PropertyGroupBD propertyGroupBD;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private VersionSetMappingBDImpl versionSetMappingBD;
+
+    private SearchBDImpl searchBD;
+
+    @Before
+    public void setUp() {
+        final ScopePrecedenceConfiguration scopePrecedenceConfiguration =
+            new ScopePrecedenceConfiguration("env;env+region;env+region+stack;hostname;application");
+        final VersionSetMapping mapping = new VersionSetMapping(scopePrecedenceConfiguration);
+        final VersionSetReference reference = VersionSetReference.builder(versionSet).build();
+        mapping.put(new MappingKey(ImmutableSet.of(env_dev, Scope.builder("application", APPLICATION).build())), reference);
+        mapping.put(new MappingKey(ImmutableSet.of(env_prod)), reference);
+
+        when(versionSetBD.read(versionSet.getName(), versionSet.getVersion())).thenReturn(Optional.of(versionSet));
+        when(propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.APP)).thenReturn(Sets.newHashSet(app));
+        when(propertyGroupBD.getPropertyGroup(versionSet, PropertyGroupType.LIB, Optional.of(Sets.newHashSet())))
+            .thenReturn(Sets.newHashSet(lib1));
+
+        final SearchMetrics searchMetrics = new SearchMetrics(metricRegistry);
+        final SearchResultCache searchResultCache = new SearchResultCache(100, 60);
+        versionSetMappingBD =
+            new VersionSetMappingBDImpl(mappingRepository, versionSetBD, mapping, searchResultCache, searchMetrics);
+        searchBD = new SearchBDImpl(versionSetMappingBD, propertyGroupBD, scopePrecedenceConfiguration, searchResultCache,
+            searchMetrics);
+    }
+
+    @Test
+    public void testMappingMatches() {
+        // exact match on env=dev plus the application
+        assertThat(versionSetMappingBD.findMatch(APPLICATION, Sets.newHashSet(env_dev)).isPresent()).isTrue();
+        // falls back to env=prod
+        assertThat(versionSetMappingBD.findMatch(APPLICATION, Sets.newHashSet(env_prod, stack_cnet)).isPresent()).isTrue();
+        // no mapping for a stack alone
+        assertThat(versionSetMappingBD.findMatch(APPLICATION, Sets.newHashSet(stack_cnet)).isPresent()).isFalse();
+
+        assertThat(metricRegistry.counter("search.mapping.exactMatch").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter("search.mapping.fallbackMatch").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter("search.mapping.noMatch").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.mappingMatch").getCount()).isEqualTo(3);
+        assertThat(metricRegistry.timer("search.versionSetRead").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSearchStagesAndSizes() {
+        assertThat(searchBD.findRenderedProperties(APPLICATION, "env=dev", Optional.empty()).isPresent()).isTrue();
+        assertThat(searchBD.findRenderedProperties(APPLICATION, "env=dev", Optional.empty()).isPresent()).isTrue();
+
+        assertThat(metricRegistry.counter("search.resultCache.miss").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter("search.resultCache.hit").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.mappingMatch").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.versionSetRead").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.propertyGroupFanOut").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.render").getCount()).isEqualTo(1);
+
+        // property-2 of the app shadows the one of the library, along with its scoped values
+        assertThat(metricRegistry.histogram("search.propertyGroups").getSnapshot().getMax()).isEqualTo(2);
+        assertThat(metricRegistry.histogram("search.properties").getSnapshot().getMax()).isEqualTo(3);
+        assertThat(metricRegistry.histogram("search.scopedValues").getSnapshot().getMax()).isEqualTo(3);
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.kenzan.henge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.collect.ImmutableSet;
+import com.kenzan.henge.service.cache.RenderedSearchResult;
+import com.kenzan.henge.service.cache.SearchResultCache;
+import com.kenzan.henge.service.impl.SearchWatchBDImpl;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchWatchBDTest {
+
+    private static final String APPLICATION = "application-0";
+    private static final String SCOPES = "env=env-0,region=region-0";
+
+    @Mock
+    private SearchBD searchBD;
+
+    private SearchResultCache searchResultCache;
+
+    private SearchWatchBDImpl searchWatchBD;
+
+    private final RenderedSearchResult first = new RenderedSearchResult("property=first", "version-set", ImmutableSet.of());
+    private final RenderedSearchResult second = new RenderedSearchResult("property=second", "version-set", ImmutableSet.of());
+
+    @Before
+    public void setUp() {
+        searchResultCache = new SearchResultCache(100, 60);
+        searchWatchBD = new SearchWatchBDImpl(searchBD, searchResultCache, 0);
+    }
+
+    @Test
+    public void testWatchWithoutSinceCompletesImmediately() throws Exception {
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(first));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            searchWatchBD.watch(APPLICATION, SCOPES, Optional.empty(), Optional.empty());
+
+        assertThat(change.isDone()).isTrue();
+        assertThat(change.get().get().getEtag()).isEqualTo(first.getEtag());
+    }
+
+    @Test
+    public void testWatchWithStaleSinceCompletesImmediately() throws Exception {
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(second));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            searchWatchBD.watch(APPLICATION, SCOPES, Optional.empty(), Optional.of(first.getEtag()));
+
+        assertThat(change.isDone()).isTrue();
+        assertThat(change.get().get().getEtag()).isEqualTo(second.getEtag());
+    }
+
+    @Test
+    public void testWatchCompletesAfterChange() throws Exception {
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(first));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            searchWatchBD.watch(APPLICATION, SCOPES, Optional.empty(), Optional.of(first.getEtag()));
+        assertThat(change.isDone()).isFalse();
+
+        // an unrelated write does not complete the watch
+        searchResultCache.invalidateVersionSet("another-version-set");
+        assertThat(change.isDone()).isFalse();
+
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(second));
+        searchResultCache.invalidateAll();
+
+        assertThat(change.get(5, TimeUnit.SECONDS).get().getEtag()).isEqualTo(second.getEtag());
+    }
+
+    @Test
+    public void testWatchCompletesAfterApplicationMappingChange() throws Exception {
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(first));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            searchWatchBD.watch(APPLICATION, SCOPES, Optional.empty(), Optional.of(first.getEtag()));
+
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(second));
+
+        // the mappings of another application do not re-render the watched search
+        searchResultCache.invalidateApplication("another-application");
+        searchResultCache.invalidatePropertyGroup("another-property-group");
+        Thread.sleep(100);
+        assertThat(change.isDone()).isFalse();
+
+        searchResultCache.invalidateApplication(APPLICATION);
+
+        assertThat(change.get(5, TimeUnit.SECONDS).get().getEtag()).isEqualTo(second.getEtag());
+    }
+
+    @Test
+    public void testRecheckSeesWritesOfOtherInstances() throws Exception {
+        final SearchWatchBDImpl rechecking = new SearchWatchBDImpl(searchBD, searchResultCache, 1);
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(first));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            rechecking.watch(APPLICATION, SCOPES, Optional.empty(), Optional.of(first.getEtag()));
+
+        // written elsewhere, so nothing is invalidated here
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(second));
+
+        try {
+            assertThat(change.get(5, TimeUnit.SECONDS).get().getEtag()).isEqualTo(second.getEtag());
+        } finally {
+            rechecking.shutdown();
+        }
+    }
+
+    @Test
+    public void testWatchCompletesWhenSearchStopsMatching() throws Exception {
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.of(first));
+
+        final CompletableFuture<Optional<RenderedSearchResult>> change =
+            searchWatchBD.watch(APPLICATION, SCOPES, Optional.empty(), Optional.of(first.getEtag()));
+
+        when(searchBD.findRenderedProperties(APPLICATION, SCOPES, Optional.empty())).thenReturn(Optional.empty());
+        searchResultCache.invalidateAll();
+
+        assertThat(change.get(5, TimeUnit.SECONDS).isPresent()).isFalse();
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.kenzan.henge.service.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.kenzan.henge.domain.model.Scope;
+
+public class SearchResultCacheTest {
+
+    private final SearchResultCache cache = new SearchResultCache(100, 60);
+
+    private final SearchResultCache.Key key = SearchResultCache.key("app",
+        Sets.newHashSet(Scope.builder("env", "dev").build(), Scope.builder("region", "us-west-2").build()), Sets.newHashSet("lib-1"));
+
+    private final RenderedSearchResult result = new RenderedSearchResult("property=value", "version-set", ImmutableSet.of("app-group", "lib-1"));
+
+    @Test
+    public void testKeyIgnoresOrder() {
+        final SearchResultCache.Key other = SearchResultCache.key("app",
+            Sets.newLinkedHashSet(ImmutableSet.of(Scope.builder("region", "us-west-2").build(), Scope.builder("env", "dev").build())), Sets.newHashSet("lib-1"));
+
+        cache.put(key, result, cache.generation());
+
+        assertThat(cache.get(other).isPresent()).isTrue();
+    }
+
+    @Test
+    public void testInvalidatePropertyGroup() {
+        cache.put(key, result, cache.generation());
+
+        cache.invalidatePropertyGroup("other-group");
+        assertThat(cache.get(key).isPresent()).isTrue();
+
+        cache.invalidatePropertyGroup("lib-1");
+        assertThat(cache.get(key).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testInvalidateVersionSet() {
+        cache.put(key, result, cache.generation());
+
+        cache.invalidateVersionSet("version-set");
+        assertThat(cache.get(key).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testInvalidateApplication() {
+        cache.put(key, result, cache.generation());
+
+        cache.invalidateApplication("other-app");
+        assertThat(cache.get(key).isPresent()).isTrue();
+
+        cache.invalidateApplication("app");
+        assertThat(cache.get(key).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testStaleRenderIsDiscarded() {
+        final long generation = cache.generation();
+        cache.invalidateAll();
+
+        cache.put(key, result, generation);
+
+        assertThat(cache.get(key).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testEtagIsContentHash() {
+        final RenderedSearchResult same = new RenderedSearchResult("property=value", "another-set", ImmutableSet.of());
+        final RenderedSearchResult different = new RenderedSearchResult("property=other", "version-set", ImmutableSet.of());
+
+        assertThat(same.getEtag()).isEqualTo(result.getEtag());
+        assertThat(different.getEtag()).isNotEqualTo(result.getEtag());
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.kenzan.henge.service.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+public class SearchMetricsTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final SearchMetrics searchMetrics = new SearchMetrics(Optional.of(metricRegistry));
+
+    @Test
+    public void testMappingMatches() {
+        searchMetrics.markMappingMatch(true, true);
+        searchMetrics.markMappingMatch(true, false);
+        searchMetrics.markMappingMatch(true, false);
+        searchMetrics.markMappingMatch(false, false);
+
+        assertThat(metricRegistry.counter("search.mapping.exactMatch").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.counter("search.mapping.fallbackMatch").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.counter("search.mapping.noMatch").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testStagesAndSizes() {
+        try (Timer.Context context = searchMetrics.timeRender()) {
+            searchMetrics.updateSearchSize(3, 30, 120);
+        }
+        searchMetrics.markResultCache(false);
+
+        assertThat(metricRegistry.timer("search.render").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("search.mappingMatch").getCount()).isEqualTo(0);
+        assertThat(metricRegistry.histogram("search.properties").getSnapshot().getMax()).isEqualTo(30);
+        assertThat(metricRegistry.histogram("search.scopedValues").getSnapshot().getMax()).isEqualTo(120);
+        assertThat(metricRegistry.counter("search.resultCache.miss").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testWithoutRegistry() {
+        final SearchMetrics unpublished = new SearchMetrics(Optional.empty());
+
+        unpublished.markMappingMatch(true, true);
+
+        assertThat(metricRegistry.counter("search.mapping.exactMatch").getCount()).isEqualTo(0);
+    }
+
+}
@@ -0,0 +1,141 @@
+#!/usr/bin/env python
+#Seeds Henge with a synthetic dataset through /v1/convenience/batch, to use with search_locustfile.py
+#
+#Every application gets its own Property Groups and a VersionSet that also references the shared libraries.
+#Each application is mapped on its own and for every env, so searches exercise both exact and fallback matches.
+#Property values are scoped along the default scope precedence: env, env+region, env+region+stack and hostname.
+#
+#Usage: python generate_dataset.py --host http://localhost:8080/henge --apps 1000 --properties 50
+#The description of the dataset is written to dataset.json, which search_locustfile.py reads to build its queries.
+
+import argparse
+import json
+import random
+import sys
+
+import requests
+
+headers = {'Content-Type': 'application/json', 'Authorization': 'Basic dXNlcjp1c2Vy'}
+
+ENV_NAMES = ['prod', 'stage', 'qa', 'dev']
+
+def parseArguments():
+    parser = argparse.ArgumentParser(description='Seeds Henge with a synthetic dataset for load testing.')
+    parser.add_argument('--host', default='http://localhost:8080/henge', help='base url of Henge')
+    parser.add_argument('--apps', type=int, default=100, help='number of applications')
+    parser.add_argument('--property-groups', type=int, default=5, help='property groups per application')
+    parser.add_argument('--libs', type=int, default=3, help='library property groups shared by every application')
+    parser.add_argument('--properties', type=int, default=20, help='properties per property group')
+    parser.add_argument('--scoped-values', type=int, default=4, help='scoped values per property')
+    parser.add_argument('--envs', type=int, default=4, help='number of envs')
+    parser.add_argument('--regions', type=int, default=3, help='number of regions')
+    parser.add_argument('--stacks', type=int, default=4, help='number of stacks')
+    parser.add_argument('--hosts', type=int, default=10, help='number of hostnames per stack')
+    parser.add_argument('--batch-size', type=int, default=10, help='applications sent per batch request')
+    parser.add_argument('--seed', type=int, default=42, help='seed of the random values, so datasets are reproducible')
+    parser.add_argument('--output', default='dataset.json', help='file the dataset description is written to')
+    return parser.parse_args()
+
+def describeDataset(args):
+    envs = [ENV_NAMES[i] if i < len(ENV_NAMES) else 'env{}'.format(i) for i in range(args.envs)]
+    return {
+        'apps': ['app{}'.format(i) for i in range(args.apps)],
+        'libs': ['lib{}'.format(i) for i in range(args.libs)],
+        'envs': envs,
+        'regions': ['region{}'.format(i) for i in range(args.regions)],
+        'stacks': ['stack{}'.format(i) for i in range(args.stacks)],
+        'hosts': args.hosts,
+        'propertyGroups': args.property_groups,
+        'properties': args.properties,
+        'scopedValues': args.scoped_values
+    }
+
+def hostname(env, region, stack, i):
+    return '{}-{}-{}-host{}'.format(env, region, stack, i)
+
+def scopeSet(**scopes):
+    return [{'key': key, 'value': value} for key, value in sorted(scopes.items())]
+
+def randomScopeSet(rand, dataset, level):
+    env = rand.choice(dataset['envs'])
+    region = rand.choice(dataset['regions'])
+    stack = rand.choice(dataset['stacks'])
+    if level == 0:
+        return scopeSet(env=env)
+    if level == 1:
+        return scopeSet(env=env, region=region)
+    if level == 2:
+        return scopeSet(env=env, region=region, stack=stack)
+    return scopeSet(hostname=hostname(env, region, stack, rand.randint(0, dataset['hosts'] - 1)))
+
+def propertyGroup(rand, dataset, name, groupType):
+    properties = []
+    for p in range(dataset['properties']):
+        propertyName = '{}.property{}'.format(name, p)
+        #the same scope set may be drawn twice, and is only kept once
+        scopedValues = {}
+        for v in range(dataset['scopedValues']):
+            scopes = randomScopeSet(rand, dataset, v % 4)
+            scopedValues[json.dumps(scopes, sort_keys=True)] = {'scopeSet': scopes, 'value': '{}-value{}'.format(propertyName, v)}
+        properties.append({
+            'name': propertyName,
+            'description': 'Generated property',
+            'defaultValue': propertyName + '-default',
+            'propertyScopedValues': list(scopedValues.values())
+        })
+    return {
+        'name': name,
+        'version': '1.0.0',
+        'description': 'Generated property group',
+        'type': groupType,
+        'active': True,
+        'properties': properties
+    }
+
+def versionSet(name, propertyGroupNames):
+    return {
+        'name': name,
+        'version': '1.0.0',
+        'propertyGroupReferences': [{'name': pg, 'version': '1.0.0'} for pg in propertyGroupNames],
+        'typeHierarchyEnabled': True
+    }
+
+def mapping(application, scopeString, versionSetName):
+    return {'application': application, 'scopeString': scopeString, 'vsReference': {'name': versionSetName, 'version': '1.0.0'}}
+
+def applicationBatch(rand, dataset, apps):
+    propertyGroups, versionSets, mappings = [], [], []
+    for app in apps:
+        names = ['{}-pg{}'.format(app, g) for g in range(dataset['propertyGroups'])]
+        propertyGroups.extend(propertyGroup(rand, dataset, name, 'APP') for name in names)
+        vsName = app + '-vs'
+        versionSets.append(versionSet(vsName, names + dataset['libs']))
+        mappings.append(mapping(app, None, vsName))
+        mappings.extend(mapping(app, 'env=' + env, vsName) for env in dataset['envs'])
+    return {'propertyGroupList': propertyGroups, 'versionSetList': versionSets, 'mappingList': mappings}
+
+def post(session, host, batch):
+    response = session.post(host + '/v1/convenience/batch', data=json.dumps(batch), headers=headers)
+    if response.status_code != 200:
+        sys.exit('The batch was rejected with status {}: {}'.format(response.status_code, response.text))
+
+def main():
+    args = parseArguments()
+    rand = random.Random(args.seed)
+    dataset = describeDataset(args)
+    session = requests.Session()
+
+    libs = [propertyGroup(rand, dataset, lib, 'LIB') for lib in dataset['libs']]
+    post(session, args.host, {'propertyGroupList': libs, 'versionSetList': [], 'mappingList': []})
+
+    apps = dataset['apps']
+    for start in range(0, len(apps), args.batch_size):
+        post(session, args.host, applicationBatch(rand, dataset, apps[start:start + args.batch_size]))
+        print('Seeded {} of {} applications'.format(min(start + args.batch_size, len(apps)), len(apps)))
+
+    with open(args.output, 'w') as f:
+        json.dump(dataset, f, indent=2)
+    print('Dataset description written to ' + args.output)
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,81 @@
+from locust import HttpLocust, TaskSet, task, events
+from locust.stats import global_stats
+import bisect
+import json
+import os
+import random
+
+#Read dominated profile, to reproduce the production search latency against a dataset seeded by generate_dataset.py
+#
+#Usage: locust -f search_locustfile.py --host http://localhost:8080/henge
+#The dataset description is read from dataset.json, or from the file named by HENGE_DATASET.
+#The p50 and p99 latencies of every request type are printed when locust stops.
+
+headers = {'Content-Type': 'application/json', 'Authorization': 'Basic dXNlcjp1c2Vy'}
+
+dataset = json.load(open(os.environ.get('HENGE_DATASET', 'dataset.json')))
+
+SEARCH_NAME = '/v1/search/[application]'
+
+def zipfWeights(count, exponent=1.1):
+    #a few applications take most of the traffic, like in production
+    cumulative, total = [], 0.0
+    for rank in range(1, count + 1):
+        total += 1.0 / rank ** exponent
+        cumulative.append(total)
+    return cumulative
+
+appWeights = zipfWeights(len(dataset['apps']))
+
+#most of the searches come from the first env, which is prod when there are enough envs
+envWeights = zipfWeights(len(dataset['envs']), 2.0)
+
+def weightedChoice(values, cumulative):
+    return values[bisect.bisect(cumulative, random.random() * cumulative[-1])]
+
+def randomScopes():
+    env = weightedChoice(dataset['envs'], envWeights)
+    region = random.choice(dataset['regions'])
+    stack = random.choice(dataset['stacks'])
+    scopes = ['env=' + env, 'region=' + region]
+    #not every client sends its stack and hostname
+    if random.random() < 0.6:
+        scopes.append('stack=' + stack)
+    if random.random() < 0.3:
+        scopes.append('hostname={}-{}-{}-host{}'.format(env, region, stack, random.randint(0, dataset['hosts'] - 1)))
+    return ','.join(scopes)
+
+class SearchBehavior(TaskSet):
+
+    @task(90)
+    def search(self):
+        application = weightedChoice(dataset['apps'], appWeights)
+        self.client.get('/v1/search/' + application, params={'scopes': randomScopes()}, headers=headers, name=SEARCH_NAME)
+
+    @task(9)
+    def searchWithLibs(self):
+        application = weightedChoice(dataset['apps'], appWeights)
+        libs = ','.join(random.sample(dataset['libs'], random.randint(1, len(dataset['libs'])))) if dataset['libs'] else ''
+        self.client.get('/v1/search/' + application, params={'scopes': randomScopes(), 'libs': libs}, headers=headers,
+                        name=SEARCH_NAME + '?libs')
+
+    @task(1)
+    def remap(self):
+        #the occasional write, which invalidates the cached search results
+        application = random.choice(dataset['apps'])
+        payload = '{"name": "' + application + '-vs","version": "1.0.0"}'
+        self.client.put('/v1/mapping?application=' + application, payload, headers=headers, name='/v1/mapping')
+
+def reportPercentiles():
+    print('%-40s %10s %10s %10s' % ('Name', 'Requests', 'p50 (ms)', 'p99 (ms)'))
+    for entry in sorted(global_stats.entries.values(), key=lambda e: e.name):
+        if entry.num_requests:
+            print('%-40s %10d %10d %10d' % (entry.method + ' ' + entry.name, entry.num_requests,
+                                            entry.get_response_time_percentile(0.5), entry.get_response_time_percentile(0.99)))
+
+events.quitting += reportPercentiles
+
+class SearchUser(HttpLocust):
+    task_set = SearchBehavior
+    min_wait = 0
+    max_wait = 100